@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares the compressions for build cache entries on class files, which compress well,
+ * and on random data, which resembles already compressed outputs like dex files or archives.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BuildCacheEntryCompressionBenchmark {
+    @Param({"gzip", "lz4"})
+    String compression;
+
+    @Param({"-1", "1", "9"})
+    int level;
+
+    @Param({"classes", "random"})
+    String content;
+
+    private BuildCacheEntryCompression entryCompression;
+    private byte[] uncompressed;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        entryCompression = BuildCacheEntryCompression.forName(compression);
+        uncompressed = "classes".equals(content)
+            ? readClassFiles()
+            : randomBytes();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream compressedOutput = entryCompression.compress(output, level)) {
+            compressedOutput.write(uncompressed);
+        }
+        compressed = output.toByteArray();
+    }
+
+    private static byte[] readClassFiles() throws IOException {
+        File jar = new File(ImmutableList.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        ByteStreams.copy(input, output);
+                    }
+                }
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] randomBytes() {
+        byte[] bytes = new byte[16 * 1024 * 1024];
+        new Random(1234L).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public void pack(Blackhole blackhole) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length);
+        try (OutputStream compressedOutput = entryCompression.compress(output, level)) {
+            compressedOutput.write(uncompressed);
+        }
+        blackhole.consume(output);
+    }
+
+    @Benchmark
+    public void unpack(Blackhole blackhole) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream input = entryCompression.decompress(new ByteArrayInputStream(compressed))) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                blackhole.consume(read);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression formats for build cache entries.
+ *
+ * Levels go from 0 (fastest) to 9 (smallest), like for gzip, with {@link #DEFAULT_LEVEL} selecting the default of the format.
+ */
+public enum BuildCacheEntryCompression {
+    GZIP {
+        @Override
+        OutputStream compress(OutputStream output, int level) throws IOException {
+            return new GZIPOutputStream(output) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+
+        @Override
+        boolean matches(byte[] signature, int length) {
+            return length >= 2 && signature[0] == (byte) 0x1f && signature[1] == (byte) 0x8b;
+        }
+    },
+
+    /**
+     * The LZ4 frame format, which is a lot faster to pack and unpack than gzip, at the cost of bigger entries.
+     *
+     * Lower levels look for matches less thoroughly, higher levels use a bigger table to find matches.
+     */
+    LZ4 {
+        @Override
+        OutputStream compress(OutputStream output, int level) throws IOException {
+            Lz4BlockCodec codec;
+            if (level == DEFAULT_LEVEL || (level > 3 && level < 7)) {
+                codec = new Lz4BlockCodec(14, 1);
+            } else if (level <= 3) {
+                codec = new Lz4BlockCodec(12, 4 - level);
+            } else {
+                codec = new Lz4BlockCodec(16, 1);
+            }
+            return new Lz4FrameOutputStream(output, codec);
+        }
+
+        @Override
+        InputStream decompress(InputStream input) throws IOException {
+            return new Lz4FrameInputStream(input);
+        }
+
+        @Override
+        boolean matches(byte[] signature, int length) {
+            return length >= 4
+                && (signature[0] & 0xFF | (signature[1] & 0xFF) << 8 | (signature[2] & 0xFF) << 16 | (signature[3] & 0xFF) << 24) == Lz4FrameOutputStream.MAGIC;
+        }
+    };
+
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    abstract OutputStream compress(OutputStream output, int level) throws IOException;
+
+    abstract InputStream decompress(InputStream input) throws IOException;
+
+    abstract boolean matches(byte[] signature, int length);
+
+    static BuildCacheEntryCompression detect(byte[] signature, int length) throws IOException {
+        for (BuildCacheEntryCompression compression : values()) {
+            if (compression.matches(signature, length)) {
+                return compression;
+            }
+        }
+        throw new IOException("Build cache entry is not compressed in a supported format.");
+    }
+
+    public static BuildCacheEntryCompression forName(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unsupported build cache entry compression '%s', supported values are 'gzip' and 'lz4'.", name), e);
+        }
+    }
+}
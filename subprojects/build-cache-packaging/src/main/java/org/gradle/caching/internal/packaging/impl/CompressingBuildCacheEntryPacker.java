@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.gradle.caching.internal.CacheableEntity;
+import org.gradle.caching.internal.origin.OriginReader;
+import org.gradle.caching.internal.origin.OriginWriter;
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.internal.snapshot.FileSystemSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+
+/**
+ * Compresses the entries packed by the delegate.
+ *
+ * Entries are always packed with the configured compression. When unpacking, the compression is detected from the signature
+ * at the start of the entry, so entries packed with a different compression can still be read.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
+    private static final int SIGNATURE_LENGTH = 4;
+
+    private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCompression compression;
+    private final int level;
+
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate) {
+        this(delegate, BuildCacheEntryCompression.GZIP, BuildCacheEntryCompression.DEFAULT_LEVEL);
+    }
+
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCompression compression, int level) {
+        if (level != BuildCacheEntryCompression.DEFAULT_LEVEL && (level < 0 || level > 9)) {
+            throw new IllegalArgumentException(String.format("Unsupported build cache entry compression level %d, supported values are 0 to 9.", level));
+        }
+        this.delegate = delegate;
+        this.compression = compression;
+        this.level = level;
+    }
+
+    @Override
+    public PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+        try (OutputStream compressedOutput = compression.compress(output, level)) {
+            return delegate.pack(entity, snapshots, compressedOutput, writeOrigin);
+        }
+    }
+
+    @Override
+    public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+        PushbackInputStream signatureInput = new PushbackInputStream(input, SIGNATURE_LENGTH);
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        int length = readSignature(signatureInput, signature);
+        signatureInput.unread(signature, 0, length);
+        BuildCacheEntryCompression entryCompression = BuildCacheEntryCompression.detect(signature, length);
+        try (InputStream decompressedInput = entryCompression.decompress(signatureInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
+        }
+    }
+
+    private static int readSignature(InputStream input, byte[] signature) throws IOException {
+        int length = 0;
+        while (length < signature.length) {
+            int read = input.read(signature, length, signature.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
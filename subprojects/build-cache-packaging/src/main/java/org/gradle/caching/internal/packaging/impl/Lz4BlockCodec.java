@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses independent blocks in the LZ4 block format.
+ *
+ * The compressor uses a single hash table to find matches, like the fast mode of the reference implementation.
+ */
+class Lz4BlockCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int RUN_MASK = 15;
+
+    private final int hashLog;
+    private final int acceleration;
+    private final int[] hashTable;
+
+    Lz4BlockCodec(int hashLog, int acceleration) {
+        this.hashLog = hashLog;
+        this.acceleration = acceleration;
+        this.hashTable = new int[1 << hashLog];
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the input into the output, which needs to have room for {@link #maxCompressedLength(int)} bytes.
+     *
+     * @return the length of the compressed data.
+     */
+    int compress(byte[] input, int length, byte[] output) {
+        int outputPosition = 0;
+        int anchor = 0;
+        if (length >= MATCH_FIND_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            int matchFindLimit = length - MATCH_FIND_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int position = 0;
+            search:
+            while (true) {
+                int reference;
+                int nextPosition = position;
+                int searchMatchCount = acceleration << SKIP_TRIGGER;
+                do {
+                    position = nextPosition;
+                    nextPosition += searchMatchCount++ >>> SKIP_TRIGGER;
+                    if (nextPosition > matchFindLimit) {
+                        break search;
+                    }
+                    int hash = hash(readInt(input, position));
+                    reference = hashTable[hash];
+                    hashTable[hash] = position;
+                } while (reference < 0 || position - reference > MAX_OFFSET || readInt(input, reference) != readInt(input, position));
+
+                while (position > anchor && reference > 0 && input[position - 1] == input[reference - 1]) {
+                    position--;
+                    reference--;
+                }
+
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchLimit && input[position + matchLength] == input[reference + matchLength]) {
+                    matchLength++;
+                }
+
+                outputPosition = writeSequence(input, anchor, position - anchor, position - reference, matchLength, output, outputPosition);
+                position += matchLength;
+                anchor = position;
+                if (position > matchFindLimit) {
+                    break;
+                }
+                hashTable[hash(readInt(input, position - 2))] = position - 2;
+            }
+        }
+        return writeLastLiterals(input, anchor, length - anchor, output, outputPosition);
+    }
+
+    private static int writeSequence(byte[] input, int literalStart, int literalLength, int offset, int matchLength, byte[] output, int outputPosition) {
+        int tokenPosition = outputPosition++;
+        int encodedMatchLength = matchLength - MIN_MATCH;
+        int token = (Math.min(literalLength, RUN_MASK) << 4) | Math.min(encodedMatchLength, RUN_MASK);
+        output[tokenPosition] = (byte) token;
+        outputPosition = writeLength(literalLength, output, outputPosition);
+        System.arraycopy(input, literalStart, output, outputPosition, literalLength);
+        outputPosition += literalLength;
+        output[outputPosition++] = (byte) offset;
+        output[outputPosition++] = (byte) (offset >>> 8);
+        return writeLength(encodedMatchLength, output, outputPosition);
+    }
+
+    private static int writeLastLiterals(byte[] input, int literalStart, int literalLength, byte[] output, int outputPosition) {
+        output[outputPosition++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        outputPosition = writeLength(literalLength, output, outputPosition);
+        System.arraycopy(input, literalStart, output, outputPosition, literalLength);
+        return outputPosition + literalLength;
+    }
+
+    private static int writeLength(int length, byte[] output, int outputPosition) {
+        if (length >= RUN_MASK) {
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                output[outputPosition++] = (byte) 255;
+                remaining -= 255;
+            }
+            output[outputPosition++] = (byte) remaining;
+        }
+        return outputPosition;
+    }
+
+    /**
+     * Decompresses the input into the output.
+     *
+     * @return the length of the decompressed data.
+     */
+    static int decompress(byte[] input, int length, byte[] output) throws IOException {
+        try {
+            int inputPosition = 0;
+            int outputPosition = 0;
+            while (true) {
+                int token = input[inputPosition++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int lengthByte;
+                    do {
+                        lengthByte = input[inputPosition++] & 0xFF;
+                        literalLength += lengthByte;
+                    } while (lengthByte == 255);
+                }
+                System.arraycopy(input, inputPosition, output, outputPosition, literalLength);
+                inputPosition += literalLength;
+                outputPosition += literalLength;
+                if (inputPosition >= length) {
+                    if (inputPosition > length) {
+                        throw new IOException("Corrupt LZ4 block: literals exceed the block.");
+                    }
+                    return outputPosition;
+                }
+
+                int offset = (input[inputPosition++] & 0xFF) | (input[inputPosition++] & 0xFF) << 8;
+                if (offset == 0 || offset > outputPosition) {
+                    throw new IOException("Corrupt LZ4 block: invalid match offset " + offset + ".");
+                }
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int lengthByte;
+                    do {
+                        lengthByte = input[inputPosition++] & 0xFF;
+                        matchLength += lengthByte;
+                    } while (lengthByte == 255);
+                }
+                matchLength += MIN_MATCH;
+                int matchPosition = outputPosition - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(output, matchPosition, output, outputPosition, matchLength);
+                    outputPosition += matchLength;
+                } else {
+                    // Overlapping match, which repeats the last bytes
+                    for (int i = 0; i < matchLength; i++) {
+                        output[outputPosition++] = output[matchPosition + i];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt LZ4 block: data exceeds the block.", e);
+        }
+    }
+
+    private int hash(int value) {
+        return (value * -1640531535) >>> (32 - hashLog);
+    }
+
+    private static int readInt(byte[] buffer, int position) {
+        return (buffer[position] & 0xFF)
+            | (buffer[position + 1] & 0xFF) << 8
+            | (buffer[position + 2] & 0xFF) << 16
+            | (buffer[position + 3] & 0xFF) << 24;
+    }
+}
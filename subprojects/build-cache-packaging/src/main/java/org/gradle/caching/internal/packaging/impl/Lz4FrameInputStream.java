@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.FLAG_BLOCK_CHECKSUM;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.FLAG_BLOCK_INDEPENDENCE;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.FLAG_CONTENT_CHECKSUM;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.FLAG_CONTENT_SIZE;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.FLAG_DICTIONARY_ID;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.MAGIC;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.UNCOMPRESSED_BLOCK_MASK;
+import static org.gradle.caching.internal.packaging.impl.Lz4FrameOutputStream.VERSION;
+
+/**
+ * Reads a single LZ4 frame with independent blocks, verifying the block and content checksums when present.
+ */
+class Lz4FrameInputStream extends InputStream {
+    private final InputStream input;
+    private final XXHash32 contentChecksum = new XXHash32();
+    private final XXHash32 blockChecksum = new XXHash32();
+    private final boolean hasBlockChecksums;
+    private final boolean hasContentChecksum;
+    private final byte[] compressedBlock;
+    private final byte[] block;
+    private int blockLength;
+    private int blockPosition;
+    private boolean finished;
+
+    Lz4FrameInputStream(InputStream input) throws IOException {
+        this.input = input;
+        if (readInt() != MAGIC) {
+            throw new IOException("Not in the LZ4 frame format.");
+        }
+        byte[] descriptor = new byte[2];
+        readFully(descriptor, 0, 2);
+        int flags = descriptor[0] & 0xFF;
+        if (flags >>> 6 != VERSION) {
+            throw new IOException("Unsupported LZ4 frame version " + (flags >>> 6) + ".");
+        }
+        if ((flags & FLAG_BLOCK_INDEPENDENCE) == 0) {
+            throw new IOException("LZ4 frames with dependent blocks are not supported.");
+        }
+        if ((flags & FLAG_DICTIONARY_ID) != 0) {
+            throw new IOException("LZ4 frames with dictionaries are not supported.");
+        }
+        hasBlockChecksums = (flags & FLAG_BLOCK_CHECKSUM) != 0;
+        hasContentChecksum = (flags & FLAG_CONTENT_CHECKSUM) != 0;
+        int blockSizeId = (descriptor[1] & 0x70) >>> 4;
+        if (blockSizeId < 4) {
+            throw new IOException("Unsupported LZ4 block size " + blockSizeId + ".");
+        }
+        byte[] headerChecksumInput = descriptor;
+        if ((flags & FLAG_CONTENT_SIZE) != 0) {
+            headerChecksumInput = new byte[10];
+            System.arraycopy(descriptor, 0, headerChecksumInput, 0, 2);
+            readFully(headerChecksumInput, 2, 8);
+        }
+        if (input.read() != Lz4FrameOutputStream.headerChecksum(headerChecksumInput, headerChecksumInput.length)) {
+            throw new IOException("Corrupt LZ4 frame: header checksum mismatch.");
+        }
+        int maxBlockSize = 1 << (8 + 2 * blockSizeId);
+        this.block = new byte[maxBlockSize];
+        this.compressedBlock = new byte[maxBlockSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock()) {
+            return -1;
+        }
+        return block[blockPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureBlock()) {
+            return -1;
+        }
+        int count = Math.min(length, blockLength - blockPosition);
+        System.arraycopy(block, blockPosition, bytes, offset, count);
+        blockPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return blockLength - blockPosition;
+    }
+
+    private boolean ensureBlock() throws IOException {
+        while (blockPosition == blockLength) {
+            if (finished) {
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        int blockHeader = readInt();
+        if (blockHeader == 0) {
+            finished = true;
+            if (hasContentChecksum && readInt() != (int) contentChecksum.getValue()) {
+                throw new IOException("Corrupt LZ4 frame: content checksum mismatch.");
+            }
+            return;
+        }
+        int length = blockHeader & ~UNCOMPRESSED_BLOCK_MASK;
+        if (length > block.length) {
+            throw new IOException("Corrupt LZ4 frame: block of " + length + " bytes exceeds the maximum block size.");
+        }
+        boolean uncompressed = (blockHeader & UNCOMPRESSED_BLOCK_MASK) != 0;
+        byte[] blockData = uncompressed ? block : compressedBlock;
+        readFully(blockData, 0, length);
+        if (hasBlockChecksums) {
+            // The block checksum covers the block data as stored
+            blockChecksum.reset();
+            blockChecksum.update(blockData, 0, length);
+            if (readInt() != (int) blockChecksum.getValue()) {
+                throw new IOException("Corrupt LZ4 frame: block checksum mismatch.");
+            }
+        }
+        blockLength = uncompressed
+            ? length
+            : Lz4BlockCodec.decompress(compressedBlock, length, block);
+        blockPosition = 0;
+        contentChecksum.update(block, 0, blockLength);
+    }
+
+    private int readInt() throws IOException {
+        byte[] bytes = new byte[4];
+        readFully(bytes, 0, 4);
+        return (bytes[0] & 0xFF)
+            | (bytes[1] & 0xFF) << 8
+            | (bytes[2] & 0xFF) << 16
+            | (bytes[3] & 0xFF) << 24;
+    }
+
+    private void readFully(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = input.read(bytes, offset, length);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of LZ4 frame.");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
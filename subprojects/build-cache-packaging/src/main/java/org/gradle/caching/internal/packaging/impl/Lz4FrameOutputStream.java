@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes data in the LZ4 frame format, using independent blocks and a content checksum.
+ */
+class Lz4FrameOutputStream extends FilterOutputStream {
+    static final int MAGIC = 0x184D2204;
+    static final int BLOCK_SIZE = 1024 * 1024;
+    static final int BLOCK_SIZE_ID = 6;
+    static final int VERSION = 1;
+    static final int FLAG_BLOCK_INDEPENDENCE = 0x20;
+    static final int FLAG_BLOCK_CHECKSUM = 0x10;
+    static final int FLAG_CONTENT_SIZE = 0x08;
+    static final int FLAG_CONTENT_CHECKSUM = 0x04;
+    static final int FLAG_DICTIONARY_ID = 0x01;
+    static final int UNCOMPRESSED_BLOCK_MASK = 0x80000000;
+
+    private final Lz4BlockCodec codec;
+    private final XXHash32 contentChecksum = new XXHash32();
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressedBlock = new byte[Lz4BlockCodec.maxCompressedLength(BLOCK_SIZE)];
+    private int blockLength;
+    private boolean closed;
+
+    Lz4FrameOutputStream(OutputStream output, Lz4BlockCodec codec) throws IOException {
+        super(output);
+        this.codec = codec;
+        writeFrameDescriptor();
+    }
+
+    private void writeFrameDescriptor() throws IOException {
+        writeInt(MAGIC);
+        byte[] descriptor = {
+            (byte) (VERSION << 6 | FLAG_BLOCK_INDEPENDENCE | FLAG_CONTENT_CHECKSUM),
+            (byte) (BLOCK_SIZE_ID << 4)
+        };
+        out.write(descriptor);
+        out.write(headerChecksum(descriptor, descriptor.length));
+    }
+
+    static int headerChecksum(byte[] descriptor, int length) {
+        XXHash32 checksum = new XXHash32();
+        checksum.update(descriptor, 0, length);
+        return (int) (checksum.getValue() >> 8) & 0xFF;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+            if (blockLength == BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        contentChecksum.update(block, 0, blockLength);
+        int compressedLength = codec.compress(block, blockLength, compressedBlock);
+        if (compressedLength < blockLength) {
+            writeInt(compressedLength);
+            out.write(compressedBlock, 0, compressedLength);
+        } else {
+            writeInt(blockLength | UNCOMPRESSED_BLOCK_MASK);
+            out.write(block, 0, blockLength);
+        }
+        blockLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0) {
+                writeBlock();
+            }
+            writeInt(0);
+            writeInt((int) contentChecksum.getValue());
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
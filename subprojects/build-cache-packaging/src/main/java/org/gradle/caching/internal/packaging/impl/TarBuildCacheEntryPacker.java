@@ -46,6 +46,7 @@
 
 import javax.annotation.Nullable;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -59,9 +60,16 @@
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -84,22 +92,41 @@ private interface UnixPermissions {
     private static final Pattern TREE_PATH = Pattern.compile("(missing-)?tree-([^/]+)(?:/(.*))?");
     private static final int BUFFER_SIZE = 64 * 1024;
     private static final ThreadLocal<byte[]> COPY_BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final int MAX_PARALLEL_UNPACK_FILE_SIZE = 1024 * 1024;
+    private static final int MAX_PENDING_UNPACK_BYTES = 64 * 1024 * 1024;
 
     private final TarPackerFileSystemSupport fileSystemSupport;
     private final FilePermissionAccess filePermissionAccess;
     private final StreamHasher streamHasher;
     private final Interner<String> stringInterner;
+    private final Executor unpackExecutor;
 
     public TarBuildCacheEntryPacker(
         TarPackerFileSystemSupport fileSystemSupport,
         FilePermissionAccess filePermissionAccess,
         StreamHasher streamHasher,
         Interner<String> stringInterner
+    ) {
+        this(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, null);
+    }
+
+    /**
+     * Creates a packer that writes and hashes the files of unpacked directories using the given executor, while reading the entry.
+     * The unpacked snapshots are the same as the ones created when writing the files on the reading thread.
+     * When no executor is given, files are written on the reading thread.
+     */
+    public TarBuildCacheEntryPacker(
+        TarPackerFileSystemSupport fileSystemSupport,
+        FilePermissionAccess filePermissionAccess,
+        StreamHasher streamHasher,
+        Interner<String> stringInterner,
+        @Nullable Executor unpackExecutor
     ) {
         this.fileSystemSupport = fileSystemSupport;
         this.filePermissionAccess = filePermissionAccess;
         this.streamHasher = streamHasher;
         this.stringInterner = stringInterner;
+        this.unpackExecutor = unpackExecutor;
     }
 
     @Override
@@ -254,7 +281,7 @@ private TarArchiveEntry unpackTree(String treeName, TreeType treeType, File tree
         return unpackDirectoryTree(input, rootEntry, snapshots, entries, treeRoot, treeName);
     }
 
-    private RegularFileSnapshot unpackFile(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
+    private RegularFileSnapshot unpackFile(InputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
         try (CountingOutputStream output = new CountingOutputStream(new FileOutputStream(file))) {
             HashCode hash = streamHasher.hashCopy(input, output);
             chmodUnpackedFile(entry, file);
@@ -269,43 +296,154 @@ private TarArchiveEntry unpackDirectoryTree(TarArchiveInputStream input, TarArch
         RelativePathParser parser = new RelativePathParser();
         parser.rootPath(rootEntry.getName());
 
-        MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        DirectoryUnpackVisitor visitor = new DirectoryUnpackVisitor(unpackExecutor);
         String rootPath = stringInterner.intern(treeRoot.getAbsolutePath());
         String rootDirName = stringInterner.intern(treeRoot.getName());
-        builder.preVisitDirectory(rootPath, rootDirName);
+        visitor.visit(builder -> builder.preVisitDirectory(rootPath, rootDirName));
 
         TarArchiveEntry entry;
 
-        while ((entry = input.getNextTarEntry()) != null) {
-            boolean isDir = entry.isDirectory();
-            int directoriesLeft = parser.nextPath(entry.getName(), isDir);
-            for (int i = 0; i < directoriesLeft; i++) {
-                builder.postVisitDirectory();
+        try {
+            while ((entry = input.getNextTarEntry()) != null) {
+                boolean isDir = entry.isDirectory();
+                int directoriesLeft = parser.nextPath(entry.getName(), isDir);
+                for (int i = 0; i < directoriesLeft; i++) {
+                    visitor.visit(MerkleDirectorySnapshotBuilder::postVisitDirectory);
+                }
+                if (parser.getDepth() == 0) {
+                    break;
+                }
+                entries.incrementAndGet();
+
+                File file = new File(treeRoot, parser.getRelativePath());
+                if (isDir) {
+                    FileUtils.forceMkdir(file);
+                    chmodUnpackedFile(entry, file);
+                    String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
+                    String internedDirName = stringInterner.intern(parser.getName());
+                    visitor.visit(builder -> builder.preVisitDirectory(internedAbsolutePath, internedDirName));
+                } else if (visitor.canUnpackInParallel(entry)) {
+                    visitor.unpackFileInParallel(input, entry, file, parser.getName());
+                } else {
+                    RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
+                    visitor.visit(builder -> builder.visitFile(fileSnapshot));
+                }
             }
-            if (parser.getDepth() == 0) {
-                break;
+
+            for (int i = 0; i < parser.getDepth(); i++) {
+                visitor.visit(MerkleDirectorySnapshotBuilder::postVisitDirectory);
             }
-            entries.incrementAndGet();
+        } finally {
+            visitor.awaitPendingFiles();
+        }
+
+        snapshots.put(treeName, visitor.getResult());
+        return entry;
+    }
+
+    /**
+     * Builds the snapshot of an unpacked directory.
+     *
+     * When unpacking files in parallel, the visits to the snapshot builder are recorded,
+     * and replayed once all the files have been written.
+     */
+    private class DirectoryUnpackVisitor {
+        private final MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.noSortingRequired();
+        private final Executor executor;
+        private final List<Consumer<MerkleDirectorySnapshotBuilder>> pendingVisits = new ArrayList<>();
+        private final List<FutureTask<RegularFileSnapshot>> pendingFiles = new ArrayList<>();
+        private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_UNPACK_BYTES);
+        private int helpedFiles;
+
+        public DirectoryUnpackVisitor(@Nullable Executor executor) {
+            this.executor = executor;
+        }
 
-            File file = new File(treeRoot, parser.getRelativePath());
-            if (isDir) {
-                FileUtils.forceMkdir(file);
-                chmodUnpackedFile(entry, file);
-                String internedAbsolutePath = stringInterner.intern(file.getAbsolutePath());
-                String internedDirName = stringInterner.intern(parser.getName());
-                builder.preVisitDirectory(internedAbsolutePath, internedDirName);
+        public void visit(Consumer<MerkleDirectorySnapshotBuilder> visit) {
+            if (executor == null) {
+                visit.accept(builder);
             } else {
-                RegularFileSnapshot fileSnapshot = unpackFile(input, entry, file, parser.getName());
-                builder.visitFile(fileSnapshot);
+                pendingVisits.add(visit);
             }
         }
 
-        for (int i = 0; i < parser.getDepth(); i++) {
-            builder.postVisitDirectory();
+        public boolean canUnpackInParallel(TarArchiveEntry entry) {
+            return executor != null && entry.getSize() <= MAX_PARALLEL_UNPACK_FILE_SIZE;
         }
 
-        snapshots.put(treeName, builder.getResult());
-        return entry;
+        /**
+         * Reads the contents of the file from the entry, and writes it using the executor.
+         * Limits the amount of file contents held in memory by waiting for pending files to be written.
+         */
+        public void unpackFileInParallel(TarArchiveInputStream input, TarArchiveEntry entry, File file, String fileName) throws IOException {
+            int size = (int) entry.getSize();
+            byte[] contents = new byte[size];
+            IOUtils.readFully(input, contents);
+            while (!pendingBytes.tryAcquire(size)) {
+                // Help writing the pending files instead of waiting for the executor
+                if (helpedFiles < pendingFiles.size()) {
+                    pendingFiles.get(helpedFiles++).run();
+                } else {
+                    pendingBytes.acquireUninterruptibly(size);
+                    break;
+                }
+            }
+            FutureTask<RegularFileSnapshot> unpackTask = new FutureTask<>(() -> {
+                try {
+                    return unpackFile(new ByteArrayInputStream(contents), entry, file, fileName);
+                } finally {
+                    pendingBytes.release(size);
+                }
+            });
+            pendingFiles.add(unpackTask);
+            executor.execute(unpackTask);
+            pendingVisits.add(builder -> builder.visitFile(getUnpackedFile(unpackTask)));
+        }
+
+        private RegularFileSnapshot getUnpackedFile(FutureTask<RegularFileSnapshot> unpackTask) {
+            try {
+                return unpackTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException((IOException) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        /**
+         * Waits for all files to be written, so no file is written after unpacking finished, even when unpacking failed.
+         */
+        public void awaitPendingFiles() {
+            for (FutureTask<RegularFileSnapshot> pendingFile : pendingFiles) {
+                // Write the file on the current thread when the executor did not get to it yet
+                pendingFile.run();
+                try {
+                    pendingFile.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException ignored) {
+                    // Reported when building the snapshot
+                }
+            }
+        }
+
+        public CompleteFileSystemLocationSnapshot getResult() {
+            pendingVisits.forEach(visit -> visit.accept(builder));
+            pendingVisits.clear();
+            return builder.getResult();
+        }
     }
 
     private void chmodUnpackedFile(TarArchiveEntry entry, File file) {
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import org.gradle.internal.snapshot.FileSystemSnapshot
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def entity = Stub(CacheableEntity)
+    def writeOrigin = Stub(OriginWriter)
+    def readOrigin = Stub(OriginReader)
+    def delegate = new CopyingPacker()
+
+    @Unroll
+    def "can unpack #packedWith entries when packing with #compression at level #level"() {
+        def content = createContent(3 * 1024 * 1024 + 17)
+        def packed = pack(new CompressingBuildCacheEntryPacker(delegate, packedWith, level), content)
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, compression, level).unpack(entity, new ByteArrayInputStream(packed), readOrigin)
+
+        then:
+        delegate.unpacked == content
+
+        where:
+        [packedWith, compression, level] << [BuildCacheEntryCompression.values(), BuildCacheEntryCompression.values(), [BuildCacheEntryCompression.DEFAULT_LEVEL, 0, 1, 5, 9]].combinations()
+    }
+
+    def "can pack and unpack empty entries"() {
+        def packer = new CompressingBuildCacheEntryPacker(delegate, compression, BuildCacheEntryCompression.DEFAULT_LEVEL)
+
+        when:
+        packer.unpack(entity, new ByteArrayInputStream(pack(packer, new byte[0])), readOrigin)
+
+        then:
+        delegate.unpacked == new byte[0]
+
+        where:
+        compression << BuildCacheEntryCompression.values()
+    }
+
+    def "compresses entries"() {
+        def content = createContent(1024 * 1024)
+
+        expect:
+        pack(new CompressingBuildCacheEntryPacker(delegate, compression, BuildCacheEntryCompression.DEFAULT_LEVEL), content).length < content.length / 2
+
+        where:
+        compression << BuildCacheEntryCompression.values()
+    }
+
+    def "detects corrupt LZ4 entries"() {
+        def packed = pack(new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.LZ4, BuildCacheEntryCompression.DEFAULT_LEVEL), createContent(100000))
+        packed[packed.length - 10] ^= 0x55
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate).unpack(entity, new ByteArrayInputStream(packed), readOrigin)
+
+        then:
+        thrown(IOException)
+    }
+
+    def "verifies LZ4 block checksums"() {
+        def content = createContent(100000)
+        def packed = lz4FrameWithBlockChecksums(content)
+
+        when:
+        new CompressingBuildCacheEntryPacker(delegate).unpack(entity, new ByteArrayInputStream(packed), readOrigin)
+
+        then:
+        delegate.unpacked == content
+
+        when:
+        // The block checksum is followed by the end mark and the content checksum
+        packed[packed.length - 9] ^= 0x55
+        new CompressingBuildCacheEntryPacker(delegate).unpack(entity, new ByteArrayInputStream(packed), readOrigin)
+
+        then:
+        def e = thrown(IOException)
+        e.message == "Corrupt LZ4 frame: block checksum mismatch."
+    }
+
+    def "fails to unpack entries in an unknown format"() {
+        when:
+        new CompressingBuildCacheEntryPacker(delegate).unpack(entity, new ByteArrayInputStream("not compressed".bytes), readOrigin)
+
+        then:
+        def e = thrown(IOException)
+        e.message == "Build cache entry is not compressed in a supported format."
+    }
+
+    def "rejects unsupported compression levels"() {
+        when:
+        new CompressingBuildCacheEntryPacker(delegate, BuildCacheEntryCompression.LZ4, 10)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unsupported build cache entry compression level 10, supported values are 0 to 9."
+    }
+
+    def "selects compression by name"() {
+        expect:
+        BuildCacheEntryCompression.forName("gzip") == BuildCacheEntryCompression.GZIP
+        BuildCacheEntryCompression.forName("LZ4") == BuildCacheEntryCompression.LZ4
+
+        when:
+        BuildCacheEntryCompression.forName("zstd")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unsupported build cache entry compression 'zstd', supported values are 'gzip' and 'lz4'."
+    }
+
+    private byte[] pack(BuildCacheEntryPacker packer, byte[] content) {
+        delegate.content = content
+        def output = new ByteArrayOutputStream()
+        packer.pack(entity, [:], output, writeOrigin)
+        return output.toByteArray()
+    }
+
+    private static byte[] lz4FrameWithBlockChecksums(byte[] content) {
+        def output = new ByteArrayOutputStream()
+        def parameters = new FramedLZ4CompressorOutputStream.Parameters(FramedLZ4CompressorOutputStream.BlockSize.M1, true, true, false)
+        new FramedLZ4CompressorOutputStream(output, parameters).withCloseable { it.write(content) }
+        return output.toByteArray()
+    }
+
+    private static byte[] createContent(int length) {
+        def random = new Random(1234L)
+        def words = (1..200).collect { "word${it * 7919}".bytes }
+        def output = new ByteArrayOutputStream(length)
+        while (output.size() < length) {
+            output.write(words[random.nextInt(words.size())])
+        }
+        return Arrays.copyOf(output.toByteArray(), length)
+    }
+
+    private static class CopyingPacker implements BuildCacheEntryPacker {
+        byte[] content
+        byte[] unpacked
+
+        @Override
+        PackResult pack(CacheableEntity entity, Map<String, ? extends FileSystemSnapshot> snapshots, OutputStream output, OriginWriter writeOrigin) throws IOException {
+            output.write(content)
+            return new PackResult(1)
+        }
+
+        @Override
+        UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
+            unpacked = input.bytes
+            return new UnpackResult(null, 1, [:])
+        }
+    }
+}
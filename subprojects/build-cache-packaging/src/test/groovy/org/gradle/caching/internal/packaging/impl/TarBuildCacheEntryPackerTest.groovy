@@ -30,6 +30,8 @@ import org.gradle.util.Requires
 import org.gradle.util.TestPrecondition
 import spock.lang.Unroll
 
+import java.util.concurrent.Executors
+
 import static org.gradle.caching.internal.packaging.impl.AbstractTarBuildCacheEntryPackerSpec.TestCacheableTree
 import static org.gradle.internal.file.TreeType.DIRECTORY
 import static org.gradle.internal.file.TreeType.FILE
@@ -251,6 +253,38 @@ class TarBuildCacheEntryPackerTest extends AbstractTarBuildCacheEntryPackerSpec
         targetDir.assertIsEmptyDir()
     }
 
+    def "unpacking files in parallel produces the same snapshots"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        (1..20).each { dirIndex ->
+            def dir = sourceOutputDir.file("dir-$dirIndex").createDir()
+            (1..20).each { fileIndex ->
+                dir.file("file-${fileIndex}.txt") << "contents of $dirIndex/$fileIndex"
+            }
+        }
+        def largeFile = sourceOutputDir.file("large.bin")
+        largeFile.bytes = new byte[3 * 1024 * 1024].with { new Random(1234).nextBytes(it); it }
+        def output = new ByteArrayOutputStream()
+        pack output, prop(DIRECTORY, sourceOutputDir)
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelPacker = new TarBuildCacheEntryPacker(fileSystemSupport, filePermissionAccess, streamHasher, stringInterner, executor)
+
+        when:
+        def sequentialTargetDir = temporaryFolder.file("sequential")
+        def sequentialResult = unpack new ByteArrayInputStream(output.toByteArray()), prop(DIRECTORY, sequentialTargetDir)
+        def parallelTargetDir = temporaryFolder.file("parallel")
+        def parallelResult = parallelPacker.unpack(entity(prop(DIRECTORY, parallelTargetDir)), new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        parallelResult.entries == sequentialResult.entries
+        parallelResult.snapshots["test"].hash == sequentialResult.snapshots["test"].hash
+        parallelResult.snapshots["test"].absolutePath == parallelTargetDir.absolutePath
+        parallelTargetDir.file("dir-7/file-13.txt").text == "contents of 7/13"
+        parallelTargetDir.file("large.bin").bytes == largeFile.bytes
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
     def pack(OutputStream output, OriginWriter writeOrigin = this.writeOrigin, TreeDefinition... treeDefs) {
         Map<String, CurrentFileCollectionFingerprint> fingerprints = treeDefs.collectEntries { treeDef ->
             return [(treeDef.tree.name): treeDef.fingerprint()]
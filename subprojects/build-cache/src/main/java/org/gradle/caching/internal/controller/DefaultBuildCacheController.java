@@ -26,6 +26,7 @@
 import org.gradle.caching.internal.controller.operations.PackOperationResult;
 import org.gradle.caching.internal.controller.operations.UnpackOperationDetails;
 import org.gradle.caching.internal.controller.operations.UnpackOperationResult;
+import org.gradle.caching.internal.controller.service.AsyncBuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceHandle;
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
@@ -40,6 +41,7 @@
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -56,6 +58,8 @@
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
+    private static final int MAX_CONCURRENT_REMOTE_REQUESTS = 8;
+
     @VisibleForTesting
     final BuildCacheServiceHandle remote;
 
@@ -74,11 +78,26 @@ public DefaultBuildCacheController(
         File gradleUserHomeDir,
         boolean logStackTraces,
         boolean emitDebugLogging
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, null);
+    }
+
+    /**
+     * Creates a controller that accesses the remote build cache asynchronously using executors from the given factory,
+     * see {@link AsyncBuildCacheServiceHandle}. When no factory is given, the remote build cache is accessed synchronously.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        @Nullable ExecutorFactory asyncRemoteExecutorFactory
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
         this.local = toLocalHandle(config.getLocal(), config.isLocalPush());
-        this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces);
+        this.remote = toRemoteHandle(config.getRemote(), config.isRemotePush(), buildOperationExecutor, logStackTraces, gradleUserHomeDir, asyncRemoteExecutorFactory);
         this.tmp = toTempFileStore(config.getLocal(), gradleUserHomeDir);
     }
 
@@ -233,10 +252,21 @@ public void close() throws IOException {
         }
     }
 
-    private static BuildCacheServiceHandle toRemoteHandle(@Nullable BuildCacheService service, boolean push, BuildOperationExecutor buildOperationExecutor, boolean logStackTraces) {
-        return service == null
-            ? NullBuildCacheServiceHandle.INSTANCE
-            : new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+    private static BuildCacheServiceHandle toRemoteHandle(
+        @Nullable BuildCacheService service,
+        boolean push,
+        BuildOperationExecutor buildOperationExecutor,
+        boolean logStackTraces,
+        File gradleUserHomeDir,
+        @Nullable ExecutorFactory asyncExecutorFactory
+    ) {
+        if (service == null) {
+            return NullBuildCacheServiceHandle.INSTANCE;
+        }
+        BuildCacheServiceHandle handle = new OpFiringBuildCacheServiceHandle(service, push, BuildCacheServiceRole.REMOTE, buildOperationExecutor, logStackTraces);
+        return asyncExecutorFactory == null
+            ? handle
+            : new AsyncBuildCacheServiceHandle(handle, asyncExecutorFactory.create("Remote build cache", MAX_CONCURRENT_REMOTE_REQUESTS), new File(gradleUserHomeDir, "build-cache-tmp"));
     }
 
     private static LocalBuildCacheServiceHandle toLocalHandle(@Nullable LocalBuildCacheService local, boolean localPush) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service;
+
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.BuildCacheService;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accesses a remote build cache concurrently, without blocking the callers on network round trips where possible.
+ *
+ * Entries are stored in the background, and pending stores are finished when the handle is closed.
+ */
+public class AsyncBuildCacheServiceHandle implements BuildCacheServiceHandle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncBuildCacheServiceHandle.class);
+
+    private final BuildCacheServiceHandle delegate;
+    private final ManagedExecutor executor;
+    private final File tempDir;
+
+    private final Set<CompletableFuture<Void>> pendingStores = ConcurrentHashMap.newKeySet();
+
+    public AsyncBuildCacheServiceHandle(BuildCacheServiceHandle delegate, ManagedExecutor executor, File tempDir) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.tempDir = tempDir;
+    }
+
+    @Nullable
+    @Override
+    public BuildCacheService getService() {
+        return delegate.getService();
+    }
+
+    @Override
+    public boolean canLoad() {
+        return delegate.canLoad();
+    }
+
+    @Override
+    public void load(BuildCacheKey key, LoadTarget loadTarget) {
+        delegate.load(key, loadTarget);
+    }
+
+    @Override
+    public boolean canStore() {
+        return delegate.canStore();
+    }
+
+    @Override
+    public void store(BuildCacheKey key, StoreTarget storeTarget) {
+        // The stored file may be moved to the local build cache as soon as this method returns
+        File file = createTempFile(key);
+        try {
+            Files.copy(storeTarget.getFile().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteTempFile(file);
+            throw new UncheckedIOException(e);
+        }
+        CompletableFuture<Void> pendingStore = CompletableFuture.runAsync(() -> {
+            try {
+                delegate.store(key, new StoreTarget(file));
+            } finally {
+                deleteTempFile(file);
+            }
+        }, executor);
+        pendingStores.add(pendingStore);
+        pendingStore.whenComplete((result, failure) -> pendingStores.remove(pendingStore));
+    }
+
+    private File createTempFile(BuildCacheKey key) {
+        try {
+            Files.createDirectories(tempDir.toPath());
+            return File.createTempFile(key.getHashCode() + "-", ".tmp", tempDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteTempFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Could not delete temporary build cache entry {}", file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (CompletableFuture<Void> pendingStore : pendingStores) {
+                joinQuietly(pendingStore);
+            }
+            executor.stop();
+        } finally {
+            delegate.close();
+        }
+    }
+
+    private static void joinQuietly(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (RuntimeException e) {
+            // Failures have already been reported by the delegate
+        }
+    }
+}
@@ -34,7 +34,7 @@ public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
     private final boolean pushEnabled;
     private final boolean logStackTraces;
 
-    private boolean disabled;
+    private volatile boolean disabled;
 
     public BaseBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, boolean logStackTraces) {
         this.role = role;
@@ -50,6 +50,10 @@ public void writeTo(OutputStream output) throws IOException {
         }
     }
 
+    File getFile() {
+        return file;
+    }
+
     public boolean isStored() {
         return stored;
     }
@@ -40,20 +40,54 @@
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    /**
+     * The number of leading characters of the cache key used to name the shard directory of an entry.
+     */
+    public static final int SHARD_PREFIX_LENGTH = 2;
+    private static final int LOCK_STRIPES = 64;
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
     private final BuildCacheTempFileStore tempFileStore;
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final boolean sharded;
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, false);
+    }
+
+    /**
+     * @param sharded whether entries are stored in shard directories named after the prefix of their key, instead of directly in the cache directory.
+     */
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix, boolean sharded) {
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.sharded = sharded;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private static String shardOf(BuildCacheKey key) {
+        String hashCode = key.getHashCode();
+        return hashCode.substring(0, Math.min(SHARD_PREFIX_LENGTH, hashCode.length()));
+    }
+
+    private String pathOf(BuildCacheKey key) {
+        return sharded ? shardOf(key) + "/" + key.getHashCode() : key.getHashCode();
+    }
+
+    /**
+     * Entries only need to be protected against concurrent access to the same entry,
+     * so the locks are striped by shard to let workers use different entries in parallel.
+     */
+    private ReadWriteLock lockFor(BuildCacheKey key) {
+        return locks[(shardOf(key).hashCode() & Integer.MAX_VALUE) % locks.length];
     }
 
     private static class LoadAction implements Action<File> {
@@ -94,6 +128,7 @@ public void loadLocally(final BuildCacheKey key, final Action<? super File> read
         persistentCache.withFileLock(new Runnable() {
             @Override
             public void run() {
+                ReadWriteLock lock = lockFor(key);
                 lock.readLock().lock();
                 try {
                     loadInsideLock(key, reader);
@@ -105,7 +140,7 @@ public void run() {
     }
 
     private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
-        LocallyAvailableResource resource = fileStore.get(key.getHashCode());
+        LocallyAvailableResource resource = fileStore.get(pathOf(key));
         if (resource == null) {
             return;
         }
@@ -155,6 +190,7 @@ public void storeLocally(final BuildCacheKey key, final File file) {
         persistentCache.withFileLock(new Runnable() {
             @Override
             public void run() {
+                ReadWriteLock lock = lockFor(key);
                 lock.writeLock().lock();
                 try {
                     storeInsideLock(key, file);
@@ -166,7 +202,7 @@ public void run() {
     }
 
     private void storeInsideLock(BuildCacheKey key, File file) {
-        LocallyAvailableResource resource = fileStore.move(key.getHashCode(), file);
+        LocallyAvailableResource resource = fileStore.move(pathOf(key), file);
         fileAccessTracker.markAccessed(resource.getFile());
     }
 
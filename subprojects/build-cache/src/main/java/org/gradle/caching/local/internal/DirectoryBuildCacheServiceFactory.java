@@ -22,6 +22,8 @@
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.FilesFinder;
+import org.gradle.cache.internal.IncrementalShardFilesFinder;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.internal.VersionStrategy;
@@ -43,10 +45,25 @@
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
 
+    /**
+     * Stores entries in shard directories named after the prefix of their key, see {@link DirectoryBuildCacheService#SHARD_PREFIX_LENGTH}.
+     * Sharded caches use their own default location, so older Gradle versions do not mistake the shard directories for entries.
+     */
+    public static final String SHARDED_PROPERTY = "org.gradle.internal.build-cache.sharded-directory";
+
+    /**
+     * The time in milliseconds a single cleanup of a sharded cache may spend before it stops and continues with the next shard during the following cleanup.
+     */
+    public static final String CLEANUP_BUDGET_PROPERTY = "org.gradle.internal.build-cache.cleanup-budget";
+
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
+    private static final String SHARDED_BUILD_CACHE_KEY = "build-cache-sharded-" + BUILD_CACHE_VERSION;
     private static final int FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 1;
+    private static final int SHARDED_FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP = 2;
+    private static final String CLEANUP_CURSOR_FILE_NAME = "cleanup-cursor";
+    private static final long DEFAULT_CLEANUP_BUDGET_MILLIS = 5000;
 
     private final CacheRepository cacheRepository;
     private final CacheScopeMapping cacheScopeMapping;
@@ -68,12 +85,13 @@ public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheS
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
+        boolean sharded = Boolean.getBoolean(SHARDED_PROPERTY);
         Object cacheDirectory = configuration.getDirectory();
         File target;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
         } else {
-            target = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
+            target = cacheScopeMapping.getBaseDirectory(null, sharded ? SHARDED_BUILD_CACHE_KEY : BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         }
         checkDirectory(target);
 
@@ -82,18 +100,23 @@ public BuildCacheService createBuildCacheService(DirectoryBuildCache configurati
             config("location", target.getAbsolutePath()).
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
 
+        int fileTreeDepth = sharded ? SHARDED_FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP : FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP;
+        FilesFinder eligibleFilesFinder = sharded
+            ? new IncrementalShardFilesFinder(CLEANUP_CURSOR_FILE_NAME, Long.getLong(CLEANUP_BUDGET_PROPERTY, DEFAULT_CLEANUP_BUDGET_MILLIS))
+            : new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+
         PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(eligibleFilesFinder, fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
             .withDisplayName("Build cache")
             .withLockOptions(mode(OnDemand))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
             .open();
         BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(target);
-        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, fileTreeDepth);
 
-        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
+        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX, sharded);
     }
 
     private static void checkDirectory(File directory) {
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.controller.service
+
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.BuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+
+class AsyncBuildCacheServiceHandleTest extends Specification {
+
+    @Rule
+    final TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+
+    def executorFactory = new DefaultExecutorFactory()
+    def remote = new InMemoryBuildCacheServiceHandle()
+    def handle = new AsyncBuildCacheServiceHandle(remote, executorFactory.create("test", 4), temporaryFolder.file("tmp"))
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "loads entries from the remote cache"() {
+        def key = key("01")
+        remote.entries[key.hashCode] = "contents"
+
+        when:
+        def loadTarget = new LoadTarget(temporaryFolder.file("loaded"))
+        handle.load(key, loadTarget)
+
+        then:
+        loadTarget.loaded
+        temporaryFolder.file("loaded").text == "contents"
+        remote.loads == [key.hashCode]
+    }
+
+    def "stores entries in the background and finishes pending stores when closed"() {
+        def key = key("01")
+        def file = temporaryFolder.file("entry") << "contents"
+
+        when:
+        handle.store(key, new StoreTarget(file))
+        file.delete()
+        handle.close()
+
+        then:
+        remote.entries[key.hashCode] == "contents"
+        remote.closed
+        temporaryFolder.file("tmp").listFiles().length == 0
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+            getDisplayName() >> hashCode
+        }
+    }
+
+    static class InMemoryBuildCacheServiceHandle implements BuildCacheServiceHandle {
+        final Map<String, String> entries = new ConcurrentHashMap<>()
+        final List<String> loads = [].asSynchronized()
+        BuildCacheService service
+        boolean closed
+
+        @Override
+        BuildCacheService getService() {
+            return service
+        }
+
+        @Override
+        boolean canLoad() {
+            return true
+        }
+
+        @Override
+        void load(BuildCacheKey key, LoadTarget loadTarget) {
+            loads << key.hashCode
+            def contents = entries[key.hashCode]
+            if (contents != null) {
+                loadTarget.readFrom(new ByteArrayInputStream(contents.bytes))
+            }
+        }
+
+        @Override
+        boolean canStore() {
+            return true
+        }
+
+        @Override
+        void store(BuildCacheKey key, StoreTarget storeTarget) {
+            def output = new ByteArrayOutputStream()
+            storeTarget.writeTo(output)
+            entries[key.hashCode] = output.toString()
+        }
+
+        @Override
+        void close() {
+            closed = true
+        }
+    }
+}
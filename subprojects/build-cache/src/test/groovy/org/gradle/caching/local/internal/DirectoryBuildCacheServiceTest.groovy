@@ -133,4 +133,29 @@ class DirectoryBuildCacheServiceTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "stores entries in shard directories when sharded"() {
+        def shardedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", true)
+        def originalFile = temporaryFolder.createFile("foo")
+        originalFile.text = "bar"
+
+        when:
+        shardedService.storeLocally(key, originalFile)
+
+        then:
+        1 * fileAccessTracker.markAccessed(new File(cacheDir, "12/1234abcd"))
+        new File(cacheDir, "12/1234abcd").text == "bar"
+
+        when:
+        def loaded = shardedService.load(key, new BuildCacheEntryReader() {
+            @Override
+            void readFrom(InputStream input) throws IOException {
+                assert input.text == "bar"
+            }
+        })
+
+        then:
+        loaded
+        !service.load(key, Mock(BuildCacheEntryReader))
+    }
 }
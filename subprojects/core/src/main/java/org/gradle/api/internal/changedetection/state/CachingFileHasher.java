@@ -43,7 +43,7 @@ public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, Str
         this.delegate = delegate;
         this.fileSystem = fileSystem;
         this.cache = store.createCache(
-            PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()),
+            PersistentIndexedCacheParameters.of(cacheName, new InterningStringSerializer(stringInterner), new FileInfoSerializer()).withMemoryMappedStorage(),
             inMemorySize,
             true);
         this.stringInterner = stringInterner;
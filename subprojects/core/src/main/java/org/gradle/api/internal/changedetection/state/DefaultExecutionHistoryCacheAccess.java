@@ -53,4 +53,8 @@ public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCachePar
         );
     }
 
+    @Override
+    public void useCache(Runnable action) {
+        cache.useCache(action);
+    }
 }
@@ -17,22 +17,51 @@
 package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.Factory;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
 
+import javax.annotation.Nullable;
+
 public class DefaultResourceSnapshotterCacheService implements ResourceSnapshotterCacheService {
     private static final HashCode NO_HASH = Hashing.signature(CachingResourceHasher.class.getName() + " : no hash");
     private final PersistentIndexedCache<HashCode, HashCode> persistentCache;
+    private final PersistentIndexedCache<HashCode, HashCode> zipEntryCache;
 
+    /**
+     * Creates a service which does not cache the hashes of archive entries.
+     */
     public DefaultResourceSnapshotterCacheService(PersistentIndexedCache<HashCode, HashCode> persistentCache) {
+        this(persistentCache, null);
+    }
+
+    public DefaultResourceSnapshotterCacheService(PersistentIndexedCache<HashCode, HashCode> persistentCache, @Nullable PersistentIndexedCache<HashCode, HashCode> zipEntryCache) {
         this.persistentCache = persistentCache;
+        this.zipEntryCache = zipEntryCache;
     }
 
     @Override
     public HashCode hashFile(RegularFileSnapshot fileSnapshot, RegularFileHasher hasher, HashCode configurationHash) {
-        HashCode resourceHashCacheKey = resourceHashCacheKey(fileSnapshot.getHash(), configurationHash);
+        return hashContent(fileSnapshot.getAbsolutePath(), fileSnapshot.getHash(), configurationHash, () -> hasher.hash(fileSnapshot));
+    }
+
+    @Override
+    public HashCode hashContent(String location, HashCode contentKey, HashCode configurationHash, Factory<HashCode> hasher) {
+        return hash(persistentCache, contentKey, configurationHash, hasher);
+    }
+
+    @Override
+    public HashCode hashZipEntry(String location, HashCode entryKey, HashCode configurationHash, Factory<HashCode> hasher) {
+        return zipEntryCache == null
+            ? hasher.create()
+            : hash(zipEntryCache, entryKey, configurationHash, hasher);
+    }
+
+    @Nullable
+    private static HashCode hash(PersistentIndexedCache<HashCode, HashCode> persistentCache, HashCode contentKey, HashCode configurationHash, Factory<HashCode> hasher) {
+        HashCode resourceHashCacheKey = resourceHashCacheKey(contentKey, configurationHash);
 
         HashCode resourceHash = persistentCache.get(resourceHashCacheKey);
         if (resourceHash != null) {
@@ -42,7 +71,7 @@ public HashCode hashFile(RegularFileSnapshot fileSnapshot, RegularFileHasher has
             return resourceHash;
         }
 
-        resourceHash = hasher.hash(fileSnapshot);
+        resourceHash = hasher.create();
 
         if (resourceHash != null) {
             persistentCache.put(resourceHashCacheKey, resourceHash);
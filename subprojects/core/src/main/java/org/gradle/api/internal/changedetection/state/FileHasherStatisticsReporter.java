@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.gradle.internal.hash.FileHasherStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs how many files and zip entries were hashed when the build finishes.
+ */
+public class FileHasherStatisticsReporter implements RootBuildLifecycleListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileHasherStatisticsReporter.class);
+
+    private final FileHasherStatistics.Collector statisticsCollector;
+    private final ZipHasherStatistics.Collector zipStatisticsCollector;
+
+    public FileHasherStatisticsReporter(FileHasherStatistics.Collector statisticsCollector, ZipHasherStatistics.Collector zipStatisticsCollector) {
+        this.statisticsCollector = statisticsCollector;
+        this.zipStatisticsCollector = zipStatisticsCollector;
+    }
+
+    @Override
+    public void afterStart(GradleInternal gradle) {
+    }
+
+    @Override
+    public void beforeComplete(GradleInternal gradle) {
+        FileHasherStatistics statistics = statisticsCollector.collect();
+        ZipHasherStatistics zipStatistics = zipStatisticsCollector.collect();
+        LOGGER.info("{} during the build", statistics);
+        LOGGER.info("{} during the build", zipStatistics);
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.internal.Factory;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
 
@@ -24,4 +25,21 @@
 public interface ResourceSnapshotterCacheService {
     @Nullable
     HashCode hashFile(RegularFileSnapshot fileSnapshot, RegularFileHasher hasher, HashCode configurationHash);
+
+    /**
+     * Hashes content which is not a file of its own, like an archive nested in another archive, caching the result by the key of the content.
+     *
+     * @param location the path of the file containing the content, which decides where the result is cached
+     */
+    @Nullable
+    HashCode hashContent(String location, HashCode contentKey, HashCode configurationHash, Factory<HashCode> hasher);
+
+    /**
+     * Hashes an entry of an archive, caching the result by the key of the entry apart from the hashes of files and content.
+     * Archives have many entries, so their hashes should not push out the hashes of whole files.
+     *
+     * @param location the path of the archive containing the entry, which decides where the result is cached
+     */
+    @Nullable
+    HashCode hashZipEntry(String location, HashCode entryKey, HashCode configurationHash, Factory<HashCode> hasher);
 }
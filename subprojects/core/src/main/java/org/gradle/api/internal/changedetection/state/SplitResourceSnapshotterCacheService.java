@@ -16,6 +16,7 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.internal.Factory;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
 import org.gradle.internal.vfs.AdditiveCacheLocations;
@@ -43,4 +44,22 @@ public HashCode hashFile(RegularFileSnapshot fileSnapshot, RegularFileHasher has
             return localCache.hashFile(fileSnapshot, hasher, configurationHash);
         }
     }
+
+    @Override
+    public HashCode hashContent(String location, HashCode contentKey, HashCode configurationHash, Factory<HashCode> hasher) {
+        if (additiveCacheLocations.isInsideAdditiveCache(location)) {
+            return globalCache.hashContent(location, contentKey, configurationHash, hasher);
+        } else {
+            return localCache.hashContent(location, contentKey, configurationHash, hasher);
+        }
+    }
+
+    @Override
+    public HashCode hashZipEntry(String location, HashCode entryKey, HashCode configurationHash, Factory<HashCode> hasher) {
+        if (additiveCacheLocations.isInsideAdditiveCache(location)) {
+            return globalCache.hashZipEntry(location, entryKey, configurationHash, hasher);
+        } else {
+            return localCache.hashZipEntry(location, entryKey, configurationHash, hasher);
+        }
+    }
 }
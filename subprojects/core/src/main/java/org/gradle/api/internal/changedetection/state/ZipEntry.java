@@ -30,4 +30,9 @@ public interface ZipEntry {
      * The size of the content in bytes, or -1 if not known.
      */
     int size();
+
+    /**
+     * The CRC-32 of the content, or -1 if not known.
+     */
+    long getCrc();
 }
@@ -18,9 +18,11 @@
 
 import com.google.common.collect.ImmutableSet;
 import org.apache.commons.compress.utils.Lists;
+import org.gradle.api.UncheckedIOException;
 import org.gradle.internal.Factory;
 import org.gradle.internal.FileUtils;
 import org.gradle.internal.IoActions;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.file.FilePathUtil;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
@@ -36,13 +38,20 @@
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ZipHasher implements RegularFileHasher, ConfigurableNormalizer {
 
     private static final Set<String> KNOWN_ZIP_EXTENSIONS = ImmutableSet.of(".zip", ".jar", ".war", ".rar", ".ear", ".apk", ".aar");
     private static final Logger LOGGER = LoggerFactory.getLogger(ZipHasher.class);
+    private static final int PARALLEL_HASHING_CHUNK_SIZE = 256;
+    private static final int MAX_PARALLEL_HASHING_TASKS = Runtime.getRuntime().availableProcessors();
 
     public static boolean isZipFile(final String name) {
         for (String extension : KNOWN_ZIP_EXTENSIONS) {
@@ -55,10 +64,29 @@ public static boolean isZipFile(final String name) {
 
     private final ResourceHasher resourceHasher;
     private final ResourceFilter resourceFilter;
+    private final ResourceSnapshotterCacheService contentHashCache;
+    private final Executor executor;
+    private final ZipHasherStatistics.Collector statisticsCollector;
+    private final HashCode configurationHash;
 
     public ZipHasher(ResourceHasher resourceHasher, ResourceFilter resourceFilter) {
+        this(resourceHasher, resourceFilter, null, null, new ZipHasherStatistics.Collector());
+    }
+
+    /**
+     * @param contentHashCache caches the hashes of nested archives and of entries by their name, CRC and size,
+     * or {@code null} to hash nested archives and entries every time.
+     * @param executor hashes the entries of large archives in parallel, or {@code null} to hash all entries on the calling thread.
+     */
+    public ZipHasher(ResourceHasher resourceHasher, ResourceFilter resourceFilter, @Nullable ResourceSnapshotterCacheService contentHashCache, @Nullable Executor executor, ZipHasherStatistics.Collector statisticsCollector) {
         this.resourceHasher = resourceHasher;
         this.resourceFilter = resourceFilter;
+        this.contentHashCache = contentHashCache;
+        this.executor = executor;
+        this.statisticsCollector = statisticsCollector;
+        Hasher hasher = Hashing.newHasher();
+        appendConfigurationToHasher(hasher);
+        this.configurationHash = hasher.hash();
     }
 
     @Nullable
@@ -81,47 +109,191 @@ private HashCode hashZipContents(RegularFileSnapshot zipFileSnapshot) {
             if (fingerprints.isEmpty()) {
                 return null;
             }
-            Hasher hasher = Hashing.newHasher();
-            FingerprintHashingStrategy.SORT.appendToHasher(hasher, fingerprints);
-            return hasher.hash();
+            return hashFingerprints(fingerprints);
         } catch (Exception e) {
             return hashMalformedZip(zipFileSnapshot, e);
         }
     }
 
+    private static HashCode hashFingerprints(List<FileSystemLocationFingerprint> fingerprints) {
+        Hasher hasher = Hashing.newHasher();
+        FingerprintHashingStrategy.SORT.appendToHasher(hasher, fingerprints);
+        return hasher.hash();
+    }
+
     private List<FileSystemLocationFingerprint> fingerprintZipEntries(String zipFile) throws IOException {
         ZipInput input = null;
         try {
             input = FileZipInput.create(new File(zipFile));
             List<FileSystemLocationFingerprint> fingerprints = Lists.newArrayList();
-            fingerprintZipEntries("", fingerprints, input);
+            if (executor != null && input instanceof FileZipInput) {
+                fingerprintZipEntriesInParallel(fingerprints, input, zipFile);
+            } else {
+                fingerprintZipEntries(fingerprints, input, zipFile);
+            }
             return fingerprints;
         } finally {
             IoActions.closeQuietly(input);
         }
     }
 
-    private void fingerprintZipEntries(String parentName, List<FileSystemLocationFingerprint> fingerprints, ZipInput input) throws IOException {
-        fingerprints.add(newZipMarker(parentName));
+    private void fingerprintZipEntries(List<FileSystemLocationFingerprint> fingerprints, ZipInput input, String zipFile) throws IOException {
+        fingerprints.add(newZipMarker());
         for (ZipEntry zipEntry : input) {
-            ZipEntryRelativePath relativePath = new ZipEntryRelativePath(zipEntry);
-            if (zipEntry.isDirectory() || resourceFilter.shouldBeIgnored(relativePath)) {
-                continue;
+            fingerprintZipEntry(fingerprints, zipEntry, zipFile);
+        }
+    }
+
+    /**
+     * Hashes the entries of an archive in chunks, using the entries listed in its central directory.
+     * The calling thread hashes chunks as well, so hashing progresses even when the executor is busy.
+     */
+    private void fingerprintZipEntriesInParallel(List<FileSystemLocationFingerprint> fingerprints, ZipInput input, String zipFile) throws IOException {
+        List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        for (ZipEntry zipEntry : input) {
+            entries.add(zipEntry);
+        }
+        int chunkCount = (entries.size() + PARALLEL_HASHING_CHUNK_SIZE - 1) / PARALLEL_HASHING_CHUNK_SIZE;
+        if (chunkCount < 2) {
+            fingerprints.add(newZipMarker());
+            for (ZipEntry zipEntry : entries) {
+                fingerprintZipEntry(fingerprints, zipEntry, zipFile);
             }
-            String fullName = parentName.isEmpty() ? zipEntry.getName() : parentName + "/" + zipEntry.getName();
-            if (isZipFile(zipEntry.getName())) {
-                fingerprintZipEntries(fullName, fingerprints, new StreamZipInput(zipEntry.getInputStream()));
-            } else {
-                HashCode hash = resourceHasher.hash(zipEntry);
-                if (hash != null) {
-                    fingerprints.add(new DefaultFileSystemLocationFingerprint(fullName, FileType.RegularFile, hash));
+            return;
+        }
+
+        List<List<FileSystemLocationFingerprint>> chunkFingerprints = new ArrayList<List<FileSystemLocationFingerprint>>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunkFingerprints.add(new ArrayList<FileSystemLocationFingerprint>());
+        }
+        AtomicInteger nextChunk = new AtomicInteger();
+        Runnable hashChunks = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                List<ZipEntry> chunkEntries = entries.subList(chunk * PARALLEL_HASHING_CHUNK_SIZE, Math.min(entries.size(), (chunk + 1) * PARALLEL_HASHING_CHUNK_SIZE));
+                try {
+                    for (ZipEntry zipEntry : chunkEntries) {
+                        fingerprintZipEntry(chunkFingerprints.get(chunk), zipEntry, zipFile);
+                    }
+                } catch (IOException e) {
+                    nextChunk.set(chunkCount);
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    nextChunk.set(chunkCount);
+                    throw e;
+                }
+            }
+        };
+
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+        for (int i = 1; i < Math.min(chunkCount, MAX_PARALLEL_HASHING_TASKS); i++) {
+            FutureTask<Void> task = new FutureTask<Void>(hashChunks, null);
+            tasks.add(task);
+            executor.execute(task);
+        }
+        Throwable failure = null;
+        try {
+            hashChunks.run();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // Wait for all tasks even after a failure, since the archive is closed afterwards
+        for (FutureTask<Void> task : tasks) {
+            // Runs the task here if the executor has not started it yet, in which case there is nothing left to do
+            task.run();
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
                 }
             }
         }
+        if (failure != null) {
+            throw UncheckedException.throwAsUncheckedException(failure);
+        }
+
+        fingerprints.add(newZipMarker());
+        for (List<FileSystemLocationFingerprint> chunk : chunkFingerprints) {
+            fingerprints.addAll(chunk);
+        }
+    }
+
+    /**
+     * @param zipFile the top-level archive containing the entry, which decides where the hashes are cached
+     */
+    private void fingerprintZipEntry(List<FileSystemLocationFingerprint> fingerprints, ZipEntry zipEntry, String zipFile) throws IOException {
+        ZipEntryRelativePath relativePath = new ZipEntryRelativePath(zipEntry);
+        if (zipEntry.isDirectory() || resourceFilter.shouldBeIgnored(relativePath)) {
+            return;
+        }
+        HashCode hash = isZipFile(zipEntry.getName())
+            ? hashNestedZip(zipEntry, zipFile)
+            : hashZipEntry(zipEntry, zipFile);
+        if (hash != null) {
+            fingerprints.add(new DefaultFileSystemLocationFingerprint(zipEntry.getName(), FileType.RegularFile, hash));
+        }
+    }
+
+    /**
+     * Hashes a nested archive the same way as a top-level one, while streaming it.
+     * The hash is cached by the name, CRC and size of the nested archive from the zip directory, so an unchanged nested archive is not read again.
+     */
+    @Nullable
+    private HashCode hashNestedZip(ZipEntry zipEntry, String zipFile) throws IOException {
+        Factory<HashCode> hasher = () -> {
+            List<FileSystemLocationFingerprint> fingerprints = Lists.newArrayList();
+            try {
+                fingerprintZipEntries(fingerprints, new StreamZipInput(zipEntry.getInputStream()), zipFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return hashFingerprints(fingerprints);
+        };
+        long crc = zipEntry.getCrc();
+        int size = zipEntry.size();
+        if (contentHashCache == null || crc == -1 || size < 0) {
+            return hasher.create();
+        }
+        return contentHashCache.hashContent(zipFile, entryKey("nested-zip", zipEntry.getName(), crc, size), configurationHash, hasher);
+    }
+
+    /**
+     * Looks up the hash of an entry by its name, CRC and size from the zip directory, so only the entries
+     * which changed are hashed when an archive is rebuilt with different timestamps or a different entry order.
+     * The entry hashes are cached apart from the hashes of whole files, see {@link ResourceSnapshotterCacheService#hashZipEntry}.
+     */
+    @Nullable
+    private HashCode hashZipEntry(ZipEntry zipEntry, String zipFile) throws IOException {
+        long crc = zipEntry.getCrc();
+        int size = zipEntry.size();
+        if (contentHashCache == null || crc == -1 || size < 0) {
+            return resourceHasher.hash(zipEntry);
+        }
+        statisticsCollector.reportEntryLookedUp();
+        return contentHashCache.hashZipEntry(zipFile, entryKey("zip-entry", zipEntry.getName(), crc, size), configurationHash, () -> {
+            statisticsCollector.reportEntryHashed();
+            try {
+                return resourceHasher.hash(zipEntry);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static HashCode entryKey(String kind, String name, long crc, int size) {
+        Hasher entryKey = Hashing.newHasher();
+        entryKey.putString(kind);
+        entryKey.putString(name);
+        entryKey.putLong(crc);
+        entryKey.putInt(size);
+        return entryKey.hash();
     }
 
-    private DefaultFileSystemLocationFingerprint newZipMarker(String relativePath) {
-        return new DefaultFileSystemLocationFingerprint(relativePath, FileType.RegularFile, HashCode.fromInt(0));
+    private DefaultFileSystemLocationFingerprint newZipMarker() {
+        return new DefaultFileSystemLocationFingerprint("", FileType.RegularFile, HashCode.fromInt(0));
     }
 
     private static class ZipEntryRelativePath implements Factory<String[]> {
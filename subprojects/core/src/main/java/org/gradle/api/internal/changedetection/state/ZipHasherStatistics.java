@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the zip entries fingerprinted by a {@link ZipHasher}.
+ */
+public interface ZipHasherStatistics {
+    /**
+     * The number of zip entries whose fingerprint was looked up by their name, CRC and size.
+     */
+    long getLookedUpEntryCount();
+
+    /**
+     * The number of looked up zip entries which had to be hashed, as their fingerprint was not cached.
+     */
+    long getHashedEntryCount();
+
+    class Collector {
+        private final AtomicLong lookedUpEntryCount = new AtomicLong();
+        private final AtomicLong hashedEntryCount = new AtomicLong();
+
+        public void reportEntryLookedUp() {
+            lookedUpEntryCount.incrementAndGet();
+        }
+
+        public void reportEntryHashed() {
+            hashedEntryCount.incrementAndGet();
+        }
+
+        /**
+         * Returns the lookups counted so far and resets the counters.
+         */
+        public ZipHasherStatistics collect() {
+            return new DefaultZipHasherStatistics(
+                lookedUpEntryCount.getAndSet(0),
+                hashedEntryCount.getAndSet(0)
+            );
+        }
+    }
+
+    class DefaultZipHasherStatistics implements ZipHasherStatistics {
+        private final long lookedUpEntryCount;
+        private final long hashedEntryCount;
+
+        public DefaultZipHasherStatistics(long lookedUpEntryCount, long hashedEntryCount) {
+            this.lookedUpEntryCount = lookedUpEntryCount;
+            this.hashedEntryCount = hashedEntryCount;
+        }
+
+        @Override
+        public long getLookedUpEntryCount() {
+            return lookedUpEntryCount;
+        }
+
+        @Override
+        public long getHashedEntryCount() {
+            return hashedEntryCount;
+        }
+
+        @Override
+        public String toString() {
+            long reused = lookedUpEntryCount - hashedEntryCount;
+            return String.format("Looked up %d zip entry fingerprints, %d reused (%.1f%%)", lookedUpEntryCount, reused, lookedUpEntryCount == 0 ? 0 : 100.0 * reused / lookedUpEntryCount);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the batching and coalescing done by the cache access workers at the end of each build.
+ */
+public class CacheAccessWorkerStatisticsReporter implements RootBuildLifecycleListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheAccessWorkerStatisticsReporter.class);
+
+    private final CacheAccessWorkerStatistics.Collector statisticsCollector;
+
+    public CacheAccessWorkerStatisticsReporter(CacheAccessWorkerStatistics.Collector statisticsCollector) {
+        this.statisticsCollector = statisticsCollector;
+    }
+
+    @Override
+    public void afterStart(GradleInternal gradle) {
+    }
+
+    @Override
+    public void beforeComplete(GradleInternal gradle) {
+        LOGGER.info("Cache access workers: {}", statisticsCollector.collect());
+    }
+}
@@ -30,9 +30,10 @@
 import org.gradle.caching.internal.controller.impl.DefaultBuildCacheCommandFactory;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCompression;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.DefaultTarPackerFileSystemSupport;
 import org.gradle.caching.internal.packaging.impl.FilePermissionAccess;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarPackerFileSystemSupport;
 import org.gradle.caching.internal.services.BuildCacheControllerFactory;
@@ -40,6 +41,7 @@
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.file.Deleter;
 import org.gradle.internal.file.FileException;
 import org.gradle.internal.hash.ChecksumService;
@@ -56,6 +58,7 @@
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.service.scopes.AbstractPluginServiceRegistry;
+import org.gradle.internal.vfs.FileHashingExecutor;
 import org.gradle.internal.vfs.VirtualFileSystem;
 import org.gradle.util.GradleVersion;
 import org.gradle.util.Path;
@@ -68,6 +71,28 @@
  */
 public final class BuildCacheServices extends AbstractPluginServiceRegistry {
 
+    /**
+     * System property to select the compression used when packing build cache entries, either {@code gzip} or {@code lz4}.
+     *
+     * Entries are unpacked regardless of the compression they were packed with.
+     */
+    public static final String ENTRY_COMPRESSION_PROPERTY = "org.gradle.internal.build-cache.compression";
+
+    /**
+     * Integer system property to select the compression level used when packing build cache entries, from 0 (fastest) to 9 (smallest).
+     */
+    public static final String ENTRY_COMPRESSION_LEVEL_PROPERTY = "org.gradle.internal.build-cache.compression-level";
+
+    /**
+     * Boolean system property to write and hash the files of unpacked build cache entries in parallel.
+     */
+    public static final String PARALLEL_UNPACK_PROPERTY = "org.gradle.internal.build-cache.parallel-unpack";
+
+    /**
+     * Boolean system property to access the remote build cache asynchronously, with concurrent loads and stores.
+     */
+    public static final String ASYNC_REMOTE_PROPERTY = "org.gradle.internal.build-cache.async-remote";
+
     @Override
     public void registerBuildTreeServices(ServiceRegistration registration) {
         registration.addProvider(new Object() {
@@ -118,10 +143,20 @@ BuildCacheEntryPacker createResultPacker(
                 TarPackerFileSystemSupport fileSystemSupport,
                 FileSystem fileSystem,
                 StreamHasher fileHasher,
-                StringInterner stringInterner
+                StringInterner stringInterner,
+                FileHashingExecutor fileHashingExecutor
             ) {
-                return new GZipBuildCacheEntryPacker(
-                    new TarBuildCacheEntryPacker(fileSystemSupport, new FilePermissionsAccessAdapter(fileSystem), fileHasher, stringInterner));
+                return new CompressingBuildCacheEntryPacker(
+                    new TarBuildCacheEntryPacker(
+                        fileSystemSupport,
+                        new FilePermissionsAccessAdapter(fileSystem),
+                        fileHasher,
+                        stringInterner,
+                        Boolean.getBoolean(PARALLEL_UNPACK_PROPERTY) ? fileHashingExecutor : null
+                    ),
+                    BuildCacheEntryCompression.forName(System.getProperty(ENTRY_COMPRESSION_PROPERTY, "gzip")),
+                    Integer.getInteger(ENTRY_COMPRESSION_LEVEL_PROPERTY, BuildCacheEntryCompression.DEFAULT_LEVEL)
+                );
             }
 
             OriginMetadataFactory createOriginMetadataFactory(
@@ -155,10 +190,11 @@ BuildCacheController createBuildCacheController(
                 BuildOperationExecutor buildOperationExecutor,
                 InstantiatorFactory instantiatorFactory,
                 GradleInternal gradle,
-                RootBuildCacheControllerRef rootControllerRef
+                RootBuildCacheControllerRef rootControllerRef,
+                ExecutorFactory executorFactory
             ) {
                 if (isRoot(gradle) || isGradleBuildTaskRoot(rootControllerRef)) {
-                    return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle);
+                    return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle, executorFactory);
                 } else {
                     // must be an included build or buildSrc
                     return rootControllerRef.getForNonRootBuild();
@@ -178,7 +214,14 @@ private boolean isRoot(GradleInternal gradle) {
                 return gradle.getParent() == null;
             }
 
-            private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle) {
+            private BuildCacheController doCreateBuildCacheController(
+                ServiceRegistry serviceRegistry,
+                BuildCacheConfigurationInternal buildCacheConfiguration,
+                BuildOperationExecutor buildOperationExecutor,
+                InstantiatorFactory instantiatorFactory,
+                GradleInternal gradle,
+                ExecutorFactory executorFactory
+            ) {
                 StartParameter startParameter = gradle.getStartParameter();
                 Path buildIdentityPath = gradle.getIdentityPath();
                 File gradleUserHomeDir = gradle.getGradleUserHomeDir();
@@ -196,7 +239,8 @@ private BuildCacheController doCreateBuildCacheController(ServiceRegistry servic
                     remoteAccessMode,
                     logStackTraces,
                     emitDebugLogging,
-                    instantiatorFactory.inject(serviceRegistry)
+                    instantiatorFactory.inject(serviceRegistry),
+                    Boolean.getBoolean(ASYNC_REMOTE_PROPERTY) ? executorFactory : null
                 );
             }
         });
@@ -20,25 +20,33 @@
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.RuntimeClasspathResourceHasher;
+import org.gradle.api.internal.changedetection.state.ZipHasherStatistics;
 import org.gradle.api.tasks.ClasspathNormalizer;
 import org.gradle.api.tasks.FileNormalizer;
 import org.gradle.internal.fingerprint.FileCollectionSnapshotter;
 import org.gradle.internal.fingerprint.classpath.ClasspathFingerprinter;
 import org.gradle.internal.fingerprint.impl.AbstractFileCollectionFingerprinter;
 
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
 public class DefaultClasspathFingerprinter extends AbstractFileCollectionFingerprinter implements ClasspathFingerprinter {
     public DefaultClasspathFingerprinter(
         ResourceSnapshotterCacheService cacheService,
         FileCollectionSnapshotter fileCollectionSnapshotter,
         ResourceFilter classpathResourceFilter,
-        StringInterner stringInterner
+        StringInterner stringInterner,
+        @Nullable Executor archiveHashingExecutor,
+        ZipHasherStatistics.Collector zipHasherStatisticsCollector
     ) {
         super(
             ClasspathFingerprintingStrategy.runtimeClasspath(
                 classpathResourceFilter,
                 new RuntimeClasspathResourceHasher(),
                 cacheService,
-                stringInterner
+                stringInterner,
+                archiveHashingExecutor,
+                zipHasherStatisticsCollector
             ),
             fileCollectionSnapshotter
         );
@@ -29,6 +29,8 @@
 import org.gradle.api.internal.project.CrossProjectConfigurator;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.cache.CacheRepository;
+import org.gradle.cache.internal.CacheAccessWorkerStatistics;
+import org.gradle.cache.internal.CacheAccessWorkerStatisticsReporter;
 import org.gradle.cache.internal.CacheRepositoryServices;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
@@ -110,8 +112,10 @@ DefaultDeploymentRegistry createDeploymentRegistry(PendingChangesManager pending
         return new DefaultDeploymentRegistry(pendingChangesManager, buildOperationExecutor, objectFactory);
     }
 
-    ListenerManager createListenerManager(ListenerManager parent) {
-        return parent.createChild();
+    ListenerManager createListenerManager(ListenerManager parent, CacheAccessWorkerStatistics.Collector cacheAccessWorkerStatisticsCollector) {
+        ListenerManager listenerManager = parent.createChild();
+        listenerManager.addListener(new CacheAccessWorkerStatisticsReporter(cacheAccessWorkerStatisticsCollector));
+        return listenerManager;
     }
 
     CrossProjectConfigurator createCrossProjectConfigurator(BuildOperationExecutor buildOperationExecutor) {
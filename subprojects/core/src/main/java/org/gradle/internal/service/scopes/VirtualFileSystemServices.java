@@ -25,11 +25,13 @@
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache;
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService;
+import org.gradle.api.internal.changedetection.state.FileHasherStatisticsReporter;
 import org.gradle.api.internal.changedetection.state.GlobalScopeFileTimeStampInspector;
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.SplitFileHasher;
 import org.gradle.api.internal.changedetection.state.SplitResourceSnapshotterCacheService;
+import org.gradle.api.internal.changedetection.state.ZipHasherStatistics;
 import org.gradle.api.internal.file.FileCollectionFactory;
 import org.gradle.api.internal.initialization.loadercache.DefaultClasspathHasher;
 import org.gradle.cache.CacheRepository;
@@ -41,6 +43,8 @@
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.initialization.layout.ProjectCacheDir;
 import org.gradle.internal.classloader.ClasspathHasher;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
 import org.gradle.internal.file.Stat;
@@ -62,7 +66,9 @@
 import org.gradle.internal.fingerprint.impl.RelativePathFileCollectionFingerprinter;
 import org.gradle.internal.hash.DefaultFileHasher;
 import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.FileHasherStatistics;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.os.OperatingSystem;
@@ -71,9 +77,11 @@
 import org.gradle.internal.snapshot.SnapshotHierarchy;
 import org.gradle.internal.vfs.AdditiveCacheLocations;
 import org.gradle.internal.vfs.DarwinFileWatcherRegistry;
+import org.gradle.internal.vfs.FileHashingExecutor;
 import org.gradle.internal.vfs.LinuxFileWatcherRegistry;
 import org.gradle.internal.vfs.RoutingVirtualFileSystem;
 import org.gradle.internal.vfs.VirtualFileSystem;
+import org.gradle.internal.vfs.VirtualFileSystemSnapshotStore;
 import org.gradle.internal.vfs.WatchingAwareVirtualFileSystem;
 import org.gradle.internal.vfs.WindowsFileWatcherRegistry;
 import org.gradle.internal.vfs.impl.DefaultVirtualFileSystem;
@@ -87,6 +95,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 
 import static org.gradle.internal.snapshot.CaseSensitivity.CASE_INSENSITIVE;
@@ -122,6 +131,37 @@ public class VirtualFileSystemServices extends AbstractPluginServiceRegistry {
      */
     public static final String VFS_DROP_PROPERTY = "org.gradle.unsafe.vfs.drop";
 
+    /**
+     * Long system property to hash files at least the given number of bytes big by mapping them into memory,
+     * instead of streaming them through a buffer on the heap.
+     *
+     * Hashing via memory mapping is disabled when the property is not set.
+     */
+    public static final String MAPPED_HASHING_THRESHOLD_PROPERTY = "org.gradle.internal.hash.mapped-threshold";
+
+    /**
+     * Boolean system property to hash the files in a directory in parallel when snapshotting it,
+     * and the entries of large archives in parallel when fingerprinting a classpath.
+     *
+     * The number of files hashed in parallel is limited by the maximum number of workers.
+     */
+    public static final String PARALLEL_HASHING_ENABLED_PROPERTY = "org.gradle.internal.snapshot.parallel-hashing";
+
+    /**
+     * Boolean system property to store the virtual file system in the Gradle user home when the daemon stops,
+     * and to restore it in the next daemon.
+     *
+     * Only has an effect when retention is enabled, since the virtual file system is emptied after each build otherwise.
+     *
+     * @see #VFS_RETENTION_ENABLED_PROPERTY
+     */
+    public static final String VFS_PERSISTENCE_ENABLED_PROPERTY = "org.gradle.unsafe.vfs.persistence";
+
+    /**
+     * The number of archive entry hashes kept in memory, separately from the resource hashes, see {@link ResourceSnapshotterCacheService#hashZipEntry}.
+     */
+    private static final int ZIP_ENTRY_HASHES_IN_MEMORY = 100000;
+
     public static boolean isPartialInvalidationEnabled(Map<String, String> systemPropertiesArgs) {
         return isSystemPropertyEnabled(VFS_PARTIAL_INVALIDATION_ENABLED_PROPERTY, systemPropertiesArgs)
             || isRetentionEnabled(systemPropertiesArgs);
@@ -141,6 +181,17 @@ private static String getSystemProperty(String systemProperty, Map<String, Strin
         return systemPropertiesArgs.getOrDefault(systemProperty, System.getProperty(systemProperty));
     }
 
+    private static long getMappedHashingThreshold() {
+        return Long.getLong(MAPPED_HASHING_THRESHOLD_PROPERTY, -1L);
+    }
+
+    @Nullable
+    public static Executor getHashingExecutor(FileHashingExecutor fileHashingExecutor) {
+        return Boolean.getBoolean(PARALLEL_HASHING_ENABLED_PROPERTY)
+            ? fileHashingExecutor
+            : null;
+    }
+
     @Override
     public void registerGradleUserHomeServices(ServiceRegistration registration) {
         registration.addProvider(new GradleUserHomeServices());
@@ -158,19 +209,39 @@ CrossBuildFileHashCache createCrossBuildFileHashCache(CacheRepository cacheRepos
             return new CrossBuildFileHashCache(null, cacheRepository, inMemoryCacheDecoratorFactory, CrossBuildFileHashCache.Kind.FILE_HASHES);
         }
 
-        FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher) {
-            CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+        FileHasherStatistics.Collector createFileHasherStatisticsCollector() {
+            return new FileHasherStatistics.Collector();
+        }
+
+        ZipHasherStatistics.Collector createZipHasherStatisticsCollector() {
+            return new ZipHasherStatistics.Collector();
+        }
+
+        FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher, FileHasherStatistics.Collector statisticsCollector) {
+            DefaultFileHasher delegate = new DefaultFileHasher(streamHasher, getMappedHashingThreshold(), statisticsCollector);
+            CachingFileHasher fileHasher = new CachingFileHasher(delegate, fileStore, stringInterner, fileTimeStampInspector, Hashing.contentFunctionQualifiedName("fileHashes"), fileSystem);
             fileTimeStampInspector.attach(fileHasher);
             return fileHasher;
         }
 
+        FileHashingExecutor createFileHashingExecutor(ExecutorFactory executorFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
+            return new FileHashingExecutor(executorFactory, parallelismConfigurationManager);
+        }
+
+        VirtualFileSystemSnapshotStore createVirtualFileSystemSnapshotStore(CacheScopeMapping cacheScopeMapping, StringInterner stringInterner) {
+            File storeDir = cacheScopeMapping.getBaseDirectory(null, "vfs", VersionStrategy.CachePerVersion);
+            return new VirtualFileSystemSnapshotStore(new File(storeDir, Hashing.contentFunctionQualifiedName("snapshots") + ".bin"), stringInterner);
+        }
+
         WatchingAwareVirtualFileSystem createVirtualFileSystem(
             AdditiveCacheLocations additiveCacheLocations,
             FileHasher hasher,
+            FileHashingExecutor fileHashingExecutor,
             FileSystem fileSystem,
             Stat stat,
             StringInterner stringInterner,
-            ListenerManager listenerManager
+            ListenerManager listenerManager,
+            VirtualFileSystemSnapshotStore snapshotStore
         ) {
             Predicate<String> watchFilter = path -> !additiveCacheLocations.isInsideAdditiveCache(path);
             DelegatingDiffCapturingUpdateFunctionDecorator updateFunctionDecorator = new DelegatingDiffCapturingUpdateFunctionDecorator(watchFilter);
@@ -180,8 +251,12 @@ WatchingAwareVirtualFileSystem createVirtualFileSystem(
                 stat,
                 fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
                 updateFunctionDecorator,
+                getHashingExecutor(fileHashingExecutor),
                 DirectoryScanner.getDefaultExcludes()
             );
+            if (Boolean.getBoolean(VFS_PERSISTENCE_ENABLED_PROPERTY)) {
+                snapshotStore.attach(delegate);
+            }
             WatchingAwareVirtualFileSystem watchingAwareVirtualFileSystem = determineWatcherRegistryFactory(OperatingSystem.current())
                 .<WatchingAwareVirtualFileSystem>map(watcherRegistryFactory -> new WatchingVirtualFileSystem(
                     watcherRegistryFactory,
@@ -220,14 +295,18 @@ FileCollectionSnapshotter createFileCollectionSnapshotter(VirtualFileSystem virt
 
         ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildFileHashCache store) {
             PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(
-                PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()),
+                PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("resourceHashesCache"), HashCode.class, new HashCodeSerializer()),
                 400000,
                 true);
-            return new DefaultResourceSnapshotterCacheService(resourceHashesCache);
+            PersistentIndexedCache<HashCode, HashCode> zipEntryHashesCache = store.createCache(
+                PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("zipEntryHashesCache"), HashCode.class, new HashCodeSerializer()),
+                ZIP_ENTRY_HASHES_IN_MEMORY,
+                true);
+            return new DefaultResourceSnapshotterCacheService(resourceHashesCache, zipEntryHashesCache);
         }
 
-        ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner) {
-            return new DefaultClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, ResourceFilter.FILTER_NOTHING, stringInterner);
+        ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, FileHashingExecutor fileHashingExecutor, ZipHasherStatistics.Collector zipHasherStatisticsCollector) {
+            return new DefaultClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, ResourceFilter.FILTER_NOTHING, stringInterner, getHashingExecutor(fileHashingExecutor), zipHasherStatisticsCollector);
         }
 
         ClasspathHasher createClasspathHasher(ClasspathFingerprinter fingerprinter, FileCollectionFactory fileCollectionFactory) {
@@ -247,17 +326,23 @@ FileHasher createFileHasher(
             BuildScopeFileTimeStampInspector fileTimeStampInspector,
             CrossBuildFileHashCache cacheAccess,
             FileHasher globalHasher,
+            FileHasherStatistics.Collector statisticsCollector,
             FileSystem fileSystem,
+            ListenerManager listenerManager,
             StreamHasher streamHasher,
-            StringInterner stringInterner
+            StringInterner stringInterner,
+            ZipHasherStatistics.Collector zipHasherStatisticsCollector
         ) {
-            CachingFileHasher localHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), cacheAccess, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+            listenerManager.addListener(new FileHasherStatisticsReporter(statisticsCollector, zipHasherStatisticsCollector));
+            DefaultFileHasher delegate = new DefaultFileHasher(streamHasher, getMappedHashingThreshold(), statisticsCollector);
+            CachingFileHasher localHasher = new CachingFileHasher(delegate, cacheAccess, stringInterner, fileTimeStampInspector, Hashing.contentFunctionQualifiedName("fileHashes"), fileSystem);
             return new SplitFileHasher(globalHasher, localHasher, additiveCacheLocations);
         }
 
         VirtualFileSystem createVirtualFileSystem(
             AdditiveCacheLocations additiveCacheLocations,
             FileHasher hasher,
+            FileHashingExecutor fileHashingExecutor,
             FileSystem fileSystem,
             ListenerManager listenerManager,
             StartParameter startParameter,
@@ -271,6 +356,7 @@ VirtualFileSystem createVirtualFileSystem(
                 stat,
                 fileSystem.isCaseSensitive() ? CASE_SENSITIVE : CASE_INSENSITIVE,
                 SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator.NOOP,
+                getHashingExecutor(fileHashingExecutor),
                 DirectoryScanner.getDefaultExcludes()
             );
             RoutingVirtualFileSystem routingVirtualFileSystem = new RoutingVirtualFileSystem(
@@ -343,13 +429,14 @@ ResourceSnapshotterCacheService createResourceSnapshotterCacheService(
             CrossBuildFileHashCache store,
             ResourceSnapshotterCacheService globalCache
         ) {
-            PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()), 800000, true);
-            DefaultResourceSnapshotterCacheService localCache = new DefaultResourceSnapshotterCacheService(resourceHashesCache);
+            PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("resourceHashesCache"), HashCode.class, new HashCodeSerializer()), 800000, true);
+            PersistentIndexedCache<HashCode, HashCode> zipEntryHashesCache = store.createCache(PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("zipEntryHashesCache"), HashCode.class, new HashCodeSerializer()), ZIP_ENTRY_HASHES_IN_MEMORY, true);
+            DefaultResourceSnapshotterCacheService localCache = new DefaultResourceSnapshotterCacheService(resourceHashesCache, zipEntryHashesCache);
             return new SplitResourceSnapshotterCacheService(globalCache, localCache, additiveCacheLocations);
         }
 
-        CompileClasspathFingerprinter createCompileClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner) {
-            return new DefaultCompileClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, stringInterner);
+        CompileClasspathFingerprinter createCompileClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileCollectionSnapshotter fileCollectionSnapshotter, StringInterner stringInterner, FileHashingExecutor fileHashingExecutor, ZipHasherStatistics.Collector zipHasherStatisticsCollector) {
+            return new DefaultCompileClasspathFingerprinter(resourceSnapshotterCacheService, fileCollectionSnapshotter, stringInterner, getHashingExecutor(fileHashingExecutor), zipHasherStatisticsCollector);
         }
 
     }
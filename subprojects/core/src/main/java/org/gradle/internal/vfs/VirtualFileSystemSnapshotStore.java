@@ -0,0 +1,247 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.vfs;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.StringDeduplicatingKryoBackedEncoder;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
+import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileMetadata;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
+import org.gradle.internal.vfs.impl.DefaultVirtualFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the contents of the virtual file system in the Gradle user home when it is closed,
+ * so a new daemon can start with the snapshots of the previous one.
+ *
+ * The restored snapshots are checked against the file system before being used,
+ * see {@link DefaultVirtualFileSystem#restoreSnapshots(Iterable, long, Map)}.
+ * For that, the store also keeps the file keys of the regular files, and its own modification time is the time the snapshots were stored.
+ */
+public class VirtualFileSystemSnapshotStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualFileSystemSnapshotStore.class);
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final File storeFile;
+    private final Interner<String> stringInterner;
+    private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+    private DefaultVirtualFileSystem virtualFileSystem;
+
+    public VirtualFileSystemSnapshotStore(File storeFile, Interner<String> stringInterner) {
+        this.storeFile = storeFile;
+        this.stringInterner = stringInterner;
+    }
+
+    /**
+     * Restores the stored snapshots into the given virtual file system, and stores its snapshots when closed.
+     */
+    public void attach(DefaultVirtualFileSystem virtualFileSystem) {
+        this.virtualFileSystem = virtualFileSystem;
+        long storedAt = storeFile.lastModified();
+        Map<String, String> fileKeys = new HashMap<>();
+        List<CompleteFileSystemLocationSnapshot> snapshots = load(fileKeys);
+        LOGGER.info("Restored {} virtual file system snapshots from {}", snapshots.size(), storeFile);
+        virtualFileSystem.restoreSnapshots(snapshots, storedAt, fileKeys);
+    }
+
+    private List<CompleteFileSystemLocationSnapshot> load(Map<String, String> fileKeys) {
+        if (!storeFile.isFile()) {
+            return ImmutableList.of();
+        }
+        try (StringDeduplicatingKryoBackedDecoder decoder = new StringDeduplicatingKryoBackedDecoder(new FileInputStream(storeFile))) {
+            if (decoder.readSmallInt() != FORMAT_VERSION) {
+                return ImmutableList.of();
+            }
+            int count = decoder.readSmallInt();
+            List<CompleteFileSystemLocationSnapshot> snapshots = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String absolutePath = decoder.readString();
+                snapshots.add(readSnapshot(decoder, absolutePath, new File(absolutePath).getName(), fileKeys));
+            }
+            return snapshots;
+        } catch (Exception e) {
+            LOGGER.info("Could not restore virtual file system snapshots from {}", storeFile, e);
+            fileKeys.clear();
+            return ImmutableList.of();
+        }
+    }
+
+    private CompleteFileSystemLocationSnapshot readSnapshot(Decoder decoder, String absolutePath, String name, Map<String, String> fileKeys) throws IOException {
+        String internedAbsolutePath = stringInterner.intern(absolutePath);
+        String internedName = stringInterner.intern(name);
+        FileType type = FileType.values()[decoder.readSmallInt()];
+        switch (type) {
+            case Missing:
+                return new MissingFileSnapshot(internedAbsolutePath, internedName);
+            case RegularFile:
+                HashCode contentHash = hashCodeSerializer.read(decoder);
+                long size = decoder.readSmallLong();
+                long lastModified = decoder.readLong();
+                String fileKey = decoder.readNullableString();
+                if (fileKey != null) {
+                    fileKeys.put(internedAbsolutePath, fileKey);
+                }
+                return new RegularFileSnapshot(internedAbsolutePath, internedName, contentHash, new FileMetadata(size, lastModified));
+            case Directory:
+                HashCode directoryHash = hashCodeSerializer.read(decoder);
+                int childCount = decoder.readSmallInt();
+                List<CompleteFileSystemLocationSnapshot> children = new ArrayList<>(childCount);
+                for (int i = 0; i < childCount; i++) {
+                    String childName = decoder.readString();
+                    children.add(readSnapshot(decoder, childPath(absolutePath, childName), childName, fileKeys));
+                }
+                return new CompleteDirectorySnapshot(internedAbsolutePath, internedName, children, directoryHash);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private static String childPath(String parentPath, String childName) {
+        return parentPath.endsWith(File.separator)
+            ? parentPath + childName
+            : parentPath + File.separatorChar + childName;
+    }
+
+    @Override
+    public void close() {
+        if (virtualFileSystem == null) {
+            return;
+        }
+        List<CompleteFileSystemLocationSnapshot> snapshots = new ArrayList<>();
+        virtualFileSystem.visitSnapshotsToRestore(snapshots::add);
+        Map<String, String> fileKeys = new HashMap<>();
+        snapshots.removeIf(snapshot -> !collectFileKeys(snapshot, fileKeys));
+        if (snapshots.isEmpty()) {
+            // Retention is disabled or the virtual file system has been invalidated.
+            // Keep the snapshots another daemon may have stored.
+            LOGGER.info("No virtual file system snapshots to store in {}", storeFile);
+            return;
+        }
+        try {
+            store(snapshots, fileKeys);
+            LOGGER.info("Stored {} virtual file system snapshots in {}", snapshots.size(), storeFile);
+        } catch (IOException e) {
+            LOGGER.info("Could not store virtual file system snapshots in {}", storeFile, e);
+        }
+    }
+
+    /**
+     * Collects the file keys of the regular files in the snapshot, and checks that they still have the snapshotted metadata.
+     */
+    private static boolean collectFileKeys(CompleteFileSystemLocationSnapshot snapshot, Map<String, String> fileKeys) {
+        switch (snapshot.getType()) {
+            case Missing:
+                return true;
+            case RegularFile:
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(Paths.get(snapshot.getAbsolutePath()), BasicFileAttributes.class);
+                    if (!attrs.isRegularFile() || !FileMetadata.from(attrs).equals(((RegularFileSnapshot) snapshot).getMetadata())) {
+                        return false;
+                    }
+                    String fileKey = DirectorySnapshotter.fileKey(attrs);
+                    if (fileKey != null) {
+                        fileKeys.put(snapshot.getAbsolutePath(), fileKey);
+                    }
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            case Directory:
+                for (CompleteFileSystemLocationSnapshot child : ((CompleteDirectorySnapshot) snapshot).getChildren()) {
+                    if (!collectFileKeys(child, fileKeys)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private void store(List<CompleteFileSystemLocationSnapshot> snapshots, Map<String, String> fileKeys) throws IOException {
+        File storeDir = storeFile.getParentFile();
+        Files.createDirectories(storeDir.toPath());
+        // Other daemons may read or write the store at the same time, so replace it in one go
+        File tempFile = File.createTempFile(storeFile.getName(), ".tmp", storeDir);
+        try {
+            try (StringDeduplicatingKryoBackedEncoder encoder = new StringDeduplicatingKryoBackedEncoder(new FileOutputStream(tempFile))) {
+                encoder.writeSmallInt(FORMAT_VERSION);
+                encoder.writeSmallInt(snapshots.size());
+                for (CompleteFileSystemLocationSnapshot snapshot : snapshots) {
+                    encoder.writeString(snapshot.getAbsolutePath());
+                    writeSnapshot(encoder, snapshot, fileKeys);
+                }
+                encoder.done();
+            }
+            Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private void writeSnapshot(Encoder encoder, CompleteFileSystemLocationSnapshot snapshot, Map<String, String> fileKeys) throws IOException {
+        encoder.writeSmallInt(snapshot.getType().ordinal());
+        switch (snapshot.getType()) {
+            case Missing:
+                break;
+            case RegularFile:
+                FileMetadata metadata = ((RegularFileSnapshot) snapshot).getMetadata();
+                hashCodeSerializer.write(encoder, snapshot.getHash());
+                encoder.writeSmallLong(metadata.getSize());
+                encoder.writeLong(metadata.getLastModified());
+                encoder.writeNullableString(fileKeys.get(snapshot.getAbsolutePath()));
+                break;
+            case Directory:
+                List<CompleteFileSystemLocationSnapshot> children = ((CompleteDirectorySnapshot) snapshot).getChildren();
+                hashCodeSerializer.write(encoder, snapshot.getHash());
+                encoder.writeSmallInt(children.size());
+                for (CompleteFileSystemLocationSnapshot child : children) {
+                    encoder.writeString(child.getName());
+                    writeSnapshot(encoder, child, fileKeys);
+                }
+                break;
+            default:
+                throw new AssertionError();
+        }
+    }
+}
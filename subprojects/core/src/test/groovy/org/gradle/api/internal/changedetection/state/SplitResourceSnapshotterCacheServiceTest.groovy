@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.internal.Factory
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.vfs.AdditiveCacheLocations
+import spock.lang.Specification
+
+class SplitResourceSnapshotterCacheServiceTest extends Specification {
+    def globalCache = Mock(ResourceSnapshotterCacheService)
+    def localCache = Mock(ResourceSnapshotterCacheService)
+    def additiveCacheLocations = Stub(AdditiveCacheLocations) {
+        isInsideAdditiveCache("/cache/immutable.jar") >> true
+    }
+    def cacheService = new SplitResourceSnapshotterCacheService(globalCache, localCache, additiveCacheLocations)
+    def contentKey = HashCode.fromInt(1)
+    def configurationHash = HashCode.fromInt(2)
+    def hasher = Stub(Factory)
+
+    def "caches content of files in additive caches globally"() {
+        when:
+        cacheService.hashContent("/cache/immutable.jar", contentKey, configurationHash, hasher)
+
+        then:
+        1 * globalCache.hashContent("/cache/immutable.jar", contentKey, configurationHash, hasher)
+        0 * localCache._
+    }
+
+    def "caches content of other files locally"() {
+        when:
+        cacheService.hashContent("/project/build/libs/changing.jar", contentKey, configurationHash, hasher)
+
+        then:
+        1 * localCache.hashContent("/project/build/libs/changing.jar", contentKey, configurationHash, hasher)
+        0 * globalCache._
+    }
+}
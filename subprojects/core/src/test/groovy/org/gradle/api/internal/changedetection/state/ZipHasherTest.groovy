@@ -17,13 +17,17 @@
 package org.gradle.api.internal.changedetection.state
 
 import org.gradle.internal.hash.HashCode
+import org.gradle.internal.serialize.HashCodeSerializer
 import org.gradle.internal.snapshot.FileMetadata
 import org.gradle.internal.snapshot.RegularFileSnapshot
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.concurrent.Executors
+
 class ZipHasherTest extends Specification {
 
     @Rule
@@ -73,6 +77,103 @@ class ZipHasherTest extends Specification {
         hash1 != hash2
     }
 
+    def "hashes of nested zips are cached by their zip directory entry"() {
+        given:
+        def statisticsCollector = new ZipHasherStatistics.Collector()
+        def cachingZipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, cacheService(), null, statisticsCollector)
+        def innerContent = tmpDir.createDir("inner")
+        innerContent.file("foo") << "Foo"
+        def outerContent1 = tmpDir.createDir("outer1")
+        innerContent.zipTo(outerContent1.file("inner.jar"))
+        outerContent1.file("bar") << "Bar"
+        def outer1 = tmpDir.file("outer1.jar")
+        outerContent1.zipTo(outer1)
+        def outerContent2 = tmpDir.createDir("outer2")
+        innerContent.zipTo(outerContent2.file("inner.jar"))
+        outerContent2.file("baz") << "Baz"
+        def outer2 = tmpDir.file("outer2.jar")
+        outerContent2.zipTo(outer2)
+
+        when:
+        def hash1 = cachingZipHasher.hash(snapshot(outer1))
+        statisticsCollector.collect()
+        def hash2 = cachingZipHasher.hash(snapshot(outer2))
+
+        then:
+        hash1 == zipHasher.hash(snapshot(outer1))
+        hash2 == zipHasher.hash(snapshot(outer2))
+        // only the entry 'baz' is looked up, the entries of the nested zip are not visited again
+        statisticsCollector.collect().lookedUpEntryCount == 1
+    }
+
+    def "hashes of zip entries are reused when the zip is rebuilt"() {
+        given:
+        def statisticsCollector = new ZipHasherStatistics.Collector()
+        def cachingZipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, cacheService(), null, statisticsCollector)
+        def content = tmpDir.createDir("content")
+        def unchanged = (0..<5).collect { content.file("unchanged${it}.txt") << "Unchanged $it" }
+        def changed = content.file("changed.txt") << "Original"
+        def zip = tmpDir.file("rebuilt.jar")
+        content.zipTo(zip)
+        cachingZipHasher.hash(snapshot(zip))
+
+        when:
+        def firstStatistics = statisticsCollector.collect()
+        unchanged.each { it.setLastModified(it.lastModified() - 10000) }
+        changed.text = "Changed"
+        content.zipTo(zip)
+        def hash = cachingZipHasher.hash(snapshot(zip))
+        def secondStatistics = statisticsCollector.collect()
+
+        then:
+        firstStatistics.lookedUpEntryCount == 6
+        firstStatistics.hashedEntryCount == 6
+        secondStatistics.lookedUpEntryCount == 6
+        secondStatistics.hashedEntryCount == 1
+        hash == zipHasher.hash(snapshot(zip))
+    }
+
+    def "hashes of zip entries are kept apart from the resource hashes"() {
+        given:
+        def resourceHashes = new InMemoryIndexedCache<HashCode, HashCode>(new HashCodeSerializer())
+        def zipEntryHashes = new InMemoryIndexedCache<HashCode, HashCode>(new HashCodeSerializer())
+        def cachingZipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, new DefaultResourceSnapshotterCacheService(resourceHashes, zipEntryHashes), null, new ZipHasherStatistics.Collector())
+        def content = tmpDir.createDir("content")
+        (0..<5).each { content.file("file${it}.txt") << "Content $it" }
+        def zip = tmpDir.file("entries.jar")
+        content.zipTo(zip)
+
+        when:
+        cachingZipHasher.hash(snapshot(zip))
+
+        then:
+        zipEntryHashes.keySet().size() == 5
+        resourceHashes.keySet().empty
+    }
+
+    def "hashing the entries of a large zip in parallel produces the same hash"() {
+        given:
+        def content = tmpDir.createDir("content")
+        (0..<1000).each { content.file("dir${it % 10}/file${it}.txt") << "Content $it" }
+        def inner = tmpDir.createDir("inner")
+        inner.file("foo") << "Foo"
+        inner.zipTo(content.file("inner.jar"))
+        def zip = tmpDir.file("large.jar")
+        content.zipTo(zip)
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelZipHasher = new ZipHasher(new RuntimeClasspathResourceHasher(), ResourceFilter.FILTER_NOTHING, null, executor, new ZipHasherStatistics.Collector())
+
+        expect:
+        parallelZipHasher.hash(snapshot(zip)) == zipHasher.hash(snapshot(zip))
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    private static ResourceSnapshotterCacheService cacheService() {
+        new DefaultResourceSnapshotterCacheService(new InMemoryIndexedCache<HashCode, HashCode>(new HashCodeSerializer()), new InMemoryIndexedCache<HashCode, HashCode>(new HashCodeSerializer()))
+    }
+
     private static RegularFileSnapshot snapshot(TestFile file) {
         new RegularFileSnapshot(file.path, file.name, HashCode.fromInt(0), new FileMetadata(0, 0))
     }
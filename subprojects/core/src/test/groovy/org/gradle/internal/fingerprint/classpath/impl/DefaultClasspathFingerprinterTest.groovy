@@ -19,6 +19,7 @@ package org.gradle.internal.fingerprint.classpath.impl
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService
 import org.gradle.api.internal.changedetection.state.ResourceFilter
+import org.gradle.api.internal.changedetection.state.ZipHasherStatistics
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionSnapshotter
@@ -49,7 +50,9 @@ class DefaultClasspathFingerprinterTest extends Specification {
         cacheService,
         fileCollectionSnapshotter,
         ResourceFilter.FILTER_NOTHING,
-        stringInterner)
+        stringInterner,
+        null,
+        new ZipHasherStatistics.Collector())
 
     def "directories and missing files are ignored"() {
         def emptyDir = file('root/emptyDir').createDir()
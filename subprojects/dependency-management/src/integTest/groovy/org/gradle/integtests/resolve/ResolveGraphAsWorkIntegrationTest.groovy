@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.integtests.resolve
+
+import org.gradle.integtests.fixtures.AbstractIntegrationSpec
+import org.gradle.test.fixtures.server.http.BlockingHttpServer
+import org.junit.Rule
+
+class ResolveGraphAsWorkIntegrationTest extends AbstractIntegrationSpec {
+    @Rule
+    BlockingHttpServer server = new BlockingHttpServer()
+
+    def setup() {
+        server.start()
+        executer.withArgument("-Dorg.gradle.internal.resolve.graph-as-work=true")
+        executer.withArgument("--parallel")
+        executer.withArgument("--max-workers=3") // needs to be set to the maximum number of expectConcurrent() calls
+        settingsFile << """
+            include 'a', 'b', 'c'
+        """
+        buildFile << """
+            allprojects {
+                configurations {
+                    conf
+                    lib
+                }
+                task consume {
+                    dependsOn configurations.conf
+                    doLast {
+                        println "\${path} resolved \${configurations.conf.incoming.resolutionResult.allComponents*.id*.displayName.sort()}"
+                    }
+                }
+            }
+        """
+    }
+
+    def "resolves the graphs of configurations owned by different projects concurrently, before their consumers run"() {
+        def moduleA = mavenRepo.module('test', 'a', '1.0').publish()
+        def moduleB = mavenRepo.module('test', 'b', '1.0').publish()
+
+        buildFile << """
+            ['a', 'b'].each { name ->
+                project(":\$name") {
+                    repositories {
+                        maven { url = uri('$server.uri') }
+                    }
+                    dependencies {
+                        conf "test:\$name:1.0"
+                    }
+                    consume.dependsOn(':c:slow')
+                }
+            }
+            project(':c') {
+                task slow {
+                    doLast {
+                        ${server.callFromBuild("slow")}
+                    }
+                }
+            }
+        """
+
+        given:
+        server.expectConcurrent(
+            server.get("slow"),
+            server.get(moduleA.pom.path).sendFile(moduleA.pom.file),
+            server.get(moduleB.pom.path).sendFile(moduleB.pom.file))
+
+        when:
+        succeeds(':a:consume', ':b:consume')
+
+        then:
+        outputContains(":a:consume resolved [project :a, test:a:1.0]")
+        outputContains(":b:consume resolved [project :b, test:b:1.0]")
+    }
+
+    def "resolves graphs which reach into each other's project concurrently"() {
+        buildFile << """
+            project(':a') {
+                dependencies {
+                    conf project(path: ':b', configuration: 'lib')
+                }
+                configurations.conf.incoming.beforeResolve {
+                    ${server.callFromBuild("resolve-a")}
+                }
+            }
+            project(':b') {
+                dependencies {
+                    conf project(path: ':a', configuration: 'lib')
+                }
+                configurations.conf.incoming.beforeResolve {
+                    ${server.callFromBuild("resolve-b")}
+                }
+            }
+        """
+
+        given:
+        // Both graphs are resolved while holding the lock of their own project, before reaching into the other project
+        server.expectConcurrent("resolve-a", "resolve-b")
+
+        when:
+        succeeds(':a:consume', ':b:consume')
+
+        then:
+        outputContains(":a:consume resolved [project :a, project :b]")
+        outputContains(":b:consume resolved [project :a, project :b]")
+    }
+
+    def "cannot change the dependencies of a configuration from a consuming task"() {
+        buildFile << """
+            project(':a') {
+                dependencies {
+                    conf project(path: ':b', configuration: 'lib')
+                }
+                consume.doFirst {
+                    dependencies {
+                        conf project(path: ':c', configuration: 'lib')
+                    }
+                }
+            }
+        """
+
+        when:
+        fails(':a:consume')
+
+        then:
+        failure.assertHasCause("Cannot change dependencies of dependency configuration ':a:conf' after task dependencies have been resolved")
+
+        when:
+        executer.withArgument("-Dorg.gradle.internal.resolve.graph-as-work=false")
+        succeeds(':a:consume')
+
+        then:
+        outputContains(":a:consume resolved [project :a, project :b, project :c]")
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes;
+
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.CompositeExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeSpec;
+import org.gradle.internal.component.external.descriptor.DefaultExclude;
+import org.gradle.internal.component.model.ExcludeMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.gradle.api.internal.artifacts.DefaultModuleIdentifier.newId;
+
+/**
+ * Evaluates the exclude spec of an exclude-heavy dependency against all the modules of a large graph.
+ *
+ * The excludes mimic what large BOM-managed builds declare: a handful of whole groups, logging and
+ * servlet modules excluded by name, and many exact coordinates. {@code indexed} goes through the
+ * exclude spec as built by {@link ModuleExclusions}, {@code componentStream} evaluates each component
+ * of the same spec in turn, like the any-of did before it was indexed.
+ */
+@Fork(2)
+@Warmup(iterations = 10, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = SECONDS)
+@State(Scope.Benchmark)
+public class ExcludeSpecBenchmark {
+    private static final String[] LOGGING_MODULES = {"commons-logging", "log4j", "slf4j-log4j12", "logback-classic", "jcl-over-slf4j"};
+    private static final String[] SERVLET_MODULES = {"servlet-api", "jsp-api", "jetty", "jetty-util"};
+
+    @Param({"20", "200"})
+    int exactExcludes;
+
+    @Param({"2000"})
+    int modules;
+
+    private ExcludeSpec spec;
+    private List<ModuleIdentifier> graph;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        List<ExcludeMetadata> excludes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            excludes.add(new DefaultExclude(newId("org.excluded.group" + i, "*")));
+        }
+        for (String module : LOGGING_MODULES) {
+            excludes.add(new DefaultExclude(newId("*", module)));
+        }
+        for (String module : SERVLET_MODULES) {
+            excludes.add(new DefaultExclude(newId("*", module)));
+        }
+        for (int i = 0; i < exactExcludes; i++) {
+            excludes.add(new DefaultExclude(newId("org.group" + random.nextInt(100), "module" + random.nextInt(1000))));
+        }
+        spec = new ModuleExclusions().excludeAny(excludes);
+        if (!(spec instanceof CompositeExclude)) {
+            throw new IllegalStateException("Expected a composite exclude but got " + spec);
+        }
+
+        graph = new ArrayList<>(modules);
+        for (int i = 0; i < modules; i++) {
+            int pick = random.nextInt(100);
+            if (pick == 0) {
+                graph.add(newId("org.excluded.group" + random.nextInt(5), "module" + random.nextInt(1000)));
+            } else if (pick == 1) {
+                graph.add(newId("org.group" + random.nextInt(100), LOGGING_MODULES[random.nextInt(LOGGING_MODULES.length)]));
+            } else {
+                graph.add(newId("org.group" + random.nextInt(100), "module" + random.nextInt(1000)));
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole bh) {
+        for (ModuleIdentifier module : graph) {
+            bh.consume(spec.excludes(module));
+        }
+    }
+
+    @Benchmark
+    public void componentStream(Blackhole bh) {
+        CompositeExclude composite = (CompositeExclude) spec;
+        for (ModuleIdentifier module : graph) {
+            bh.consume(composite.components().anyMatch(e -> e.excludes(module)));
+        }
+    }
+}
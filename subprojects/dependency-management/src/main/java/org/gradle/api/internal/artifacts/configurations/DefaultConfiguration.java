@@ -139,6 +139,10 @@
 import static org.gradle.util.ConfigureUtil.configure;
 
 public class DefaultConfiguration extends AbstractFileCollection implements ConfigurationInternal, MutationValidator {
+    /**
+     * When set, the dependency graph of a configuration is resolved by a node of the work graph that runs before the tasks that consume the configuration.
+     */
+    public static final String RESOLVE_GRAPH_AS_WORK_PROPERTY = "org.gradle.internal.resolve.graph-as-work";
 
     private static final Action<Throwable> DEFAULT_ERROR_HANDLER = throwable -> {
         throw UncheckedException.throwAsUncheckedException(throwable);
@@ -211,6 +215,8 @@ public class DefaultConfiguration extends AbstractFileCollection implements Conf
     private final DomainObjectContext domainObjectContext;
     private final ImmutableAttributesFactory attributesFactory;
     private final ConfigurationFileCollection intrinsicFiles;
+    private final ResolveGraphAction resolveGraphAction = new ResolveGraphAction(this);
+    private final boolean resolveGraphAsWork;
 
     private final DisplayName displayName;
     private final UserCodeApplicationContext userCodeApplicationContext;
@@ -270,6 +276,7 @@ public DefaultConfiguration(DomainObjectContext domainObjectContext,
         this.intrinsicFiles = new ConfigurationFileCollection(Specs.satisfyAll());
         this.documentationRegistry = documentationRegistry;
         this.resolutionLock = projectStateRegistry.newExclusiveOperationLock();
+        this.resolveGraphAsWork = Boolean.getBoolean(RESOLVE_GRAPH_AS_WORK_PROPERTY);
         this.resolvableDependencies = instantiator.newInstance(ConfigurationResolvableDependencies.class, this);
 
         displayName = Describables.memoize(new ConfigurationDescription(identityPath));
@@ -701,7 +708,7 @@ private void resolveArtifactsIfRequired() {
 
     @Override
     public ExtraExecutionGraphDependenciesResolverFactory getDependenciesResolver() {
-        return new DefaultExtraExecutionGraphDependenciesResolverFactory(this::getResultsForBuildDependencies, this::getResultsForArtifacts, new ResolveGraphAction(this), fileCollectionFactory);
+        return new DefaultExtraExecutionGraphDependenciesResolverFactory(this::getResultsForBuildDependencies, this::getResultsForArtifacts, resolveGraphAction, fileCollectionFactory);
     }
 
     private ResolverResults getResultsForBuildDependencies() {
@@ -1208,6 +1215,10 @@ public void visitDependencies(TaskDependencyResolveContext context) {
             SelectedArtifactSet selected = results.getVisitedArtifacts().select(dependencySpec, viewAttributes, componentSpec, allowNoMatchingVariants);
             FailureCollectingTaskDependencyResolveContext collectingContext = new FailureCollectingTaskDependencyResolveContext(context);
             selected.visitDependencies(collectingContext);
+            if (resolveGraphAsWork && resolvedState == BUILD_DEPENDENCIES_RESOLVED) {
+                // Resolve the graph ahead of the consumers, in parallel with the graphs of configurations owned by other projects
+                context.add(resolveGraphAction);
+            }
             if (!lenient) {
                 rethrowFailure("task dependencies", collectingContext.getFailures());
             }
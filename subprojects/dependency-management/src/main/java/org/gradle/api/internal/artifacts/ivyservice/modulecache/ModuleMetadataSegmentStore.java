@@ -0,0 +1,432 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.gradle.cache.CacheAccess;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.io.ByteBufferInputStream;
+import org.gradle.internal.os.OperatingSystem;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.gradle.internal.time.Clock;
+import org.gradle.internal.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Shares the module metadata of non-changing modules between processes using append-only segment files.
+ *
+ * <p>Once a segment has been published it is never modified. It is written to a temporary file and then moved into place.
+ * Its name is made of a sequence number and the hash of its content. Any process can therefore map the published segments
+ * and read them without holding the artifact cache lock. Only publishing a segment takes the lock, to allocate the next sequence number.
+ * A record in a later segment replaces a record for the same module in an earlier segment.</p>
+ *
+ * <p>New records are collected in memory and published in batches, at the latest when the store is closed.
+ * Once there are too many segments, the publishing process merges them into a single segment. The merged segment only keeps
+ * the most recently created records which are not too old, so the records loaded by a build are bounded. A dropped record is
+ * published again the next time it is read from the module metadata cache.</p>
+ *
+ * <p>Lookups which miss check for segments published by other processes at most once per second.</p>
+ */
+public class ModuleMetadataSegmentStore implements Closeable {
+    public static final String SHARED_SEGMENTS_PROPERTY = "org.gradle.internal.module-metadata.shared-segments";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleMetadataSegmentStore.class);
+    private static final int MAGIC = 0x474d4d53;
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final int MAX_PENDING_RECORDS = 500;
+    private static final int MAX_SEGMENTS = 32;
+    private static final int MAX_MERGED_RECORDS = 20000;
+    private static final long MAX_RECORD_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long SEGMENT_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final File segmentsDir;
+    private final CacheAccess cacheAccess;
+    private final Serializer<ModuleComponentAtRepositoryKey> keySerializer;
+    private final boolean enabled;
+    private final boolean memoryMapped;
+    private final Clock clock;
+    // Indexed by the encoded key, so loading a segment does not need to decode the keys
+    private final Map<EncodedKey, Record> records = new ConcurrentHashMap<>();
+    // Modified while holding the lock on this, so a segment is only loaded once
+    private final Set<String> loadedSegments = ConcurrentHashMap.newKeySet();
+    private final Map<ModuleComponentAtRepositoryKey, Record> pendingRecords = new ConcurrentHashMap<>();
+    private volatile long lastSegmentCheck = -SEGMENT_CHECK_INTERVAL_MILLIS;
+
+    public ModuleMetadataSegmentStore(File segmentsDir, CacheAccess cacheAccess, boolean enabled) {
+        this(segmentsDir, cacheAccess, new PersistentModuleMetadataCache.RevisionKeySerializer(), enabled, !OperatingSystem.current().isWindows(), Time.clock());
+    }
+
+    ModuleMetadataSegmentStore(File segmentsDir, CacheAccess cacheAccess, Serializer<ModuleComponentAtRepositoryKey> keySerializer, boolean enabled, boolean memoryMapped, Clock clock) {
+        this.segmentsDir = segmentsDir;
+        this.cacheAccess = cacheAccess;
+        this.keySerializer = keySerializer;
+        this.enabled = enabled;
+        this.memoryMapped = memoryMapped;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the shared record for the given module, without locking the artifact cache.
+     */
+    @Nullable
+    public Record get(ModuleComponentAtRepositoryKey key) {
+        if (!enabled) {
+            return null;
+        }
+        // A pending record is newer than a published record for the same module.
+        // Published records are loaded before the pending records are cleared, so a record cannot be missed while it is published.
+        Record record = pendingRecords.get(key);
+        if (record != null) {
+            return record;
+        }
+        EncodedKey encodedKey;
+        try {
+            encodedKey = new EncodedKey(encodeKey(key));
+        } catch (Exception e) {
+            LOGGER.debug("Could not encode key {} to look up its shared record.", key, e);
+            return null;
+        }
+        record = records.get(encodedKey);
+        if (record == null && isSegmentCheckDue()) {
+            // List the segments without holding the lock, and only take it when there is something to load
+            String[] segments = segmentNames();
+            if (hasUnloadedSegment(segments)) {
+                synchronized (this) {
+                    if (loadNewSegments(segments)) {
+                        record = records.get(encodedKey);
+                    }
+                }
+            }
+        }
+        return record;
+    }
+
+    private boolean isSegmentCheckDue() {
+        long now = clock.getCurrentTime();
+        if (now - lastSegmentCheck < SEGMENT_CHECK_INTERVAL_MILLIS) {
+            return false;
+        }
+        lastSegmentCheck = now;
+        return true;
+    }
+
+    /**
+     * Adds the descriptor of a non-changing module, stored in the given file by {@link ModuleMetadataStore}. Must be called while holding the artifact cache lock.
+     */
+    public void add(ModuleComponentAtRepositoryKey key, long createTimestamp, File descriptorFile) {
+        if (!enabled) {
+            return;
+        }
+        Record record;
+        try {
+            record = new Record(encodeKey(key), createTimestamp, ByteBuffer.wrap(Files.readAllBytes(descriptorFile.toPath())));
+        } catch (Exception e) {
+            LOGGER.debug("Could not read module descriptor {} to share it.", descriptorFile, e);
+            return;
+        }
+        synchronized (this) {
+            pendingRecords.put(key, record);
+            if (pendingRecords.size() >= MAX_PENDING_RECORDS) {
+                publishPending();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (!pendingRecords.isEmpty()) {
+                cacheAccess.useCache(this::publishPending);
+            }
+        }
+    }
+
+    private boolean hasUnloadedSegment(String[] segments) {
+        for (String segment : segments) {
+            if (!loadedSegments.contains(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean loadNewSegments() {
+        return loadNewSegments(segmentNames());
+    }
+
+    private boolean loadNewSegments(String[] segments) {
+        boolean loaded = false;
+        for (String segment : segments) {
+            if (!loadedSegments.contains(segment)) {
+                loaded |= loadSegment(segment);
+            }
+        }
+        return loaded;
+    }
+
+    private boolean loadSegment(String name) {
+        File segmentFile = new File(segmentsDir, name);
+        try {
+            ByteBuffer buffer = read(segmentFile);
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.debug("Ignoring module metadata segment {} with unknown format.", segmentFile);
+                loadedSegments.add(name);
+                return false;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                long createTimestamp = buffer.getLong();
+                int length = buffer.getInt();
+                ByteBuffer descriptor = buffer.slice();
+                descriptor.limit(length);
+                buffer.position(buffer.position() + length);
+                records.put(new EncodedKey(key), new Record(key, createTimestamp, descriptor));
+            }
+            loadedSegments.add(name);
+            return true;
+        } catch (FileNotFoundException e) {
+            // Merged into a later segment by another process
+            return false;
+        } catch (Exception e) {
+            LOGGER.debug("Could not read module metadata segment {}.", segmentFile, e);
+            loadedSegments.add(name);
+            return false;
+        }
+    }
+
+    private ByteBuffer read(File segmentFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "r")) {
+            FileChannel channel = file.getChannel();
+            if (memoryMapped) {
+                // The mapping stays valid after the file is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private void publishPending() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(segmentsDir.toPath());
+            loadNewSegments();
+            List<Record> newRecords = new ArrayList<>(pendingRecords.size());
+            for (Record record : pendingRecords.values()) {
+                Record published = records.get(new EncodedKey(record.key));
+                if (published == null || !published.hasSameContent(record)) {
+                    newRecords.add(record);
+                }
+            }
+            if (!newRecords.isEmpty()) {
+                String[] segments = segmentNames();
+                if (segments.length + 1 > MAX_SEGMENTS) {
+                    mergeSegments(segments);
+                } else {
+                    writeSegment(nextSequence(segments), newRecords);
+                }
+            }
+            loadNewSegments();
+        } catch (IOException e) {
+            LOGGER.debug("Could not publish module metadata segment in {}.", segmentsDir, e);
+        } finally {
+            // The records are also in the module metadata cache, so there is no need to retry
+            pendingRecords.clear();
+        }
+    }
+
+    private void mergeSegments(String[] segments) throws IOException {
+        Map<EncodedKey, Record> merged = new LinkedHashMap<>(records);
+        for (Record record : pendingRecords.values()) {
+            merged.put(new EncodedKey(record.key), record);
+        }
+        long oldestCreateTimestamp = clock.getCurrentTime() - MAX_RECORD_AGE_MILLIS;
+        List<Record> retained = merged.values().stream()
+            .filter(record -> record.createTimestamp >= oldestCreateTimestamp)
+            .sorted(Comparator.comparingLong((Record record) -> record.createTimestamp).reversed())
+            .limit(MAX_MERGED_RECORDS)
+            .collect(Collectors.toList());
+        writeSegment(nextSequence(segments), retained);
+        for (String segment : segments) {
+            // A segment that cannot be deleted yet is merged again and deleted by the next merge
+            new File(segmentsDir, segment).delete();
+        }
+        LOGGER.debug("Merged {} module metadata segments in {}, dropped {} records.", segments.length, segmentsDir, merged.size() - retained.size());
+    }
+
+    private void writeSegment(int sequence, Iterable<Record> segmentRecords) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(content);
+        int count = 0;
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(0);
+        for (Record record : segmentRecords) {
+            output.writeInt(record.key.length);
+            output.write(record.key);
+            output.writeLong(record.createTimestamp);
+            ByteBuffer descriptor = record.getDescriptor();
+            output.writeInt(descriptor.remaining());
+            while (descriptor.hasRemaining()) {
+                output.write(descriptor.get());
+            }
+            count++;
+        }
+        output.flush();
+        byte[] bytes = content.toByteArray();
+        ByteBuffer.wrap(bytes).putInt(8, count);
+
+        File segmentFile = new File(segmentsDir, String.format("%010d-%s%s", sequence, Hashing.hashBytes(bytes), SEGMENT_SUFFIX));
+        File tempFile = File.createTempFile("segment", ".tmp", segmentsDir);
+        try {
+            Files.write(tempFile.toPath(), bytes);
+            Files.move(tempFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        LOGGER.debug("Published {} module metadata records in {}.", count, segmentFile);
+    }
+
+    private String[] segmentNames() {
+        String[] names = segmentsDir.list();
+        if (names == null) {
+            return new String[0];
+        }
+        return Arrays.stream(names).filter(ModuleMetadataSegmentStore::isSegment).sorted().toArray(String[]::new);
+    }
+
+    private static int nextSequence(String[] segments) {
+        if (segments.length == 0) {
+            return 0;
+        }
+        String last = segments[segments.length - 1];
+        return Integer.parseInt(last.substring(0, last.indexOf('-'))) + 1;
+    }
+
+    private static boolean isSegment(String name) {
+        int separator = name.indexOf('-');
+        if (separator <= 0 || !name.endsWith(SEGMENT_SUFFIX)) {
+            return false;
+        }
+        for (int i = 0; i < separator; i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encodeKey(ModuleComponentAtRepositoryKey key) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+        keySerializer.write(encoder, key);
+        encoder.flush();
+        return bytes.toByteArray();
+    }
+
+    private static class EncodedKey {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        EncodedKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EncodedKey && Arrays.equals(bytes, ((EncodedKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    public static class Record {
+        private final byte[] key;
+        private final long createTimestamp;
+        private final ByteBuffer descriptor;
+
+        Record(byte[] key, long createTimestamp, ByteBuffer descriptor) {
+            this.key = key;
+            this.createTimestamp = createTimestamp;
+            this.descriptor = descriptor;
+        }
+
+        public long getCreateTimestamp() {
+            return createTimestamp;
+        }
+
+        /**
+         * Returns the descriptor, in the format written by {@link ModuleMetadataStore}.
+         */
+        public ByteBuffer getDescriptor() {
+            return descriptor.duplicate();
+        }
+
+        public InputStream openDescriptor() {
+            return new ByteBufferInputStream(getDescriptor());
+        }
+
+        boolean hasSameContent(Record other) {
+            return descriptor.equals(other.descriptor);
+        }
+    }
+}
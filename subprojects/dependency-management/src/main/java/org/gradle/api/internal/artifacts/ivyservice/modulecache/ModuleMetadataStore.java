@@ -28,8 +28,11 @@
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import javax.annotation.Nullable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class ModuleMetadataStore {
 
@@ -50,16 +53,10 @@ public ModuleMetadataStore(PathKeyFileStore metaDataStore,
     }
 
     public MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponentAtRepositoryKey component) {
-        String[] filePath = getFilePath(component);
-        LocallyAvailableResource resource = metaDataStore.get(filePath);
+        LocallyAvailableResource resource = getModuleDescriptorResource(component);
         if (resource != null) {
             try {
-                StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(new FileInputStream(resource.getFile())), stringInterner);
-                try {
-                    return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, Maps.newHashMap());
-                } finally {
-                    decoder.close();
-                }
+                return readModuleDescriptor(new FileInputStream(resource.getFile()));
             } catch (Exception e) {
                 throw new RuntimeException("Could not load module metadata from " + resource.getDisplayName(), e);
             }
@@ -67,6 +64,23 @@ public MutableModuleComponentResolveMetadata getModuleDescriptor(ModuleComponent
         return null;
     }
 
+    @Nullable
+    public LocallyAvailableResource getModuleDescriptorResource(ModuleComponentAtRepositoryKey component) {
+        return metaDataStore.get(getFilePath(component));
+    }
+
+    /**
+     * Reads a module descriptor in the format written by {@link #putModuleDescriptor(ModuleComponentAtRepositoryKey, ModuleComponentResolveMetadata)}.
+     */
+    public MutableModuleComponentResolveMetadata readModuleDescriptor(InputStream inputStream) throws IOException {
+        StringDeduplicatingDecoder decoder = new StringDeduplicatingDecoder(new KryoBackedDecoder(inputStream), stringInterner);
+        try {
+            return moduleMetadataSerializer.read(decoder, moduleIdentifierFactory, Maps.newHashMap());
+        } finally {
+            decoder.close();
+        }
+    }
+
     public LocallyAvailableResource putModuleDescriptor(ModuleComponentAtRepositoryKey component, final ModuleComponentResolveMetadata metadata) {
         String[] filePath = getFilePath(component);
         return metaDataStore.add(PATH_JOINER.join(filePath), moduleDescriptorFile -> {
@@ -30,16 +30,20 @@
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata;
 import org.gradle.internal.hash.ChecksumService;
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore;
+import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.serialize.AbstractSerializer;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.util.BuildCommencedTimeProvider;
 
+import javax.annotation.Nullable;
+
 public class PersistentModuleMetadataCache extends AbstractModuleMetadataCache {
 
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache;
     private final ModuleMetadataStore moduleMetadataStore;
     private final ArtifactCacheLockingManager artifactCacheLockingManager;
+    private final ModuleMetadataSegmentStore segmentStore;
 
     public PersistentModuleMetadataCache(BuildCommencedTimeProvider timeProvider,
                                          ArtifactCacheLockingManager artifactCacheLockingManager,
@@ -51,9 +55,28 @@ public PersistentModuleMetadataCache(BuildCommencedTimeProvider timeProvider,
                                          Interner<String> stringInterner,
                                          ModuleSourcesSerializer moduleSourcesSerializer,
                                          ChecksumService checksumService) {
+        this(timeProvider, artifactCacheLockingManager, artifactCacheMetadata, moduleIdentifierFactory, attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, stringInterner, moduleSourcesSerializer, checksumService, null);
+    }
+
+    /**
+     * Creates a cache that also serves and publishes the metadata of non-changing modules through the given segment store,
+     * so that other processes can read them without locking the artifact cache.
+     */
+    public PersistentModuleMetadataCache(BuildCommencedTimeProvider timeProvider,
+                                         ArtifactCacheLockingManager artifactCacheLockingManager,
+                                         ArtifactCacheMetadata artifactCacheMetadata,
+                                         ImmutableModuleIdentifierFactory moduleIdentifierFactory,
+                                         AttributeContainerSerializer attributeContainerSerializer,
+                                         MavenMutableModuleMetadataFactory mavenMetadataFactory,
+                                         IvyMutableModuleMetadataFactory ivyMetadataFactory,
+                                         Interner<String> stringInterner,
+                                         ModuleSourcesSerializer moduleSourcesSerializer,
+                                         ChecksumService checksumService,
+                                         @Nullable ModuleMetadataSegmentStore segmentStore) {
         super(timeProvider);
         moduleMetadataStore = new ModuleMetadataStore(new DefaultPathKeyFileStore(checksumService, artifactCacheMetadata.getMetaDataStoreDirectory()), new ModuleMetadataSerializer(attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, moduleSourcesSerializer), moduleIdentifierFactory, stringInterner);
         this.artifactCacheLockingManager = artifactCacheLockingManager;
+        this.segmentStore = segmentStore != null && segmentStore.isEnabled() ? segmentStore : null;
     }
 
     private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> getCache() {
@@ -69,6 +92,12 @@ private PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCac
 
     @Override
     protected CachedMetadata get(ModuleComponentAtRepositoryKey key) {
+        if (segmentStore != null) {
+            CachedMetadata shared = getShared(key);
+            if (shared != null) {
+                return shared;
+            }
+        }
         final PersistentIndexedCache<ModuleComponentAtRepositoryKey, ModuleMetadataCacheEntry> cache = getCache();
         return artifactCacheLockingManager.useCache(() -> {
             ModuleMetadataCacheEntry entry = cache.get(key);
@@ -84,10 +113,33 @@ protected CachedMetadata get(ModuleComponentAtRepositoryKey key) {
                 cache.remove(key);
                 return null;
             }
+            if (segmentStore != null && !entry.isChanging) {
+                // Entry cached before the segment store was used
+                LocallyAvailableResource resource = moduleMetadataStore.getModuleDescriptorResource(key);
+                if (resource != null) {
+                    segmentStore.add(key, entry.createTimestamp, resource.getFile());
+                }
+            }
             return new DefaultCachedMetadata(entry, entry.configure(metadata), timeProvider);
         });
     }
 
+    @Nullable
+    private CachedMetadata getShared(ModuleComponentAtRepositoryKey key) {
+        ModuleMetadataSegmentStore.Record record = segmentStore.get(key);
+        if (record == null) {
+            return null;
+        }
+        MutableModuleComponentResolveMetadata metadata;
+        try {
+            metadata = moduleMetadataStore.readModuleDescriptor(record.openDescriptor());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not load shared module metadata for " + key.getComponentId(), e);
+        }
+        ModuleMetadataCacheEntry entry = new ModuleMetadataCacheEntry(ModuleMetadataCacheEntry.TYPE_PRESENT, false, record.getCreateTimestamp());
+        return new DefaultCachedMetadata(entry, entry.configure(metadata), timeProvider);
+    }
+
     @Override
     protected void store(final ModuleComponentAtRepositoryKey key, final ModuleMetadataCacheEntry entry, final CachedMetadata cachedMetadata) {
         if (entry.isMissing()) {
@@ -96,13 +148,16 @@ protected void store(final ModuleComponentAtRepositoryKey key, final ModuleMetad
             // Need to lock the cache in order to write to the module metadata store
             artifactCacheLockingManager.useCache(() -> {
                 final ModuleComponentResolveMetadata metadata = cachedMetadata.getMetadata();
-                moduleMetadataStore.putModuleDescriptor(key, metadata);
+                LocallyAvailableResource resource = moduleMetadataStore.putModuleDescriptor(key, metadata);
                 getCache().put(key, entry);
+                if (segmentStore != null && !entry.isChanging) {
+                    segmentStore.add(key, entry.createTimestamp, resource.getFile());
+                }
             });
         }
     }
 
-    private static class RevisionKeySerializer extends AbstractSerializer<ModuleComponentAtRepositoryKey> {
+    static class RevisionKeySerializer extends AbstractSerializer<ModuleComponentAtRepositoryKey> {
         private final ComponentIdentifierSerializer componentIdSerializer = new ComponentIdentifierSerializer();
 
         @Override
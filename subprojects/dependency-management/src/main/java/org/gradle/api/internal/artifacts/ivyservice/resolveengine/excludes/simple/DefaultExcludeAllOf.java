@@ -44,12 +44,22 @@ protected String getDisplayName() {
 
     @Override
     public boolean excludes(ModuleIdentifier module) {
-        return components().allMatch(e -> e.excludes(module));
+        for (ExcludeSpec component : getComponents()) {
+            if (!component.excludes(module)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public boolean excludesArtifact(ModuleIdentifier module, IvyArtifactName artifactName) {
-        return components().allMatch(e -> e.excludesArtifact(module, artifactName));
+        for (ExcludeSpec component : getComponents()) {
+            if (!component.excludesArtifact(module, artifactName)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -18,16 +18,30 @@
 import com.google.common.collect.ImmutableSet;
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeAnyOf;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeEverything;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeSpec;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.GroupExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.GroupSetExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ModuleExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ModuleIdExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ModuleIdSetExclude;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ModuleSetExclude;
 import org.gradle.internal.component.model.IvyArtifactName;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
 final class DefaultExcludeAnyOf extends DefaultCompositeExclude implements ExcludeAnyOf {
-    public static ExcludeSpec of(ImmutableSet<ExcludeSpec> components) {
-        return new DefaultExcludeAnyOf(components);
+    public static ExcludeSpec of(ImmutableSet<ExcludeSpec> components, ModuleIdIndex index) {
+        return new DefaultExcludeAnyOf(components, index);
     }
 
-    private DefaultExcludeAnyOf(ImmutableSet<ExcludeSpec> components) {
+    private final ModuleIdIndex index;
+
+    private DefaultExcludeAnyOf(ImmutableSet<ExcludeSpec> components, ModuleIdIndex index) {
         super(components);
+        this.index = index;
     }
 
     @Override
@@ -36,6 +50,7 @@ int mask() {
     }
 
     private Boolean mayExcludeArtifacts;
+    private volatile IndexedModuleExcludes moduleExcludes;
 
     @Override
     protected String getDisplayName() {
@@ -44,12 +59,23 @@ protected String getDisplayName() {
 
     @Override
     public boolean excludes(ModuleIdentifier module) {
-        return components().anyMatch(e -> e.excludes(module));
+        IndexedModuleExcludes moduleExcludes = this.moduleExcludes;
+        if (moduleExcludes == null) {
+            // Compiled lazily, as most intermediate specs built while merging are never evaluated
+            moduleExcludes = new IndexedModuleExcludes(getComponents(), index);
+            this.moduleExcludes = moduleExcludes;
+        }
+        return moduleExcludes.excludes(module);
     }
 
     @Override
     public boolean excludesArtifact(ModuleIdentifier module, IvyArtifactName artifactName) {
-        return components().anyMatch(e -> e.excludesArtifact(module, artifactName));
+        for (ExcludeSpec component : getComponents()) {
+            if (component.excludesArtifact(module, artifactName)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -60,4 +86,101 @@ public boolean mayExcludeArtifacts() {
         mayExcludeArtifacts = components().anyMatch(ExcludeSpec::mayExcludeArtifacts);
         return mayExcludeArtifacts;
     }
+
+    /**
+     * The module level view of an any-of: group, module name and module id excludes are folded
+     * into bit sets over interned ids, so that a module is checked against all of them with a
+     * single lookup. The other components are evaluated in turn.
+     */
+    private static final class IndexedModuleExcludes {
+        private static final ExcludeSpec[] NO_SPECS = new ExcludeSpec[0];
+
+        private final ModuleIdIndex index;
+        private final boolean excludesEverything;
+        private final BitSet moduleIds = new BitSet();
+        private final BitSet groups = new BitSet();
+        private final BitSet names = new BitSet();
+        private final boolean hasIndexedExcludes;
+        private final ExcludeSpec[] otherExcludes;
+
+        IndexedModuleExcludes(Iterable<ExcludeSpec> components, ModuleIdIndex index) {
+            this.index = index;
+            boolean excludesEverything = false;
+            List<ExcludeSpec> indexed = new ArrayList<>();
+            List<ExcludeSpec> others = new ArrayList<>();
+            for (ExcludeSpec component : components) {
+                if (component instanceof ExcludeEverything) {
+                    excludesEverything = true;
+                } else if (isIndexable(component)) {
+                    indexed.add(component);
+                } else {
+                    others.add(component);
+                }
+            }
+            if (indexed.size() < 2) {
+                // A single lookup in the component is already as cheap as a lookup in the index
+                others.addAll(indexed);
+                indexed.clear();
+            }
+            for (ExcludeSpec component : indexed) {
+                addToIndex(component);
+            }
+            this.excludesEverything = excludesEverything;
+            this.hasIndexedExcludes = !indexed.isEmpty();
+            this.otherExcludes = others.toArray(NO_SPECS);
+        }
+
+        private static boolean isIndexable(ExcludeSpec spec) {
+            return spec instanceof ModuleIdExclude
+                || spec instanceof ModuleIdSetExclude
+                || spec instanceof GroupExclude
+                || spec instanceof GroupSetExclude
+                || spec instanceof ModuleExclude
+                || spec instanceof ModuleSetExclude;
+        }
+
+        private void addToIndex(ExcludeSpec spec) {
+            if (spec instanceof ModuleIdExclude) {
+                moduleIds.set(index.idsOf(((ModuleIdExclude) spec).getModuleId()).moduleId);
+            } else if (spec instanceof ModuleIdSetExclude) {
+                for (ModuleIdentifier moduleId : ((ModuleIdSetExclude) spec).getModuleIds()) {
+                    moduleIds.set(index.idsOf(moduleId).moduleId);
+                }
+            } else if (spec instanceof GroupExclude) {
+                groups.set(index.groupId(((GroupExclude) spec).getGroup()));
+            } else if (spec instanceof GroupSetExclude) {
+                for (String group : ((GroupSetExclude) spec).getGroups()) {
+                    groups.set(index.groupId(group));
+                }
+            } else if (spec instanceof ModuleExclude) {
+                names.set(index.nameId(((ModuleExclude) spec).getModule()));
+            } else {
+                for (String name : ((ModuleSetExclude) spec).getModules()) {
+                    names.set(index.nameId(name));
+                }
+            }
+        }
+
+        boolean excludes(ModuleIdentifier module) {
+            if (excludesEverything) {
+                return true;
+            }
+            if (hasIndexedExcludes) {
+                ModuleIdIndex.IndexedModuleId ids = index.idsOf(module);
+                if (moduleIds.get(ids.moduleId) || contains(groups, ids.groupId) || contains(names, ids.nameId)) {
+                    return true;
+                }
+            }
+            for (ExcludeSpec other : otherExcludes) {
+                if (other.excludes(module)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(BitSet ids, int id) {
+            return id != ModuleIdIndex.NO_ID && ids.get(id);
+        }
+    }
 }
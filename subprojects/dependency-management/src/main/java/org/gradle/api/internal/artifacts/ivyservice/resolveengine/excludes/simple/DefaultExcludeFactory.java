@@ -33,6 +33,8 @@
 import java.util.Set;
 
 public class DefaultExcludeFactory implements ExcludeFactory {
+    private final ModuleIdIndex moduleIdIndex = new ModuleIdIndex();
+
     @Override
     public ExcludeNothing nothing() {
         return DefaultExcludeNothing.get();
@@ -65,7 +67,7 @@ public ArtifactExclude artifact(ModuleIdentifier id, IvyArtifactName artifact) {
 
     @Override
     public ExcludeSpec anyOf(ExcludeSpec one, ExcludeSpec two) {
-        return DefaultExcludeAnyOf.of(ImmutableSet.of(one, two));
+        return DefaultExcludeAnyOf.of(ImmutableSet.of(one, two), moduleIdIndex);
     }
 
     @Override
@@ -75,7 +77,7 @@ public ExcludeSpec allOf(ExcludeSpec one, ExcludeSpec two) {
 
     @Override
     public ExcludeSpec anyOf(Set<ExcludeSpec> specs) {
-        return DefaultExcludeAnyOf.of(ImmutableSet.copyOf(specs));
+        return DefaultExcludeAnyOf.of(ImmutableSet.copyOf(specs), moduleIdIndex);
     }
 
     @Override
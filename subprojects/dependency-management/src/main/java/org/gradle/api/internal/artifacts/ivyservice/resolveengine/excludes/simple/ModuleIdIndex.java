@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.simple;
+
+import org.gradle.api.artifacts.ModuleIdentifier;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns dense int ids to module identifiers, groups and module names, so that
+ * exclude specs can test membership with bit sets instead of hashing strings for
+ * every component. Ids are never released, the index lives as long as the factory
+ * which owns it.
+ */
+final class ModuleIdIndex {
+    static final int NO_ID = -1;
+
+    private final Map<ModuleIdentifier, IndexedModuleId> modules = new ConcurrentHashMap<>();
+    private final Map<String, Integer> groups = new ConcurrentHashMap<>();
+    private final Map<String, Integer> names = new ConcurrentHashMap<>();
+    private final AtomicInteger nextModuleId = new AtomicInteger();
+    private final AtomicInteger nextGroupId = new AtomicInteger();
+    private final AtomicInteger nextNameId = new AtomicInteger();
+
+    IndexedModuleId idsOf(ModuleIdentifier module) {
+        IndexedModuleId ids = modules.get(module);
+        if (ids == null) {
+            ids = modules.computeIfAbsent(module, m -> new IndexedModuleId(nextModuleId.getAndIncrement(), groupId(m.getGroup()), nameId(m.getName())));
+        }
+        return ids;
+    }
+
+    int groupId(String group) {
+        return idOf(groups, nextGroupId, group);
+    }
+
+    int nameId(String name) {
+        return idOf(names, nextNameId, name);
+    }
+
+    private static int idOf(Map<String, Integer> ids, AtomicInteger nextId, String key) {
+        if (key == null) {
+            return NO_ID;
+        }
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.computeIfAbsent(key, k -> nextId.getAndIncrement());
+        }
+        return id;
+    }
+
+    static final class IndexedModuleId {
+        final int moduleId;
+        final int groupId;
+        final int nameId;
+
+        private IndexedModuleId(int moduleId, int groupId, int nameId) {
+            this.moduleId = moduleId;
+            this.groupId = groupId;
+            this.nameId = nameId;
+        }
+    }
+}
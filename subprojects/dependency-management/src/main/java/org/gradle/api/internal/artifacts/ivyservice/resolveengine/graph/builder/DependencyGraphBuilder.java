@@ -65,6 +65,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -93,6 +94,7 @@ public class DependencyGraphBuilder {
     private final VersionSelectorScheme versionSelectorScheme;
     private final Comparator<Version> versionComparator;
     private final VersionParser versionParser;
+    private final PrefetchingComponentMetaDataResolver metadataPrefetcher;
 
     final static Spec<EdgeState> ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC = dependencyState -> dependencyState.getDependencyState().getDependency().isEndorsingStrictVersions();
     final static Spec<EdgeState> NOT_ENDORSE_STRICT_VERSIONS_DEPENDENCY_SPEC = dependencyState -> !dependencyState.getDependencyState().getDependency().isEndorsingStrictVersions();
@@ -112,8 +114,31 @@ public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolve
                                   VersionSelectorScheme versionSelectorScheme,
                                   Comparator<Version> versionComparator,
                                   VersionParser versionParser) {
+        this(componentIdResolver, componentMetaDataResolver, resolveContextToComponentResolver, moduleConflictHandler, capabilitiesConflictHandler, edgeFilter, attributesSchema, moduleExclusions, buildOperationExecutor, dependencySubstitutionApplicator, componentSelectorConverter, attributesFactory, versionSelectorScheme, versionComparator, versionParser, null);
+    }
+
+    /**
+     * Creates a builder which prefetches metadata using the given resolver, which must wrap the given component metadata resolver.
+     */
+    public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolver,
+                                  ComponentMetaDataResolver componentMetaDataResolver,
+                                  ResolveContextToComponentResolver resolveContextToComponentResolver,
+                                  ModuleConflictHandler moduleConflictHandler,
+                                  CapabilitiesConflictHandler capabilitiesConflictHandler,
+                                  Spec<? super DependencyMetadata> edgeFilter,
+                                  AttributesSchemaInternal attributesSchema,
+                                  ModuleExclusions moduleExclusions,
+                                  BuildOperationExecutor buildOperationExecutor,
+                                  DependencySubstitutionApplicator dependencySubstitutionApplicator,
+                                  ComponentSelectorConverter componentSelectorConverter,
+                                  ImmutableAttributesFactory attributesFactory,
+                                  VersionSelectorScheme versionSelectorScheme,
+                                  Comparator<Version> versionComparator,
+                                  VersionParser versionParser,
+                                  @Nullable PrefetchingComponentMetaDataResolver metadataPrefetcher) {
         this.idResolver = componentIdResolver;
-        this.metaDataResolver = componentMetaDataResolver;
+        this.metaDataResolver = metadataPrefetcher != null ? metadataPrefetcher : componentMetaDataResolver;
+        this.metadataPrefetcher = metadataPrefetcher;
         this.moduleResolver = resolveContextToComponentResolver;
         this.moduleConflictHandler = moduleConflictHandler;
         this.edgeFilter = edgeFilter;
@@ -130,7 +155,16 @@ public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolve
     }
 
     public void resolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
+        try {
+            doResolve(resolveContext, modelVisitor);
+        } finally {
+            if (metadataPrefetcher != null) {
+                metadataPrefetcher.stop();
+            }
+        }
+    }
 
+    private void doResolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
         IdGenerator<Long> idGenerator = new LongIdGenerator();
         DefaultBuildableComponentResolveResult rootModule = new DefaultBuildableComponentResolveResult();
         moduleResolver.resolve(resolveContext, rootModule);
@@ -268,6 +302,7 @@ private boolean performSelectionSerially(List<EdgeState> dependencies, Spec<Edge
             if (selector.canResolve() && module.getSelectors().size() > 0) {
                 // Have an unprocessed/new selector for this module. Need to re-select the target version (if there are any selectors that can be used).
                 performSelection(resolveState, module);
+                maybePrefetchMetadata(module);
             }
 
             module.addUnattachedDependency(dependency);
@@ -299,6 +334,16 @@ private void performSelection(ResolveState resolveState, ModuleResolveState modu
         }
     }
 
+    private void maybePrefetchMetadata(ModuleResolveState module) {
+        if (metadataPrefetcher == null || module.isVirtualPlatform()) {
+            return;
+        }
+        ComponentState selected = module.getSelected();
+        if (selected != null && !selected.alreadyResolved()) {
+            metadataPrefetcher.prefetch(selected.getComponentId());
+        }
+    }
+
     private void checkForModuleConflicts(ResolveState resolveState, ModuleResolveState module) {
         // A new module. Check for conflict with capabilities and module replacements.
         PotentialConflict c = moduleConflictHandler.registerCandidate(module);
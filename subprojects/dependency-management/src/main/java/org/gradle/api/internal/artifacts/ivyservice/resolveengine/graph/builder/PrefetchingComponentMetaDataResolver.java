@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Speculatively resolves the metadata of module components ahead of the serial graph traversal, so that deep graphs are not
+ * downloaded one level at a time.
+ *
+ * When the traversal selects a component, its metadata is resolved in a bounded thread pool, followed by the metadata of the
+ * components it depends on with a fixed version, up to {@link #MAX_SPECULATION_DEPTH} levels down. The resolved metadata is
+ * discarded: resolving it populates the module metadata caches, from which the traversal then resolves it cheaply. The graph
+ * itself is still built by the traversal only, so the edge ordering is not affected.
+ *
+ * Before resolving a component, the traversal waits for a prefetch of that component which has already started, or cancels it
+ * if it has not, so that the same metadata is not downloaded twice.
+ */
+public class PrefetchingComponentMetaDataResolver implements ComponentMetaDataResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchingComponentMetaDataResolver.class);
+
+    /**
+     * The number of threads used to prefetch metadata during dependency resolution. Prefetching is disabled by default.
+     */
+    public static final String PREFETCH_THREADS_PROPERTY = "org.gradle.internal.resolve.metadata-prefetch-threads";
+
+    private static final int MAX_SPECULATION_DEPTH = 2;
+
+    private final ComponentMetaDataResolver delegate;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ManagedExecutor executor;
+    private final ConcurrentMap<ComponentIdentifier, Prefetch> prefetches = Maps.newConcurrentMap();
+    private volatile boolean stopped;
+
+    public PrefetchingComponentMetaDataResolver(ComponentMetaDataResolver delegate, VersionSelectorScheme versionSelectorScheme, ManagedExecutor executor) {
+        this.delegate = delegate;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.executor = executor;
+    }
+
+    public static int getPrefetchThreads() {
+        return Math.max(0, Integer.getInteger(PREFETCH_THREADS_PROPERTY, 0));
+    }
+
+    /**
+     * Starts resolving the metadata of the given component, and of its likely dependencies, in the background.
+     */
+    public void prefetch(ComponentIdentifier identifier) {
+        prefetch(identifier, 0);
+    }
+
+    private void prefetch(ComponentIdentifier identifier, int depth) {
+        if (stopped || !(identifier instanceof ModuleComponentIdentifier)) {
+            return;
+        }
+        Prefetch prefetch = new Prefetch(identifier, depth);
+        if (prefetches.putIfAbsent(identifier, prefetch) == null) {
+            executor.execute(prefetch);
+        }
+    }
+
+    @Override
+    public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+        Prefetch prefetch = prefetches.get(identifier);
+        if (prefetch == null) {
+            // Resolved by the traversal first, do not prefetch it later
+            prefetch = new Prefetch(identifier, MAX_SPECULATION_DEPTH);
+            Prefetch existing = prefetches.putIfAbsent(identifier, prefetch);
+            if (existing != null) {
+                prefetch = existing;
+            }
+        }
+        prefetch.await();
+        delegate.resolve(identifier, componentOverrideMetadata, result);
+    }
+
+    @Override
+    public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+        return delegate.isFetchingMetadataCheap(identifier);
+    }
+
+    /**
+     * Stops prefetching, waiting for the prefetches in progress to complete.
+     */
+    public void stop() {
+        stopped = true;
+        executor.stop();
+    }
+
+    private List<? extends ConfigurationMetadata> getVariantsToPrefetch(ComponentResolveMetadata metadata) {
+        Optional<ImmutableList<? extends ConfigurationMetadata>> variants = metadata.getVariantsForGraphTraversal();
+        if (variants.isPresent()) {
+            return variants.get();
+        }
+        ConfigurationMetadata defaultConfiguration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        return defaultConfiguration == null ? Collections.emptyList() : Collections.singletonList(defaultConfiguration);
+    }
+
+    private void prefetchDependencies(ComponentResolveMetadata metadata, int depth) {
+        for (ConfigurationMetadata variant : getVariantsToPrefetch(metadata)) {
+            for (DependencyMetadata dependency : variant.getDependencies()) {
+                ComponentSelector selector = dependency.getSelector();
+                if (dependency.isConstraint() || !(selector instanceof ModuleComponentSelector)) {
+                    continue;
+                }
+                ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+                String version = getFixedVersion(moduleSelector.getVersionConstraint());
+                if (version != null) {
+                    prefetch(DefaultModuleComponentIdentifier.newId(moduleSelector.getModuleIdentifier(), version), depth);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the version the selector most likely resolves to, or null when it cannot be known without listing versions.
+     */
+    private String getFixedVersion(VersionConstraint constraint) {
+        String version = constraint.getStrictVersion();
+        if (Strings.isNullOrEmpty(version)) {
+            version = constraint.getRequiredVersion();
+        }
+        if (Strings.isNullOrEmpty(version)) {
+            version = constraint.getPreferredVersion();
+        }
+        if (Strings.isNullOrEmpty(version) || versionSelectorScheme.parseSelector(version).isDynamic()) {
+            return null;
+        }
+        return version;
+    }
+
+    private class Prefetch implements Runnable {
+        private final ComponentIdentifier identifier;
+        private final int depth;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Prefetch(ComponentIdentifier identifier, int depth) {
+            this.identifier = identifier;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run() {
+            if (stopped || !claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+                delegate.resolve(identifier, DefaultComponentOverrideMetadata.EMPTY, result);
+                if (result.getFailure() == null && depth < MAX_SPECULATION_DEPTH) {
+                    prefetchDependencies(result.getMetadata(), depth + 1);
+                }
+            } catch (Throwable t) {
+                // The traversal will resolve the component again, and report the failure if it is needed
+                LOGGER.debug("Could not prefetch metadata for {}.", identifier, t);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void await() {
+            if (claimed.compareAndSet(false, true)) {
+                // Not started yet, the caller resolves the component instead
+                done.countDown();
+                return;
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+    }
+}
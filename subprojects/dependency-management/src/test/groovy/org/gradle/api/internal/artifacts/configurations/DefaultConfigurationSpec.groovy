@@ -58,6 +58,7 @@ import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.project.ProjectStateRegistry
 import org.gradle.api.internal.tasks.TaskDependencyResolveContext
 import org.gradle.api.specs.Spec
+import org.gradle.api.specs.Specs
 import org.gradle.api.tasks.TaskDependency
 import org.gradle.configuration.internal.UserCodeApplicationContext
 import org.gradle.initialization.ProjectAccessListener
@@ -75,6 +76,7 @@ import org.gradle.util.TestUtil
 import spock.lang.Issue
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.environment.RestoreSystemProperties
 
 import static org.gradle.api.artifacts.Configuration.State.RESOLVED
 import static org.gradle.api.artifacts.Configuration.State.RESOLVED_WITH_FAILURES
@@ -1158,6 +1160,31 @@ class DefaultConfigurationSpec extends Specification {
         0 * resolver._
     }
 
+    @RestoreSystemProperties
+    def "schedules graph resolution ahead of consumers when determining task dependencies"() {
+        given:
+        System.setProperty(DefaultConfiguration.RESOLVE_GRAPH_AS_WORK_PROPERTY, "true")
+        def config = conf("conf")
+        def context = Mock(TaskDependencyResolveContext)
+        def actions = []
+        _ * resolutionStrategy.resolveGraphToDetermineTaskDependencies() >> false
+
+        when:
+        config.fileCollection(Specs.satisfyAll()).visitDependencies(context)
+        config.fileCollection(Specs.satisfyAll()).visitDependencies(context)
+
+        then:
+        config.resolvedState == ConfigurationInternal.InternalState.BUILD_DEPENDENCIES_RESOLVED
+        1 * resolver.resolveBuildDependencies(config, _) >> { ConfigurationInternal c, ResolverResults r ->
+            r.graphResolved(Stub(ResolutionResult), Stub(ResolvedLocalComponentsResult), visitedArtifacts())
+        }
+        2 * context.add({ it instanceof DefaultConfiguration.ResolveGraphAction }) >> { DefaultConfiguration.ResolveGraphAction action -> actions << action }
+        0 * resolver._
+
+        and:
+        actions[0].is(actions[1])
+    }
+
     def "resolving graph for task dependencies, and then resolving it for results does not re-resolve graph"() {
         def config = conf("conf")
 
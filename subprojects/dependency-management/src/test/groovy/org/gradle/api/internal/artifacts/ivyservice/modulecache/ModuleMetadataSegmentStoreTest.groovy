@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.cache.CacheAccess
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.os.OperatingSystem
+import org.gradle.internal.time.Clock
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class ModuleMetadataSegmentStoreTest extends Specification {
+
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider(getClass())
+    def cacheAccess = Mock(CacheAccess)
+    def segmentsDir = temporaryFolder.file("segments")
+    def now = 1000L
+    def clock = Stub(Clock) {
+        getCurrentTime() >> { now }
+    }
+
+    def "publishes records which other stores read without locking"() {
+        def writer = store()
+        def reader = store()
+
+        when:
+        writer.add(key("1.0"), 123, descriptor("content"))
+        writer.close()
+
+        then:
+        1 * cacheAccess.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+
+        when:
+        def record = reader.get(key("1.0"))
+
+        then:
+        0 * cacheAccess._
+        record.createTimestamp == 123
+        record.openDescriptor().text == "content"
+        reader.get(key("2.0")) == null
+    }
+
+    def "returns pending records before they are published"() {
+        def store = store()
+
+        when:
+        store.add(key("1.0"), 123, descriptor("content"))
+
+        then:
+        store.get(key("1.0")).openDescriptor().text == "content"
+        segments().empty
+    }
+
+    def "pending records replace published records"() {
+        allowLocking()
+        publish(key("1.0"), descriptor("first"))
+        def store = store()
+
+        expect:
+        store.get(key("1.0")).openDescriptor().text == "first"
+
+        when:
+        store.add(key("1.0"), 456, descriptor("second"))
+
+        then:
+        store.get(key("1.0")).openDescriptor().text == "second"
+        store.get(key("1.0")).createTimestamp == 456
+    }
+
+    def "loads segments published after a lookup missed"() {
+        allowLocking()
+        def reader = store()
+
+        expect:
+        reader.get(key("1.0")) == null
+
+        when:
+        publish(key("1.0"), descriptor("content"))
+        now += 1000
+
+        then:
+        reader.get(key("1.0")).openDescriptor().text == "content"
+    }
+
+    def "checks for new segments at most once per second"() {
+        allowLocking()
+        def reader = store()
+
+        expect:
+        reader.get(key("1.0")) == null
+
+        when:
+        publish(key("1.0"), descriptor("content"))
+        now += 999
+
+        then:
+        reader.get(key("1.0")) == null
+
+        when:
+        now += 1
+
+        then:
+        reader.get(key("1.0")).openDescriptor().text == "content"
+    }
+
+    def "later records replace earlier records"() {
+        allowLocking()
+
+        when:
+        publish(key("1.0"), descriptor("first"))
+        publish(key("1.0"), descriptor("second"))
+
+        then:
+        segments().size() == 2
+        store().get(key("1.0")).openDescriptor().text == "second"
+    }
+
+    def "does not publish records which are already published"() {
+        allowLocking()
+
+        when:
+        publish(key("1.0"), descriptor("content"))
+        publish(key("1.0"), descriptor("content"))
+
+        then:
+        segments().size() == 1
+    }
+
+    def "merges segments once there are too many"() {
+        allowLocking()
+
+        when:
+        40.times {
+            publish(key("${it}.0"), descriptor("content ${it}"))
+        }
+
+        then:
+        segments().size() < 32
+        def reader = store()
+        40.times {
+            assert reader.get(key("${it}.0")).openDescriptor().text == "content ${it}"
+        }
+    }
+
+    def "drops records which are too old when merging segments"() {
+        allowLocking()
+        publish(key("old"), descriptor("old content"))
+
+        when:
+        now += TimeUnit.DAYS.toMillis(31)
+        40.times {
+            publish(key("${it}.0"), descriptor("content ${it}"), now)
+        }
+
+        then:
+        def reader = store()
+        reader.get(key("old")) == null
+        40.times {
+            assert reader.get(key("${it}.0")).openDescriptor().text == "content ${it}"
+        }
+    }
+
+    def "does nothing when disabled"() {
+        def store = new ModuleMetadataSegmentStore(segmentsDir, cacheAccess, false)
+
+        when:
+        store.add(key("1.0"), 123, descriptor("content"))
+        store.close()
+
+        then:
+        0 * cacheAccess._
+        store.get(key("1.0")) == null
+        segments().empty
+    }
+
+    private ModuleMetadataSegmentStore store() {
+        new ModuleMetadataSegmentStore(segmentsDir, cacheAccess, new PersistentModuleMetadataCache.RevisionKeySerializer(), true, !OperatingSystem.current().isWindows(), clock)
+    }
+
+    private void publish(ModuleComponentAtRepositoryKey key, File descriptor, long createTimestamp = 123) {
+        def store = store()
+        store.add(key, createTimestamp, descriptor)
+        store.close()
+    }
+
+    private void allowLocking() {
+        cacheAccess.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+    }
+
+    private List<String> segments() {
+        segmentsDir.list()?.findAll { it.endsWith(".bin") } ?: []
+    }
+
+    private static ModuleComponentAtRepositoryKey key(String version) {
+        new ModuleComponentAtRepositoryKey("repo", DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org.test", "test"), version))
+    }
+
+    private TestFile descriptor(String content) {
+        def file = temporaryFolder.file("descriptors/${UUID.randomUUID()}/descriptor.bin")
+        file.text = content
+        file
+    }
+}
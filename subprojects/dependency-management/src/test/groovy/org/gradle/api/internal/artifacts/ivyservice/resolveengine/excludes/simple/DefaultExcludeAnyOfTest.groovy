@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.simple
+
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.factories.ExcludeTestSupport
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.excludes.specs.ExcludeSpec
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.artifacts.DefaultModuleIdentifier.newId
+
+class DefaultExcludeAnyOfTest extends Specification implements ExcludeTestSupport {
+
+    @Unroll
+    def "evaluates any-of against indexed and other components (#module excluded = #excluded)"() {
+        def id = newId(module.split(':')[0], module.split(':')[1])
+
+        expect:
+        spec.excludes(id) == excluded
+        spec.excludes(id) == spec.components().anyMatch { ExcludeSpec it -> it.excludes(id) }
+
+        where:
+        spec                                                                         | module        | excluded
+        anyOf(group("org"), module("foo"))                                           | "org:bar"     | true
+        anyOf(group("org"), module("foo"))                                           | "com:foo"     | true
+        anyOf(group("org"), module("foo"))                                           | "com:bar"     | false
+        anyOf(groupSet("org", "com"), moduleId("net", "foo"))                        | "com:bar"     | true
+        anyOf(groupSet("org", "com"), moduleId("net", "foo"))                        | "net:foo"     | true
+        anyOf(groupSet("org", "com"), moduleId("net", "foo"))                        | "net:bar"     | false
+        anyOf(moduleIdSet("org:foo", "com:bar"), moduleSet("baz", "qux"))            | "com:foo"     | false
+        anyOf(moduleIdSet("org:foo", "com:bar"), moduleSet("baz", "qux"))            | "com:bar"     | true
+        anyOf(moduleIdSet("org:foo", "com:bar"), moduleSet("baz", "qux"))            | "net:qux"     | true
+        anyOf(group("org"), ivy("com", "foo", artifact("foo"), "exact"))             | "org:foo"     | true
+        anyOf(group("org"), ivy("com", "foo", artifact("foo"), "exact"))             | "com:foo"     | false
+        anyOf(group("org"), module("foo"), allOf(group("com"), module("bar")))       | "com:bar"     | true
+        anyOf(group("org"), module("foo"), allOf(group("com"), module("bar")))       | "com:baz"     | false
+        anyOf(group("org"), everything())                                            | "com:bar"     | true
+    }
+
+    def "indexed specs stay consistent with modules seen before they were compiled"() {
+        def id = newId("org", "foo")
+        def first = anyOf(group("com"), module("bar"))
+        def second = anyOf(group("org"), module("baz"))
+
+        expect:
+        !first.excludes(id)
+        second.excludes(id)
+        !first.excludes(newId("net", "baz"))
+        second.excludes(newId("net", "baz"))
+    }
+}
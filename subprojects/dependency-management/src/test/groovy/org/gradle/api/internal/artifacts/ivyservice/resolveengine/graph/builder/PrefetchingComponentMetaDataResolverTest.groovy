@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import com.google.common.base.Optional
+import com.google.common.collect.ImmutableList
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionParser
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.model.ComponentOverrideMetadata
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import spock.lang.Specification
+
+class PrefetchingComponentMetaDataResolverTest extends Specification {
+    def delegate = Mock(ComponentMetaDataResolver)
+    def executor = Mock(ManagedExecutor)
+    def queued = []
+    def resolver = new PrefetchingComponentMetaDataResolver(delegate, new DefaultVersionSelectorScheme(new DefaultVersionComparator(), new VersionParser()), executor)
+
+    def a = id("a", "1.0")
+    def b = id("b", "1.0")
+
+    def setup() {
+        _ * executor.execute(_) >> { Runnable runnable -> queued << runnable }
+    }
+
+    def "prefetches the metadata of a component and of its dependencies with a fixed version"() {
+        def metadataA = metadata(dependency("b", "1.0"), dependency("c", "1.+"), dependency("d", "[1.0,2.0)"), dependency("e", "1.0", true))
+
+        when:
+        resolver.prefetch(a)
+        runQueued()
+
+        then:
+        1 * delegate.resolve(a, _, _) >> { ComponentIdentifier id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadataA) }
+        1 * delegate.resolve(b, _, _) >> { ComponentIdentifier id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadata()) }
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "does not prefetch beyond the speculation depth"() {
+        when:
+        resolver.prefetch(id("level0", "1.0"))
+        runQueued()
+
+        then:
+        1 * delegate.resolve(id("level0", "1.0"), _, _) >> { ComponentIdentifier id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadata(dependency("level1", "1.0"))) }
+        1 * delegate.resolve(id("level1", "1.0"), _, _) >> { ComponentIdentifier id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadata(dependency("level2", "1.0"))) }
+        1 * delegate.resolve(id("level2", "1.0"), _, _) >> { ComponentIdentifier id, ComponentOverrideMetadata override, BuildableComponentResolveResult result -> result.resolved(metadata(dependency("level3", "1.0"))) }
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "resolves a component which is waiting to be prefetched only once"() {
+        def override = Stub(ComponentOverrideMetadata)
+        def result = new DefaultBuildableComponentResolveResult()
+
+        when:
+        resolver.prefetch(a)
+        resolver.resolve(a, override, result)
+        runQueued()
+
+        then:
+        1 * delegate.resolve(a, override, result)
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "does not prefetch a component which was already resolved"() {
+        def override = Stub(ComponentOverrideMetadata)
+        def result = new DefaultBuildableComponentResolveResult()
+
+        when:
+        resolver.resolve(a, override, result)
+        resolver.prefetch(a)
+        runQueued()
+
+        then:
+        1 * delegate.resolve(a, override, result)
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "ignores prefetch failures"() {
+        def override = Stub(ComponentOverrideMetadata)
+        def result = new DefaultBuildableComponentResolveResult()
+
+        when:
+        resolver.prefetch(a)
+        runQueued()
+        resolver.resolve(a, override, result)
+
+        then:
+        1 * delegate.resolve(a, _, _) >> { throw new RuntimeException("broken") }
+        1 * delegate.resolve(a, override, result)
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "does not prefetch once stopped"() {
+        when:
+        resolver.prefetch(a)
+        resolver.stop()
+        resolver.prefetch(b)
+        runQueued()
+
+        then:
+        1 * executor.stop()
+        0 * delegate.resolve(_, _, _)
+    }
+
+    private void runQueued() {
+        while (!queued.empty) {
+            queued.remove(0).run()
+        }
+    }
+
+    private static ComponentIdentifier id(String name, String version) {
+        DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId("org", name), version)
+    }
+
+    private DependencyMetadata dependency(String name, String version, boolean constraint = false) {
+        Stub(DependencyMetadata) {
+            getSelector() >> DefaultModuleComponentSelector.newSelector(DefaultModuleIdentifier.newId("org", name), version)
+            isConstraint() >> constraint
+        }
+    }
+
+    private ComponentResolveMetadata metadata(DependencyMetadata... dependencies) {
+        def variant = Stub(ConfigurationMetadata) {
+            getDependencies() >> (dependencies as List)
+        }
+        Stub(ComponentResolveMetadata) {
+            getVariantsForGraphTraversal() >> Optional.of(ImmutableList.of(variant))
+        }
+    }
+}
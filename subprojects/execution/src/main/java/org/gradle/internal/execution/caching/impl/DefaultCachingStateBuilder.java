@@ -27,6 +27,7 @@
 import org.gradle.internal.execution.caching.CachingStateBuilder;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.HashFunction;
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.snapshot.ValueSnapshot;
@@ -130,6 +131,11 @@ public final CachingState build() {
         ImmutableSortedMap<String, HashCode> inputValueFingerprints = inputValueFingerprintsBuilder.build();
 
         Hasher hasher = Hashing.newHasher();
+        HashFunction contentHashFunction = Hashing.contentFunction();
+        if (contentHashFunction != Hashing.defaultFunction()) {
+            // Keep entries for file contents hashed with a different function apart
+            hasher.putString(contentHashFunction.getAlgorithm());
+        }
         implementation.appendToHasher(hasher);
         additionalImplementations.forEach(additionalImplementation -> {
             additionalImplementation.appendToHasher(hasher);
@@ -30,4 +30,11 @@ public interface ExecutionHistoryCacheAccess {
      * @param cacheInMemoryForShortLivedProcesses When true, entries are cached in memory. When false, entries are cached in memory only when it possible that another build will be run in this process.
      */
     <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses);
+
+    /**
+     * Runs the given action while holding an exclusive lock on the execution history, so it can update several caches consistently.
+     *
+     * See {@link org.gradle.cache.CacheAccess#useCache(Runnable)} for more details.
+     */
+    void useCache(Runnable action);
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+
+import java.util.Map;
+
+/**
+ * A file collection fingerprint as stored in the execution history, where the fingerprints of the files
+ * are replaced by the hashes of the chunks containing them.
+ *
+ * The chunks are stored separately, see {@link DefaultExecutionHistoryStore}.
+ */
+class ChunkedFileCollectionFingerprint implements FileCollectionFingerprint {
+
+    private final ImmutableList<HashCode> chunkHashes;
+    private final ImmutableMultimap<String, HashCode> rootHashes;
+
+    public ChunkedFileCollectionFingerprint(ImmutableList<HashCode> chunkHashes, ImmutableMultimap<String, HashCode> rootHashes) {
+        this.chunkHashes = chunkHashes;
+        this.rootHashes = rootHashes;
+    }
+
+    public ImmutableList<HashCode> getChunkHashes() {
+        return chunkHashes;
+    }
+
+    @Override
+    public Map<String, FileSystemLocationFingerprint> getFingerprints() {
+        throw new UnsupportedOperationException("The chunks of the fingerprint need to be loaded first.");
+    }
+
+    @Override
+    public ImmutableMultimap<String, HashCode> getRootHashes() {
+        return rootHashes;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Serializes {@link ChunkedFileCollectionFingerprint}s, which only contain the hashes of their chunks and their root hashes.
+ */
+class ChunkedFileCollectionFingerprintSerializer extends AbstractSerializer<FileCollectionFingerprint> {
+
+    private final StringInterner stringInterner;
+    private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
+
+    public ChunkedFileCollectionFingerprintSerializer(StringInterner stringInterner) {
+        this.stringInterner = stringInterner;
+    }
+
+    @Override
+    public FileCollectionFingerprint read(Decoder decoder) throws IOException {
+        int chunkCount = decoder.readSmallInt();
+        ImmutableList.Builder<HashCode> chunkHashes = ImmutableList.builderWithExpectedSize(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunkHashes.add(hashCodeSerializer.read(decoder));
+        }
+        int rootCount = decoder.readSmallInt();
+        ImmutableMultimap.Builder<String, HashCode> rootHashes = ImmutableMultimap.builder();
+        for (int i = 0; i < rootCount; i++) {
+            String absolutePath = stringInterner.intern(decoder.readString());
+            rootHashes.put(absolutePath, hashCodeSerializer.read(decoder));
+        }
+        return new ChunkedFileCollectionFingerprint(chunkHashes.build(), rootHashes.build());
+    }
+
+    @Override
+    public void write(Encoder encoder, FileCollectionFingerprint value) throws IOException {
+        ChunkedFileCollectionFingerprint fingerprint = (ChunkedFileCollectionFingerprint) value;
+        encoder.writeSmallInt(fingerprint.getChunkHashes().size());
+        for (HashCode chunkHash : fingerprint.getChunkHashes()) {
+            hashCodeSerializer.write(encoder, chunkHash);
+        }
+        encoder.writeSmallInt(fingerprint.getRootHashes().size());
+        for (Map.Entry<String, HashCode> entry : fingerprint.getRootHashes().entries()) {
+            encoder.writeString(entry.getKey());
+            hashCodeSerializer.write(encoder, entry.getValue());
+        }
+    }
+}
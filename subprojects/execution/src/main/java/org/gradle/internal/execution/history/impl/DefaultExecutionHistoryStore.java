@@ -17,42 +17,145 @@
 package org.gradle.internal.execution.history.impl;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.caching.internal.origin.OriginMetadata;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.execution.history.AfterPreviousExecutionState;
 import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
 import org.gradle.internal.execution.history.ExecutionHistoryStore;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.internal.serialize.MapSerializer;
+import org.gradle.internal.serialize.SetSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 import org.gradle.internal.snapshot.ValueSnapshot;
 import org.gradle.internal.snapshot.impl.ImplementationSnapshot;
+import org.gradle.internal.time.Clock;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
-import static com.google.common.collect.ImmutableSortedMap.copyOfSorted;
-import static com.google.common.collect.Maps.transformValues;
+/**
+ * Stores the execution history with the fingerprints of the files split into content addressed chunks.
+ *
+ * Each history record only contains the hashes of its chunks. A chunk is stored once, no matter how many records
+ * reference it, and is removed when the last record referencing it is replaced or removed. When a unit of work is
+ * executed again, only the chunks which changed are written.
+ *
+ * The reference counts are maintained on a background thread, so storing a record does not wait for the cache lock.
+ * Records which are not yet written are loaded from memory. The reference counts and the keys of the records are
+ * kept in buckets, so they can be enumerated: once a day, the counts are recomputed from the records and chunks
+ * nobody references anymore are removed. This also repairs counts left behind by a build which did not finish
+ * writing its records.
+ */
+public class DefaultExecutionHistoryStore implements ExecutionHistoryStore, Stoppable {
+
+    /**
+     * A chunk ends after a file whose mixed path hash has none of these bits set, so chunks contain 256 files on average.
+     * As the boundaries only depend on the paths, adding or removing a file only changes the chunk containing it.
+     */
+    private static final int CHUNK_BOUNDARY_MASK = 0xFF;
 
-public class DefaultExecutionHistoryStore implements ExecutionHistoryStore {
+    private static final int BUCKET_COUNT = 256;
+    private static final String LAST_SWEEP = "lastSweep";
+    private static final long SWEEP_INTERVAL = TimeUnit.DAYS.toMillis(1);
 
+    private final ExecutionHistoryCacheAccess executionHistoryCacheAccess;
+    private final Clock clock;
+    private final FingerprintMapSerializer fingerprintMapSerializer;
     private final PersistentIndexedCache<String, AfterPreviousExecutionState> store;
+    private final PersistentIndexedCache<HashCode, byte[]> chunks;
+    private final PersistentIndexedCache<Integer, Map<HashCode, Integer>> chunkReferences;
+    private final PersistentIndexedCache<Integer, Set<String>> recordKeys;
+    private final PersistentIndexedCache<String, Long> sweeps;
+    private final ConcurrentMap<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private final ManagedExecutor executor;
 
-    public DefaultExecutionHistoryStore(ExecutionHistoryCacheAccess executionHistoryCacheAccess, StringInterner stringInterner) {
+    // Only accessed by the background thread
+    private Long lastSweep;
+
+    public DefaultExecutionHistoryStore(ExecutionHistoryCacheAccess executionHistoryCacheAccess, StringInterner stringInterner, ExecutorFactory executorFactory, Clock clock) {
+        this.executionHistoryCacheAccess = executionHistoryCacheAccess;
+        this.clock = clock;
+        this.fingerprintMapSerializer = new FingerprintMapSerializer(stringInterner);
         DefaultPreviousExecutionStateSerializer serializer = new DefaultPreviousExecutionStateSerializer(
-            new FileCollectionFingerprintSerializer(stringInterner));
+            new ChunkedFileCollectionFingerprintSerializer(stringInterner));
 
         this.store = executionHistoryCacheAccess.createCache(
-            PersistentIndexedCacheParameters.of("executionHistory", String.class, serializer),
+            PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("executionHistoryRecords"), String.class, serializer).withMemoryMappedStorage(),
             10000,
             false
         );
+        this.chunks = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("executionHistoryChunks"), new HashCodeSerializer(), BaseSerializerFactory.BYTE_ARRAY_SERIALIZER).withMemoryMappedStorage(),
+            1000,
+            false
+        );
+        this.chunkReferences = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("executionHistoryChunkReferences"), BaseSerializerFactory.INTEGER_SERIALIZER, new MapSerializer<>(new HashCodeSerializer(), BaseSerializerFactory.INTEGER_SERIALIZER)),
+            BUCKET_COUNT,
+            false
+        );
+        this.recordKeys = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("executionHistoryRecordKeys"), BaseSerializerFactory.INTEGER_SERIALIZER, new SetSerializer<>(BaseSerializerFactory.STRING_SERIALIZER)),
+            BUCKET_COUNT,
+            false
+        );
+        this.sweeps = executionHistoryCacheAccess.createCache(
+            PersistentIndexedCacheParameters.of(Hashing.contentFunctionQualifiedName("executionHistorySweeps"), String.class, BaseSerializerFactory.LONG_SERIALIZER),
+            1,
+            false
+        );
+        this.executor = executorFactory.create("Execution history bookkeeping", 1);
     }
 
     @Override
     public Optional<AfterPreviousExecutionState> load(String key) {
-        return Optional.ofNullable(store.get(key));
+        PendingUpdate pendingUpdate = pendingUpdates.get(key);
+        AfterPreviousExecutionState chunkedState = pendingUpdate != null ? pendingUpdate.chunkedState : store.get(key);
+        if (chunkedState == null) {
+            return Optional.empty();
+        }
+        Map<HashCode, byte[]> pendingChunks = pendingUpdate != null ? pendingUpdate.chunks : ImmutableMap.of();
+        ImmutableSortedMap<String, FileCollectionFingerprint> inputFileProperties = loadChunks(chunkedState.getInputFileProperties(), pendingChunks);
+        ImmutableSortedMap<String, FileCollectionFingerprint> outputFileProperties = loadChunks(chunkedState.getOutputFileProperties(), pendingChunks);
+        if (inputFileProperties == null || outputFileProperties == null) {
+            // The chunks are not available anymore, e.g. because a concurrent build replaced the record
+            return Optional.empty();
+        }
+        return Optional.of(new DefaultAfterPreviousExecutionState(
+            chunkedState.getOriginMetadata(),
+            chunkedState.getImplementation(),
+            chunkedState.getAdditionalImplementations(),
+            chunkedState.getInputProperties(),
+            inputFileProperties,
+            outputFileProperties,
+            chunkedState.isSuccessful()
+        ));
     }
 
     @Override
@@ -66,26 +169,270 @@ public void store(
         ImmutableSortedMap<String, CurrentFileCollectionFingerprint> outputFileProperties,
         boolean successful
     ) {
-        store.put(key, new DefaultAfterPreviousExecutionState(
+        Map<HashCode, byte[]> encodedChunks = new LinkedHashMap<>();
+        AfterPreviousExecutionState chunkedState = new DefaultAfterPreviousExecutionState(
             originMetadata,
             implementation,
             additionalImplementations,
             inputProperties,
-            prepareForSerialization(inputFileProperties),
-            prepareForSerialization(outputFileProperties),
+            splitIntoChunks(inputFileProperties, encodedChunks),
+            splitIntoChunks(outputFileProperties, encodedChunks),
             successful
-        ));
+        );
+        schedule(key, new PendingUpdate(chunkedState, encodedChunks));
     }
 
     @Override
     public void remove(String key) {
-        store.remove(key);
+        schedule(key, new PendingUpdate(null, ImmutableMap.of()));
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+
+    private void schedule(String key, PendingUpdate update) {
+        pendingUpdates.put(key, update);
+        executor.execute(() -> {
+            try {
+                executionHistoryCacheAccess.useCache(() -> {
+                    sweepIfDue();
+                    apply(key, update);
+                });
+            } finally {
+                pendingUpdates.remove(key, update);
+            }
+        });
+    }
+
+    private void apply(String key, PendingUpdate update) {
+        AfterPreviousExecutionState previousState = store.get(key);
+        Set<HashCode> previousChunkHashes = referencedChunks(previousState);
+        Map<HashCode, byte[]> addedChunks = new LinkedHashMap<>();
+        for (Map.Entry<HashCode, byte[]> chunk : update.chunks.entrySet()) {
+            if (!previousChunkHashes.remove(chunk.getKey())) {
+                addedChunks.put(chunk.getKey(), chunk.getValue());
+            }
+        }
+
+        // Count the references before writing the chunks, so every stored chunk can be found by the sweep
+        Map<Integer, Map<HashCode, Integer>> modifiedBuckets = new HashMap<>();
+        Set<HashCode> unreferencedChunks = new HashSet<>();
+        Map<HashCode, byte[]> newChunks = new LinkedHashMap<>();
+        addedChunks.forEach((chunkHash, chunk) -> {
+            Map<HashCode, Integer> bucket = modifiedBuckets.computeIfAbsent(bucketOf(chunkHash), this::loadChunkReferences);
+            if (bucket.merge(chunkHash, 1, Integer::sum) == 1) {
+                newChunks.put(chunkHash, chunk);
+            }
+        });
+        for (HashCode chunkHash : previousChunkHashes) {
+            Map<HashCode, Integer> bucket = modifiedBuckets.computeIfAbsent(bucketOf(chunkHash), this::loadChunkReferences);
+            Integer referenceCount = bucket.get(chunkHash);
+            if (referenceCount == null) {
+                continue;
+            }
+            if (referenceCount > 1) {
+                bucket.put(chunkHash, referenceCount - 1);
+            } else {
+                bucket.remove(chunkHash);
+                unreferencedChunks.add(chunkHash);
+            }
+        }
+        modifiedBuckets.forEach((bucket, references) -> putOrRemove(chunkReferences, bucket, references.isEmpty() ? null : references));
+        newChunks.forEach(chunks::put);
+
+        // Index the key before writing the record, so every stored record can be found by the sweep
+        if (update.chunkedState != null) {
+            if (previousState == null) {
+                updateRecordKeys(key, true);
+            }
+            store.put(key, update.chunkedState);
+        } else if (previousState != null) {
+            store.remove(key);
+            updateRecordKeys(key, false);
+        }
+        unreferencedChunks.forEach(chunks::remove);
     }
 
-    private static ImmutableSortedMap<String, FileCollectionFingerprint> prepareForSerialization(ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fingerprints) {
-        return copyOfSorted(transformValues(fingerprints, value -> {
+    private Map<HashCode, Integer> loadChunkReferences(int bucket) {
+        Map<HashCode, Integer> references = chunkReferences.get(bucket);
+        return references == null ? new LinkedHashMap<>() : new LinkedHashMap<>(references);
+    }
+
+    private void updateRecordKeys(String key, boolean add) {
+        int bucket = bucketOf(key);
+        Set<String> existingKeys = recordKeys.get(bucket);
+        Set<String> keys = existingKeys == null ? new LinkedHashSet<>() : new LinkedHashSet<>(existingKeys);
+        if (add ? keys.add(key) : keys.remove(key)) {
+            putOrRemove(recordKeys, bucket, keys.isEmpty() ? null : keys);
+        }
+    }
+
+    private void sweepIfDue() {
+        long now = clock.getCurrentTime();
+        if (lastSweep == null) {
+            lastSweep = sweeps.get(LAST_SWEEP);
+        }
+        if (lastSweep != null && now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        sweep();
+        lastSweep = now;
+        sweeps.put(LAST_SWEEP, now);
+    }
+
+    /**
+     * Recomputes the reference counts from the stored records and removes the chunks which are not referenced anymore.
+     */
+    private void sweep() {
+        Map<HashCode, Integer> referenceCounts = new HashMap<>();
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            Set<String> keys = recordKeys.get(bucket);
+            if (keys == null) {
+                continue;
+            }
+            Set<String> storedKeys = new LinkedHashSet<>();
+            for (String key : keys) {
+                AfterPreviousExecutionState chunkedState = store.get(key);
+                if (chunkedState != null) {
+                    storedKeys.add(key);
+                    referencedChunks(chunkedState).forEach(chunkHash -> referenceCounts.merge(chunkHash, 1, Integer::sum));
+                }
+            }
+            if (storedKeys.size() < keys.size()) {
+                putOrRemove(recordKeys, bucket, storedKeys.isEmpty() ? null : storedKeys);
+            }
+        }
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            Map<HashCode, Integer> references = chunkReferences.get(bucket);
+            if (references == null) {
+                continue;
+            }
+            Map<HashCode, Integer> actualReferences = new LinkedHashMap<>();
+            for (HashCode chunkHash : references.keySet()) {
+                Integer referenceCount = referenceCounts.get(chunkHash);
+                if (referenceCount == null) {
+                    chunks.remove(chunkHash);
+                } else {
+                    actualReferences.put(chunkHash, referenceCount);
+                }
+            }
+            if (!actualReferences.equals(references)) {
+                putOrRemove(chunkReferences, bucket, actualReferences.isEmpty() ? null : actualReferences);
+            }
+        }
+    }
+
+    private static <V> void putOrRemove(PersistentIndexedCache<Integer, V> cache, int bucket, @Nullable V value) {
+        if (value == null) {
+            cache.remove(bucket);
+        } else {
+            cache.put(bucket, value);
+        }
+    }
+
+    private static int bucketOf(Object key) {
+        return key.hashCode() & (BUCKET_COUNT - 1);
+    }
+
+    private static Set<HashCode> referencedChunks(@Nullable AfterPreviousExecutionState chunkedState) {
+        Set<HashCode> chunkHashes = new HashSet<>();
+        if (chunkedState != null) {
+            for (FileCollectionFingerprint fingerprint : chunkedState.getInputFileProperties().values()) {
+                chunkHashes.addAll(((ChunkedFileCollectionFingerprint) fingerprint).getChunkHashes());
+            }
+            for (FileCollectionFingerprint fingerprint : chunkedState.getOutputFileProperties().values()) {
+                chunkHashes.addAll(((ChunkedFileCollectionFingerprint) fingerprint).getChunkHashes());
+            }
+        }
+        return chunkHashes;
+    }
+
+    private ImmutableSortedMap<String, FileCollectionFingerprint> splitIntoChunks(ImmutableSortedMap<String, CurrentFileCollectionFingerprint> fingerprints, Map<HashCode, byte[]> encodedChunks) {
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, CurrentFileCollectionFingerprint> entry : fingerprints.entrySet()) {
+            CurrentFileCollectionFingerprint fingerprint = entry.getValue();
+            ImmutableList.Builder<HashCode> chunkHashes = ImmutableList.builder();
+            Map<String, FileSystemLocationFingerprint> chunk = new LinkedHashMap<>();
+            for (Map.Entry<String, FileSystemLocationFingerprint> fileFingerprint : fingerprint.getFingerprints().entrySet()) {
+                chunk.put(fileFingerprint.getKey(), fileFingerprint.getValue());
+                if (isChunkBoundary(fileFingerprint.getKey())) {
+                    chunkHashes.add(encodeChunk(chunk, encodedChunks));
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunkHashes.add(encodeChunk(chunk, encodedChunks));
+            }
             //noinspection ConstantConditions
-            return new SerializableFileCollectionFingerprint(value.getFingerprints(), value.getRootHashes());
-        }));
+            builder.put(entry.getKey(), new ChunkedFileCollectionFingerprint(chunkHashes.build(), fingerprint.getRootHashes()));
+        }
+        return builder.build();
+    }
+
+    private static boolean isChunkBoundary(String absolutePath) {
+        int hash = absolutePath.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return (hash & CHUNK_BOUNDARY_MASK) == 0;
+    }
+
+    private HashCode encodeChunk(Map<String, FileSystemLocationFingerprint> chunk, Map<HashCode, byte[]> encodedChunks) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (KryoBackedEncoder encoder = new KryoBackedEncoder(outputStream)) {
+            fingerprintMapSerializer.write(encoder, chunk);
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        byte[] encodedChunk = outputStream.toByteArray();
+        HashCode chunkHash = Hashing.hashBytes(encodedChunk);
+        encodedChunks.put(chunkHash, encodedChunk);
+        return chunkHash;
+    }
+
+    @Nullable
+    private ImmutableSortedMap<String, FileCollectionFingerprint> loadChunks(ImmutableSortedMap<String, FileCollectionFingerprint> chunkedFingerprints, Map<HashCode, byte[]> pendingChunks) {
+        ImmutableSortedMap.Builder<String, FileCollectionFingerprint> builder = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, FileCollectionFingerprint> entry : chunkedFingerprints.entrySet()) {
+            ChunkedFileCollectionFingerprint chunkedFingerprint = (ChunkedFileCollectionFingerprint) entry.getValue();
+            if (chunkedFingerprint.getChunkHashes().isEmpty()) {
+                builder.put(entry.getKey(), FileCollectionFingerprint.EMPTY);
+                continue;
+            }
+            ImmutableMap.Builder<String, FileSystemLocationFingerprint> fingerprints = ImmutableMap.builder();
+            for (HashCode chunkHash : chunkedFingerprint.getChunkHashes()) {
+                byte[] chunk = pendingChunks.get(chunkHash);
+                if (chunk == null) {
+                    chunk = chunks.get(chunkHash);
+                }
+                if (chunk == null) {
+                    return null;
+                }
+                fingerprints.putAll(decodeChunk(chunk));
+            }
+            builder.put(entry.getKey(), new SerializableFileCollectionFingerprint(fingerprints.build(), chunkedFingerprint.getRootHashes()));
+        }
+        return builder.build();
+    }
+
+    private Map<String, FileSystemLocationFingerprint> decodeChunk(byte[] chunk) {
+        try (KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(chunk))) {
+            return fingerprintMapSerializer.read(decoder);
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static class PendingUpdate {
+        // Null when the record is removed
+        private final AfterPreviousExecutionState chunkedState;
+        private final Map<HashCode, byte[]> chunks;
+
+        PendingUpdate(@Nullable AfterPreviousExecutionState chunkedState, Map<HashCode, byte[]> chunks) {
+            this.chunkedState = chunkedState;
+            this.chunks = chunks;
+        }
     }
 }
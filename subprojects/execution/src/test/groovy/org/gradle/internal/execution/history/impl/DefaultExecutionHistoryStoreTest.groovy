@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl
+
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableMultimap
+import com.google.common.collect.ImmutableSortedMap
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.cache.PersistentIndexedCacheParameters
+import org.gradle.caching.internal.origin.OriginMetadata
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess
+import org.gradle.internal.file.FileType
+import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint
+import org.gradle.internal.fingerprint.impl.DefaultFileSystemLocationFingerprint
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.snapshot.impl.ImplementationSnapshot
+import org.gradle.internal.time.Clock
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class DefaultExecutionHistoryStoreTest extends Specification {
+
+    def caches = [:]
+    def cacheAccess = new ExecutionHistoryCacheAccess() {
+        @Override
+        <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
+            def cache = new InMemoryIndexedCache<K, V>(parameters.valueSerializer)
+            caches[parameters.cacheName] = cache
+            return cache
+        }
+
+        @Override
+        void useCache(Runnable action) {
+            action.run()
+        }
+    }
+    def deferUpdates = false
+    def pendingUpdates = []
+    def executor = Stub(ManagedExecutor) {
+        execute(_) >> { Runnable update -> deferUpdates ? pendingUpdates << update : update.run() }
+    }
+    def executorFactory = Stub(ExecutorFactory) {
+        create(_, _) >> executor
+    }
+    def now = 0L
+    def clock = Stub(Clock) {
+        getCurrentTime() >> { now }
+    }
+    def store = new DefaultExecutionHistoryStore(cacheAccess, new StringInterner(), executorFactory, clock)
+
+    def "loads stored fingerprints in their original order"() {
+        def outputs = fingerprint((0..<2000).collect { "/out/file${(it * 7919) % 2000}" })
+
+        when:
+        storeRecord("task", [:], [output: outputs])
+        def loaded = store.load("task").get()
+
+        then:
+        loaded.inputFileProperties.isEmpty()
+        loaded.outputFileProperties.keySet() == ["output"] as Set
+        loaded.outputFileProperties["output"].fingerprints.keySet() as List == outputs.fingerprints.keySet() as List
+        loaded.outputFileProperties["output"].fingerprints == outputs.fingerprints
+        loaded.outputFileProperties["output"].rootHashes == outputs.rootHashes
+        chunkCount() > 1
+    }
+
+    def "only stores changed chunks"() {
+        def paths = (0..<2000).collect { "/out/file$it" }
+        storeRecord("task", [:], [output: fingerprint(paths)])
+        def originalChunks = chunkHashes()
+
+        when:
+        storeRecord("task", [:], [output: fingerprint(paths, ["/out/file1000"])])
+
+        then:
+        def newChunks = chunkHashes()
+        newChunks.size() == originalChunks.size()
+        (newChunks - originalChunks).size() == 1
+        store.load("task").get().outputFileProperties["output"].fingerprints["/out/file1000"].normalizedContentHash == HashCode.fromInt(2)
+    }
+
+    def "shares chunks between records"() {
+        def classpath = fingerprint((0..<1000).collect { "/lib/lib${it}.jar" })
+        storeRecord("compile", [classpath: classpath], [:])
+        def originalChunkCount = chunkCount()
+
+        when:
+        storeRecord("test", [classpath: classpath], [:])
+
+        then:
+        chunkCount() == originalChunkCount
+
+        when:
+        store.remove("compile")
+
+        then:
+        chunkCount() == originalChunkCount
+        store.load("test").get().inputFileProperties["classpath"].fingerprints == classpath.fingerprints
+
+        when:
+        store.remove("test")
+
+        then:
+        chunkCount() == 0
+        !store.load("test").present
+    }
+
+    def "does not load record with missing chunks"() {
+        storeRecord("task", [input: fingerprint(["/in/file"])], [:])
+
+        when:
+        chunksCache().remove(chunkHashes().first())
+
+        then:
+        !store.load("task").present
+    }
+
+    def "loads records which are not written yet"() {
+        deferUpdates = true
+
+        when:
+        storeRecord("task", [input: fingerprint(["/in/file"])], [:])
+
+        then:
+        chunkCount() == 0
+        store.load("task").get().inputFileProperties["input"].fingerprints.keySet() == ["/in/file"] as Set
+
+        when:
+        store.remove("task")
+
+        then:
+        !store.load("task").present
+
+        when:
+        pendingUpdates.each { it.run() }
+
+        then:
+        chunkCount() == 0
+        !store.load("task").present
+    }
+
+    def "sweeps chunks which are not referenced anymore once a day"() {
+        storeRecord("task", [input: fingerprint(["/in/file"])], [:])
+        def referencedChunk = chunkHashes().first()
+        def orphanedChunk = HashCode.fromInt(42)
+        chunksCache().put(orphanedChunk, [1] as byte[])
+        addChunkReferences(orphanedChunk, 1)
+
+        when:
+        storeRecord("other", [:], [:])
+
+        then:
+        chunkHashes() == [referencedChunk, orphanedChunk] as Set
+
+        when:
+        now += TimeUnit.DAYS.toMillis(1)
+        storeRecord("other", [:], [:])
+
+        then:
+        chunkHashes() == [referencedChunk] as Set
+        store.load("task").present
+    }
+
+    def "sweep repairs reference counts"() {
+        storeRecord("task", [input: fingerprint(["/in/file"])], [:])
+        addChunkReferences(chunkHashes().first(), 5)
+
+        when:
+        now += TimeUnit.DAYS.toMillis(1)
+        store.remove("task")
+
+        then:
+        chunkCount() == 0
+    }
+
+    private void addChunkReferences(HashCode chunkHash, int count) {
+        def referencesCache = caches.find { name, cache -> name.startsWith("executionHistoryChunkReferences") }.value as InMemoryIndexedCache<Integer, Map<HashCode, Integer>>
+        def bucket = chunkHash.hashCode() & 0xFF
+        def references = new LinkedHashMap<HashCode, Integer>(referencesCache.get(bucket) ?: [:])
+        references[chunkHash] = (references[chunkHash] ?: 0) + count
+        referencesCache.put(bucket, references)
+    }
+
+    private void storeRecord(String key, Map<String, CurrentFileCollectionFingerprint> inputs, Map<String, CurrentFileCollectionFingerprint> outputs) {
+        store.store(
+            key,
+            new OriginMetadata("build", 1),
+            ImplementationSnapshot.of("Task", HashCode.fromInt(1)),
+            ImmutableList.of(),
+            ImmutableSortedMap.of(),
+            ImmutableSortedMap.copyOf(inputs),
+            ImmutableSortedMap.copyOf(outputs),
+            true
+        )
+    }
+
+    private CurrentFileCollectionFingerprint fingerprint(List<String> paths, List<String> changedPaths = []) {
+        def fingerprints = new LinkedHashMap<String, FileSystemLocationFingerprint>()
+        paths.each {
+            def contentHash = HashCode.fromInt(changedPaths.contains(it) ? 2 : 1)
+            fingerprints.put(it, new DefaultFileSystemLocationFingerprint(it, FileType.RegularFile, contentHash))
+        }
+        Stub(CurrentFileCollectionFingerprint) {
+            getFingerprints() >> fingerprints
+            getRootHashes() >> ImmutableMultimap.of(paths.first(), HashCode.fromInt(3))
+        }
+    }
+
+    private InMemoryIndexedCache<HashCode, byte[]> chunksCache() {
+        caches.find { name, cache -> name.startsWith("executionHistoryChunks") }.value
+    }
+
+    private Set<HashCode> chunkHashes() {
+        chunksCache().keySet() as Set<HashCode>
+    }
+
+    private int chunkCount() {
+        chunkHashes().size()
+    }
+}
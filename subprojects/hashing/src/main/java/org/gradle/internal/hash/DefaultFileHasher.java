@@ -21,30 +21,48 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 
 public class DefaultFileHasher implements FileHasher {
     private final StreamHasher streamHasher;
+    private final long mappedHashingThreshold;
+    private final FileHasherStatistics.Collector statisticsCollector;
 
     public DefaultFileHasher(StreamHasher streamHasher) {
+        this(streamHasher, -1, new FileHasherStatistics.Collector());
+    }
+
+    /**
+     * Creates a file hasher that hashes files at least {@code mappedHashingThreshold} bytes big by mapping them into memory.
+     * Smaller files are streamed through a buffer. A negative threshold disables hashing via memory mapping.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, long mappedHashingThreshold, FileHasherStatistics.Collector statisticsCollector) {
         this.streamHasher = streamHasher;
+        this.mappedHashingThreshold = mappedHashingThreshold;
+        this.statisticsCollector = statisticsCollector;
     }
 
     @Override
     public HashCode hash(File file) {
-        InputStream inputStream;
+        FileInputStream inputStream;
         try {
             inputStream = new FileInputStream(file);
         } catch (FileNotFoundException e) {
             throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
         }
         try {
-            return streamHasher.hash(inputStream);
+            FileChannel channel = inputStream.getChannel();
+            long length = channel.size();
+            boolean mapped = mappedHashingThreshold >= 0 && length >= mappedHashingThreshold;
+            HashCode hash = mapped
+                ? streamHasher.hashMapped(channel)
+                : streamHasher.hash(inputStream);
+            statisticsCollector.reportFileHashed(length, mapped);
+            return hash;
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s'.", file), e);
         } finally {
-            try {
-                inputStream.close();
-            } catch (IOException ignored) {
-                // Ignored
-            }
+            closeQuietly(inputStream);
         }
     }
 
@@ -52,4 +70,12 @@ public HashCode hash(File file) {
     public HashCode hash(File file, long length, long lastModified) {
         return hash(file);
     }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+            // Ignored
+        }
+    }
 }
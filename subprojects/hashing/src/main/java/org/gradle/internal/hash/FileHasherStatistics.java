@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the file contents hashed by a {@link FileHasher}.
+ */
+public interface FileHasherStatistics {
+    /**
+     * The number of files hashed.
+     */
+    long getHashedFileCount();
+
+    /**
+     * The number of bytes hashed.
+     */
+    long getHashedContentLength();
+
+    /**
+     * The number of bytes hashed by mapping files into memory.
+     */
+    long getMappedContentLength();
+
+    class Collector {
+        private final AtomicLong hashedFileCount = new AtomicLong();
+        private final AtomicLong hashedContentLength = new AtomicLong();
+        private final AtomicLong mappedContentLength = new AtomicLong();
+
+        public void reportFileHashed(long length, boolean mapped) {
+            hashedFileCount.incrementAndGet();
+            hashedContentLength.addAndGet(length);
+            if (mapped) {
+                mappedContentLength.addAndGet(length);
+            }
+        }
+
+        /**
+         * Returns the statistics collected since the last call and starts collecting from scratch.
+         */
+        public FileHasherStatistics collect() {
+            return new DefaultFileHasherStatistics(
+                hashedFileCount.getAndSet(0),
+                hashedContentLength.getAndSet(0),
+                mappedContentLength.getAndSet(0)
+            );
+        }
+    }
+
+    class DefaultFileHasherStatistics implements FileHasherStatistics {
+        private final long hashedFileCount;
+        private final long hashedContentLength;
+        private final long mappedContentLength;
+
+        public DefaultFileHasherStatistics(long hashedFileCount, long hashedContentLength, long mappedContentLength) {
+            this.hashedFileCount = hashedFileCount;
+            this.hashedContentLength = hashedContentLength;
+            this.mappedContentLength = mappedContentLength;
+        }
+
+        @Override
+        public long getHashedFileCount() {
+            return hashedFileCount;
+        }
+
+        @Override
+        public long getHashedContentLength() {
+            return hashedContentLength;
+        }
+
+        @Override
+        public long getMappedContentLength() {
+            return mappedContentLength;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Hashed %d files (%d bytes, %d bytes memory mapped)", hashedFileCount, hashedContentLength, mappedContentLength);
+        }
+    }
+}
@@ -20,12 +20,14 @@
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteStreams;
 
+import javax.annotation.Nullable;
 import java.io.OutputStream;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 /**
  * Some popular hash functions. Replacement for Guava's hashing utilities.
@@ -42,8 +44,18 @@ private Hashing() {}
 
     private static final HashFunction SHA512 = MessageDigestHashFunction.of("SHA-512");
 
+    private static final HashFunction MURMUR3 = new Murmur3HashFunction();
+
     private static final HashFunction DEFAULT = MD5;
 
+    /**
+     * System property to select the hash function used to hash file contents.
+     * Supported values are {@code md5} (the default) and {@code murmur3}.
+     */
+    public static final String CONTENT_HASH_FUNCTION_PROPERTY = "org.gradle.internal.hash.content";
+
+    private static final HashFunction CONTENT = contentFunctionFor(System.getProperty(CONTENT_HASH_FUNCTION_PROPERTY));
+
     /**
      * Returns a new {@link Hasher} based on the default hashing implementation.
      */
@@ -110,6 +122,35 @@ public static HashFunction defaultFunction() {
         return DEFAULT;
     }
 
+    /**
+     * The hashing function used to hash file contents.
+     *
+     * @see #CONTENT_HASH_FUNCTION_PROPERTY
+     */
+    public static HashFunction contentFunction() {
+        return CONTENT;
+    }
+
+    /**
+     * Returns the name to use for a persistent cache that stores hashes produced by the {@link #contentFunction() content hashing function}.
+     * Caches for the default function keep the given name, so hashes produced by different functions never end up in the same cache.
+     */
+    public static String contentFunctionQualifiedName(String name) {
+        return CONTENT == DEFAULT
+            ? name
+            : name + "-" + CONTENT.getAlgorithm().toLowerCase(Locale.ROOT);
+    }
+
+    static HashFunction contentFunctionFor(@Nullable String name) {
+        if (name == null || name.isEmpty() || name.equalsIgnoreCase("md5")) {
+            return MD5;
+        }
+        if (name.equalsIgnoreCase("murmur3")) {
+            return MURMUR3;
+        }
+        throw new IllegalArgumentException(String.format("Unsupported content hash function '%s', supported values are 'md5' and 'murmur3'.", name));
+    }
+
     /**
      * MD5 hashing function.
      */
@@ -138,35 +179,22 @@ public static HashFunction sha512() {
         return SHA512;
     }
 
-    private static abstract class MessageDigestHashFunction implements HashFunction {
+    /**
+     * Non-cryptographic 128-bit MurmurHash3 (x64 variant) hashing function.
+     */
+    public static HashFunction murmur3() {
+        return MURMUR3;
+    }
+
+    private static abstract class AbstractHashFunction implements HashFunction {
+        private final String algorithm;
         private final int hexDigits;
 
-        public MessageDigestHashFunction(int hashBits) {
+        public AbstractHashFunction(String algorithm, int hashBits) {
+            this.algorithm = algorithm;
             this.hexDigits = hashBits / 4;
         }
 
-        public static MessageDigestHashFunction of(String algorithm) {
-            MessageDigest prototype;
-            try {
-                prototype = MessageDigest.getInstance(algorithm);
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalArgumentException("Cannot instantiate digest algorithm: " + algorithm);
-            }
-            int hashBits = prototype.getDigestLength() * 8;
-            try {
-                prototype.clone();
-                return new CloningMessageDigestHashFunction(prototype, hashBits);
-            } catch (CloneNotSupportedException e) {
-                return new RegularMessageDigestHashFunction(algorithm, hashBits);
-            }
-        }
-
-        @Override
-        public PrimitiveHasher newPrimitiveHasher() {
-            MessageDigest digest = createDigest();
-            return new MessageDigestHasher(digest);
-        }
-
         @Override
         public Hasher newHasher() {
             return new DefaultHasher(newPrimitiveHasher());
@@ -186,7 +214,10 @@ public HashCode hashString(CharSequence string) {
             return hasher.hash();
         }
 
-        protected abstract MessageDigest createDigest();
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
 
         @Override
         public int getHexDigits() {
@@ -194,11 +225,41 @@ public int getHexDigits() {
         }
     }
 
+    private static abstract class MessageDigestHashFunction extends AbstractHashFunction {
+        public MessageDigestHashFunction(String algorithm, int hashBits) {
+            super(algorithm, hashBits);
+        }
+
+        public static MessageDigestHashFunction of(String algorithm) {
+            MessageDigest prototype;
+            try {
+                prototype = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Cannot instantiate digest algorithm: " + algorithm);
+            }
+            int hashBits = prototype.getDigestLength() * 8;
+            try {
+                prototype.clone();
+                return new CloningMessageDigestHashFunction(prototype, algorithm, hashBits);
+            } catch (CloneNotSupportedException e) {
+                return new RegularMessageDigestHashFunction(algorithm, hashBits);
+            }
+        }
+
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            MessageDigest digest = createDigest();
+            return new MessageDigestHasher(digest);
+        }
+
+        protected abstract MessageDigest createDigest();
+    }
+
     private static class CloningMessageDigestHashFunction extends MessageDigestHashFunction {
         private final MessageDigest prototype;
 
-        public CloningMessageDigestHashFunction(MessageDigest prototype, int hashBits) {
-            super(hashBits);
+        public CloningMessageDigestHashFunction(MessageDigest prototype, String algorithm, int hashBits) {
+            super(algorithm, hashBits);
             this.prototype = prototype;
         }
 
@@ -213,17 +274,14 @@ protected MessageDigest createDigest() {
     }
 
     private static class RegularMessageDigestHashFunction extends MessageDigestHashFunction {
-        private final String algorithm;
-
         public RegularMessageDigestHashFunction(String algorithm, int hashBits) {
-            super(hashBits);
-            this.algorithm = algorithm;
+            super(algorithm, hashBits);
         }
 
         @Override
         protected MessageDigest createDigest() {
             try {
-                return MessageDigest.getInstance(algorithm);
+                return MessageDigest.getInstance(getAlgorithm());
             } catch (NoSuchAlgorithmException e) {
                 throw new AssertionError(e);
             }
@@ -260,20 +318,16 @@ public void putBytes(byte[] bytes, int off, int len) {
             getDigest().update(bytes, off, len);
         }
 
+        @Override
+        public void putBytes(ByteBuffer buffer) {
+            getDigest().update(buffer);
+        }
+
         private void update(int length) {
             getDigest().update(buffer.array(), 0, length);
             castBuffer(buffer).clear();
         }
 
-        /**
-         * Without this cast, when the code compiled by Java 9+ is executed on Java 8, it will throw
-         * java.lang.NoSuchMethodError: Method flip()Ljava/nio/ByteBuffer; does not exist in class java.nio.ByteBuffer
-         */
-        @SuppressWarnings("RedundantCast")
-        private static <T extends Buffer> Buffer castBuffer(T byteBuffer) {
-            return (Buffer) byteBuffer;
-        }
-
         @Override
         public void putInt(int value) {
             buffer.putInt(value);
@@ -315,6 +369,236 @@ public HashCode hash() {
         }
     }
 
+    private static class Murmur3HashFunction extends AbstractHashFunction {
+        public Murmur3HashFunction() {
+            super("MURMUR3", 128);
+        }
+
+        @Override
+        public PrimitiveHasher newPrimitiveHasher() {
+            return new Murmur3Hasher();
+        }
+    }
+
+    /**
+     * Streaming implementation of the 128-bit x64 variant of MurmurHash3 with a seed of 0.
+     * Produces the same hashes as Guava's {@code Hashing.murmur3_128()}.
+     */
+    private static class Murmur3Hasher implements PrimitiveHasher {
+        private static final int CHUNK_SIZE = 16;
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int chunkLength;
+        private long h1;
+        private long h2;
+        private long length;
+        private boolean done;
+
+        private void checkNotDone() {
+            if (done) {
+                throw new IllegalStateException("Cannot reuse hasher!");
+            }
+        }
+
+        @Override
+        public void putByte(byte b) {
+            checkNotDone();
+            chunk[chunkLength++] = b;
+            if (chunkLength == CHUNK_SIZE) {
+                processChunk(chunk, 0);
+                chunkLength = 0;
+            }
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            checkNotDone();
+            if (chunkLength > 0) {
+                int count = Math.min(CHUNK_SIZE - chunkLength, len);
+                System.arraycopy(bytes, off, chunk, chunkLength, count);
+                chunkLength += count;
+                off += count;
+                len -= count;
+                if (chunkLength < CHUNK_SIZE) {
+                    return;
+                }
+                processChunk(chunk, 0);
+                chunkLength = 0;
+            }
+            while (len >= CHUNK_SIZE) {
+                processChunk(bytes, off);
+                off += CHUNK_SIZE;
+                len -= CHUNK_SIZE;
+            }
+            if (len > 0) {
+                System.arraycopy(bytes, off, chunk, 0, len);
+                chunkLength = len;
+            }
+        }
+
+        @Override
+        public void putBytes(ByteBuffer buffer) {
+            checkNotDone();
+            if (buffer.hasArray()) {
+                putBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                castBuffer(buffer).position(buffer.limit());
+                return;
+            }
+            ByteBuffer source = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            while (chunkLength > 0 && source.hasRemaining()) {
+                putByte(source.get());
+            }
+            while (source.remaining() >= CHUNK_SIZE) {
+                processChunk(source.getLong(), source.getLong());
+            }
+            while (source.hasRemaining()) {
+                putByte(source.get());
+            }
+            castBuffer(buffer).position(buffer.limit());
+        }
+
+        @Override
+        public void putInt(int value) {
+            for (int i = 0; i < 4; i++) {
+                putByte((byte) (value >>> (i * 8)));
+            }
+        }
+
+        @Override
+        public void putLong(long value) {
+            for (int i = 0; i < 8; i++) {
+                putByte((byte) (value >>> (i * 8)));
+            }
+        }
+
+        @Override
+        public void putDouble(double value) {
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            putByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            putBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            putBytes(hashCode.getBytes());
+        }
+
+        private void processChunk(byte[] bytes, int off) {
+            processChunk(getLongLittleEndian(bytes, off), getLongLittleEndian(bytes, off + 8));
+        }
+
+        private void processChunk(long k1, long k2) {
+            length += CHUNK_SIZE;
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        @Override
+        public HashCode hash() {
+            checkNotDone();
+            done = true;
+
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = chunkLength - 1; i >= 8; i--) {
+                k2 ^= (long) (chunk[i] & 0xff) << ((i - 8) * 8);
+            }
+            for (int i = Math.min(chunkLength, 8) - 1; i >= 0; i--) {
+                k1 ^= (long) (chunk[i] & 0xff) << (i * 8);
+            }
+            if (chunkLength > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (chunkLength > 0) {
+                h1 ^= mixK1(k1);
+            }
+            length += chunkLength;
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            byte[] bytes = new byte[CHUNK_SIZE];
+            putLongLittleEndian(bytes, 0, h1);
+            putLongLittleEndian(bytes, 8, h2);
+            return HashCode.fromBytesNoCopy(bytes);
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private static long getLongLittleEndian(byte[] bytes, int off) {
+            long value = 0;
+            for (int i = 7; i >= 0; i--) {
+                value = (value << 8) | (bytes[off + i] & 0xff);
+            }
+            return value;
+        }
+
+        private static void putLongLittleEndian(byte[] bytes, int off, long value) {
+            for (int i = 0; i < 8; i++) {
+                bytes[off + i] = (byte) (value >>> (i * 8));
+            }
+        }
+    }
+
+    /**
+     * Without this cast, when the code compiled by Java 9+ is executed on Java 8, it will throw
+     * java.lang.NoSuchMethodError: Method flip()Ljava/nio/ByteBuffer; does not exist in class java.nio.ByteBuffer
+     */
+    @SuppressWarnings("RedundantCast")
+    private static <T extends Buffer> Buffer castBuffer(T byteBuffer) {
+        return (Buffer) byteBuffer;
+    }
+
     private static class DefaultHasher implements Hasher {
         private final PrimitiveHasher hasher;
         private String invalidReason;
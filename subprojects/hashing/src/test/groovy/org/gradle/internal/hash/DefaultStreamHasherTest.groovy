@@ -36,4 +36,58 @@ class DefaultStreamHasherTest extends Specification {
         hash.toString() == "af67a92e9f73b51572e9b94e343d2840"
         output.toByteArray() == "hello".bytes
     }
+
+    def "can hash input with non-default hash function"() {
+        def input = new ByteArrayInputStream("hello".bytes)
+        when:
+        def hash = new DefaultStreamHasher(Hashing.murmur3()).hash(input)
+        then:
+        hash.length() == 16
+        hash != new DefaultStreamHasher().hash(new ByteArrayInputStream("hello".bytes))
+    }
+
+    def "hashing via memory mapping produces the same hash as streaming"() {
+        def file = File.createTempFile("content", ".bin")
+        file.deleteOnExit()
+        def content = new byte[100000]
+        new Random(1234).nextBytes(content)
+        file.bytes = content
+        def hasher = new DefaultStreamHasher(hashFunction)
+
+        when:
+        def mappedHash = new RandomAccessFile(file, "r").withCloseable { hasher.hashMapped(it.channel) }
+
+        then:
+        mappedHash == hasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        hashFunction << [Hashing.md5(), Hashing.murmur3()]
+    }
+
+    def "file hasher reports statistics"() {
+        def file = File.createTempFile("content", ".bin")
+        file.deleteOnExit()
+        file.bytes = new byte[length]
+        def collector = new FileHasherStatistics.Collector()
+        def fileHasher = new DefaultFileHasher(new DefaultStreamHasher(), threshold, collector)
+
+        when:
+        def hash = fileHasher.hash(file)
+        def statistics = collector.collect()
+
+        then:
+        hash == new DefaultStreamHasher().hash(new ByteArrayInputStream(new byte[length]))
+        statistics.hashedFileCount == 1
+        statistics.hashedContentLength == length
+        statistics.mappedContentLength == mappedLength
+
+        and:
+        collector.collect().hashedFileCount == 0
+
+        where:
+        length | threshold | mappedLength
+        1000   | -1        | 0
+        1000   | 1001      | 0
+        1000   | 1000      | 1000
+    }
 }
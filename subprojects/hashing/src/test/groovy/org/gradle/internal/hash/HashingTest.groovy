@@ -18,6 +18,8 @@ package org.gradle.internal.hash
 
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+
 import static java.lang.Thread.currentThread
 import static java.util.concurrent.CompletableFuture.supplyAsync
 import static java.util.concurrent.Executors.newFixedThreadPool
@@ -109,6 +111,64 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    def 'murmur3 produces the same hashes as the reference implementation'() {
+        given:
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+
+        when:
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        bytes.toList().collate(chunkSize).each { hasher.putBytes(it as byte[]) }
+
+        then:
+        hasher.hash().toString() == com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).toString()
+
+        where:
+        length | chunkSize
+        0      | 1
+        7      | 3
+        16     | 16
+        31     | 5
+        1024   | 17
+        4099   | 1000
+    }
+
+    def 'hashing byte buffers produces the same hash as hashing byte arrays'() {
+        given:
+        def bytes = new byte[1027]
+        new Random(1027).nextBytes(bytes)
+        def buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length)
+        buffer.put(bytes)
+        buffer.flip()
+
+        when:
+        def hasher = hashFunction.newPrimitiveHasher()
+        hasher.putByte(bytes[0])
+        buffer.position(1)
+        hasher.putBytes(buffer)
+
+        then:
+        hasher.hash() == hashFunction.hashBytes(bytes)
+        !buffer.hasRemaining()
+
+        where:
+        [hashFunction, direct] << [[Hashing.md5(), Hashing.murmur3()], [true, false]].combinations()
+    }
+
+    def 'can select content hash function by name'() {
+        expect:
+        Hashing.contentFunctionFor(null) == Hashing.md5()
+        Hashing.contentFunctionFor("MD5") == Hashing.md5()
+        Hashing.contentFunctionFor("murmur3") == Hashing.murmur3()
+
+        when:
+        Hashing.contentFunctionFor("crc32")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unsupported content hash function 'crc32', supported values are 'md5' and 'murmur3'."
+    }
+
     def hashStrings(List<String> strings) {
         def hasher = Hashing.newHasher()
         strings.each { hasher.putString(it) }
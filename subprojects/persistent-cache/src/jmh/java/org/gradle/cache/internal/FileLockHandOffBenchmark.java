@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.api.Action;
+import org.gradle.cache.FileLock;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.FileLockReleasedSignal;
+import org.gradle.cache.internal.locklistener.DefaultFileLockContentionHandler;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.DefaultExecutorFactory;
+import org.gradle.internal.remote.internal.inet.InetAddressFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * Measures how long it takes to hand an exclusive file lock over from one lock holder to another.
+ *
+ * Each contender uses its own lock manager and contention handler, so it behaves like a separate Gradle process.
+ * A contender keeps the lock until another contender asks for it, like the caches which are locked on demand.
+ * The score is the average time per hand-off.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FileLockHandOffBenchmark {
+    private static final int HAND_OFFS = 100;
+
+    @Param({"datagram", "stream"})
+    String channel;
+
+    @Param({"2", "4", "8"})
+    int contenders;
+
+    private File tmpDir;
+    private File lockFile;
+    private List<DefaultFileLockContentionHandler> contentionHandlers;
+    private List<Contender> contenderList;
+    private ExecutorService executor;
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmpDir = Files.createTempDirectory("file-lock-benchmark").toFile();
+        lockFile = new File(tmpDir, "lock.bin");
+        DefaultExecutorFactory executorFactory = new DefaultExecutorFactory();
+        InetAddressFactory addressFactory = new InetAddressFactory();
+        contentionHandlers = new ArrayList<DefaultFileLockContentionHandler>();
+        contenderList = new ArrayList<Contender>();
+        for (int i = 0; i < contenders; i++) {
+            DefaultFileLockContentionHandler contentionHandler = new DefaultFileLockContentionHandler(executorFactory, addressFactory, channel.equals("stream"));
+            contentionHandlers.add(contentionHandler);
+            contenderList.add(new Contender(new DefaultFileLockManager(new BenchmarkProcess(i), 60000, contentionHandler)));
+        }
+        executor = Executors.newFixedThreadPool(contenders);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        for (Contender contender : contenderList) {
+            contender.close();
+        }
+        CompositeStoppable.stoppable(contentionHandlers).stop();
+        lockFile.delete();
+        tmpDir.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HAND_OFFS)
+    public void handOff() throws Exception {
+        remaining.set(HAND_OFFS);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (final Contender contender : contenderList) {
+            results.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    contender.run();
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+    }
+
+    private class Contender {
+        private final FileLockManager lockManager;
+        private FileLock lock;
+
+        Contender(FileLockManager lockManager) {
+            this.lockManager = lockManager;
+        }
+
+        void run() {
+            while (true) {
+                final CountDownLatch released = new CountDownLatch(1);
+                FileLock acquired = lockManager.lock(lockFile, mode(FileLockManager.LockMode.Exclusive), "benchmark lock", "hand-off", new Action<FileLockReleasedSignal>() {
+                    @Override
+                    public void execute(FileLockReleasedSignal signal) {
+                        release();
+                        signal.trigger();
+                        released.countDown();
+                    }
+                });
+                synchronized (this) {
+                    lock = acquired;
+                }
+                if (remaining.decrementAndGet() <= 0) {
+                    // Done, let the other contenders finish as well
+                    release();
+                    return;
+                }
+                // Keep the lock until it is requested by another contender
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        synchronized void release() {
+            if (lock != null) {
+                lock.close();
+                lock = null;
+            }
+        }
+
+        void close() {
+            release();
+        }
+    }
+
+    private static class BenchmarkProcess implements ProcessMetaDataProvider {
+        private final int index;
+
+        BenchmarkProcess(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getProcessIdentifier() {
+            return String.valueOf(index);
+        }
+
+        @Override
+        public String getProcessDisplayName() {
+            return "contender " + index;
+        }
+    }
+}
@@ -23,6 +23,7 @@ public interface AsyncCacheAccess {
      * Submits the given action for execution without waiting for the result.
      *
      * An implementation may execute the action immediately or later. All actions submitted by this method must complete before any action submitted to {@link #read(Factory)} is executed. Actions submitted using this method must run in the order that they are submitted.
+     * An implementation may skip an update of a cache entry which is superseded by a later update of the same entry.
      */
     void enqueue(Runnable task);
 
@@ -56,38 +56,19 @@ public V get(K key, Transformer<? extends V, ? super K> producer, Runnable compl
 
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
-        try {
-            asyncCacheAccess.enqueue(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        persistentCache.put(key, value);
-                    } finally {
-                        completion.run();
-                    }
-                }
-            });
-        } catch (RuntimeException e) {
-            completion.run();
-            throw e;
-        }
+        enqueue(new CacheUpdate<K, V>(persistentCache, key, value, completion));
     }
 
     @Override
     public void removeLater(final K key, final Runnable completion) {
+        enqueue(new CacheUpdate<K, V>(persistentCache, key, null, completion));
+    }
+
+    private void enqueue(CacheUpdate<K, V> update) {
         try {
-            asyncCacheAccess.enqueue(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        persistentCache.remove(key);
-                    } finally {
-                        completion.run();
-                    }
-                }
-            });
+            asyncCacheAccess.enqueue(update);
         } catch (RuntimeException e) {
-            completion.run();
+            update.skip();
             throw e;
         }
     }
@@ -106,4 +87,49 @@ public void finishWork() {
     public void beforeLockRelease(FileLock.State currentCacheState) {
         persistentCache.beforeLockRelease(currentCacheState);
     }
+
+    /**
+     * Puts or removes a single entry. The {@link CacheAccessWorker} coalesces queued updates of the same entry, and only runs the last one.
+     */
+    static class CacheUpdate<K, V> implements Runnable {
+        private final MultiProcessSafePersistentIndexedCache<K, V> cache;
+        private final K key;
+        private final V value;
+        private final Runnable completion;
+
+        CacheUpdate(MultiProcessSafePersistentIndexedCache<K, V> cache, K key, @Nullable V value, Runnable completion) {
+            this.cache = cache;
+            this.key = key;
+            this.value = value;
+            this.completion = completion;
+        }
+
+        Object getCache() {
+            return cache;
+        }
+
+        Object getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (value == null) {
+                    cache.remove(key);
+                } else {
+                    cache.put(key, value);
+                }
+            } finally {
+                completion.run();
+            }
+        }
+
+        /**
+         * Completes this update without running it, as it has been superseded by a later update of the same entry.
+         */
+        void skip() {
+            completion.run();
+        }
+    }
 }
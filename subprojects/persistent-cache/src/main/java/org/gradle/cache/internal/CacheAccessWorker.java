@@ -26,16 +26,26 @@
 import org.gradle.internal.time.Time;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs the queued operations of a cache while holding the cache lock.
+ *
+ * The queued operations are taken from the queue in batches and run in the order they were queued. When an entry is updated
+ * several times without another kind of operation in between, only the last of these updates is written, at its position in the queue.
+ */
 class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
+    private static final int MAX_BATCH_SIZE = 1000;
+
     private final BlockingQueue<Runnable> workQueue;
     private final String displayName;
     private final CacheAccess cacheAccess;
@@ -46,15 +56,22 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private boolean stopSeen;
     private final CountDownLatch doneSignal = new CountDownLatch(1);
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
+    private final CacheAccessWorkerStatistics.Collector statisticsCollector;
 
     CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
+        this(displayName, cacheAccess, new CacheAccessWorkerStatistics.Collector());
+    }
+
+    CacheAccessWorker(String displayName, CacheAccess cacheAccess, CacheAccessWorkerStatistics.Collector statisticsCollector) {
         this.displayName = displayName;
         this.cacheAccess = cacheAccess;
+        this.statisticsCollector = statisticsCollector;
         this.batchWindowMillis = 200;
         this.maximumLockingTimeMillis = 5000;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
         int queueCapacity = Math.min(4000, heapProportionalCacheSizer.scaleCacheSize(40000));
-        workQueue = new ArrayBlockingQueue<Runnable>(queueCapacity, true);
+        // Has separate locks for adding and taking operations, so producers do not contend with the worker
+        workQueue = new LinkedBlockingQueue<Runnable>(queueCapacity);
     }
 
     @Override
@@ -176,25 +193,24 @@ private void flushOperations(final Runnable updateOperation) {
                 @Override
                 public void run() {
                     CountdownTimer timer = Time.startCountdownTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
-                    if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
-                    }
-                    Runnable otherOperation;
+                    List<Runnable> batch = new ArrayList<Runnable>();
+                    batch.add(updateOperation);
                     try {
-                        while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
-                            final Class<? extends Runnable> runnableClass = otherOperation.getClass();
-                            if (runnableClass == FlushOperationsCommand.class) {
-                                flushOperations.add((FlushOperationsCommand) otherOperation);
-                            }
-                            if (runnableClass == ShutdownOperationsCommand.class) {
-                                stopSeen = true;
+                        while (true) {
+                            int queueDepth = workQueue.size() + batch.size();
+                            workQueue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                            long startTime = System.nanoTime();
+                            boolean stop = runBatch(batch, flushOperations);
+                            statisticsCollector.batchCompleted(queueDepth, batch.size(), System.nanoTime() - startTime);
+                            batch.clear();
+                            if (stop || timer.hasExpired()) {
+                                break;
                             }
-                            if (runnableClass == ShutdownOperationsCommand.class
-                                    || runnableClass == FlushOperationsCommand.class
-                                    || timer.hasExpired()) {
+                            Runnable otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS);
+                            if (otherOperation == null) {
                                 break;
                             }
+                            batch.add(otherOperation);
                         }
                     } catch (InterruptedException e) {
                         throw UncheckedException.throwAsUncheckedException(e);
@@ -208,6 +224,60 @@ public void run() {
         }
     }
 
+    /**
+     * Runs the given operations in order, coalescing consecutive updates.
+     *
+     * @return whether a flush or a shutdown was requested, so the cache lock should be released.
+     */
+    private boolean runBatch(List<Runnable> batch, List<FlushOperationsCommand> flushOperations) {
+        boolean stop = false;
+        List<AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>> updates = new ArrayList<AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>>();
+        for (Runnable operation : batch) {
+            if (operation instanceof AsyncCacheAccessDecoratedCache.CacheUpdate) {
+                updates.add((AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>) operation);
+                continue;
+            }
+            // Updates queued before another operation need to be visible to it
+            runUpdates(updates);
+            failureHandler.onExecute(operation);
+            Class<? extends Runnable> operationClass = operation.getClass();
+            if (operationClass == FlushOperationsCommand.class) {
+                flushOperations.add((FlushOperationsCommand) operation);
+                stop = true;
+            } else if (operationClass == ShutdownOperationsCommand.class) {
+                stopSeen = true;
+                stop = true;
+            }
+        }
+        runUpdates(updates);
+        return stop;
+    }
+
+    private void runUpdates(List<AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        Map<Object, Map<Object, AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>>> lastUpdatesByCache = new HashMap<Object, Map<Object, AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>>>();
+        for (AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?> update : updates) {
+            Map<Object, AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>> lastUpdates = lastUpdatesByCache.get(update.getCache());
+            if (lastUpdates == null) {
+                lastUpdates = new HashMap<Object, AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?>>();
+                lastUpdatesByCache.put(update.getCache(), lastUpdates);
+            }
+            lastUpdates.put(update.getKey(), update);
+        }
+        // Keep the queue order, across caches as well, and only drop the updates which are superseded by a later one
+        for (AsyncCacheAccessDecoratedCache.CacheUpdate<?, ?> update : updates) {
+            if (lastUpdatesByCache.get(update.getCache()).get(update.getKey()) == update) {
+                failureHandler.onExecute(update);
+            } else {
+                update.skip();
+                statisticsCollector.updateCoalesced();
+            }
+        }
+        updates.clear();
+    }
+
     @Override
     public synchronized void stop() {
         if (!closed && !workerCompleted) {
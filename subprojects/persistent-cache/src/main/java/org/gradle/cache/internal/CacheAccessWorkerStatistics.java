@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics about the batches of operations run by the {@link CacheAccessWorker}s of the caches.
+ */
+public interface CacheAccessWorkerStatistics {
+    long getBatchCount();
+
+    long getOperationCount();
+
+    /**
+     * The number of queued updates which were not written, as a later update of the same entry was queued in the same batch.
+     */
+    long getCoalescedUpdateCount();
+
+    /**
+     * The maximum number of operations waiting in the queue of a cache when a batch was started.
+     */
+    int getMaxQueueDepth();
+
+    int getMaxBatchSize();
+
+    long getAverageFlushMillis();
+
+    long getMaxFlushMillis();
+
+    /**
+     * Collects the statistics of all caches which report to it.
+     */
+    class Collector {
+        private long batchCount;
+        private long operationCount;
+        private long coalescedUpdateCount;
+        private int maxQueueDepth;
+        private int maxBatchSize;
+        private long totalFlushNanos;
+        private long maxFlushNanos;
+
+        synchronized void batchCompleted(int queueDepth, int batchSize, long flushNanos) {
+            batchCount++;
+            operationCount += batchSize;
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            totalFlushNanos += flushNanos;
+            maxFlushNanos = Math.max(maxFlushNanos, flushNanos);
+        }
+
+        synchronized void updateCoalesced() {
+            coalescedUpdateCount++;
+        }
+
+        /**
+         * Takes the statistics gathered so far, leaving the collector empty.
+         */
+        public synchronized CacheAccessWorkerStatistics collect() {
+            CacheAccessWorkerStatistics statistics = new DefaultCacheAccessWorkerStatistics(
+                batchCount,
+                operationCount,
+                coalescedUpdateCount,
+                maxQueueDepth,
+                maxBatchSize,
+                batchCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalFlushNanos / batchCount),
+                TimeUnit.NANOSECONDS.toMillis(maxFlushNanos)
+            );
+            batchCount = 0;
+            operationCount = 0;
+            coalescedUpdateCount = 0;
+            maxQueueDepth = 0;
+            maxBatchSize = 0;
+            totalFlushNanos = 0;
+            maxFlushNanos = 0;
+            return statistics;
+        }
+    }
+
+    class DefaultCacheAccessWorkerStatistics implements CacheAccessWorkerStatistics {
+        private final long batchCount;
+        private final long operationCount;
+        private final long coalescedUpdateCount;
+        private final int maxQueueDepth;
+        private final int maxBatchSize;
+        private final long averageFlushMillis;
+        private final long maxFlushMillis;
+
+        public DefaultCacheAccessWorkerStatistics(long batchCount, long operationCount, long coalescedUpdateCount, int maxQueueDepth, int maxBatchSize, long averageFlushMillis, long maxFlushMillis) {
+            this.batchCount = batchCount;
+            this.operationCount = operationCount;
+            this.coalescedUpdateCount = coalescedUpdateCount;
+            this.maxQueueDepth = maxQueueDepth;
+            this.maxBatchSize = maxBatchSize;
+            this.averageFlushMillis = averageFlushMillis;
+            this.maxFlushMillis = maxFlushMillis;
+        }
+
+        @Override
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        @Override
+        public long getOperationCount() {
+            return operationCount;
+        }
+
+        @Override
+        public long getCoalescedUpdateCount() {
+            return coalescedUpdateCount;
+        }
+
+        @Override
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        @Override
+        public long getAverageFlushMillis() {
+            return averageFlushMillis;
+        }
+
+        @Override
+        public long getMaxFlushMillis() {
+            return maxFlushMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ran %d cache operations in %d batches (max batch size %d, max queue depth %d), %d updates coalesced, flush latency %dms average, %dms max",
+                operationCount, batchCount, maxBatchSize, maxQueueDepth, coalescedUpdateCount, averageFlushMillis, maxFlushMillis);
+        }
+    }
+}
@@ -47,12 +47,18 @@ public class DefaultCacheFactory implements CacheFactory, Closeable {
     private final FileLockManager lockManager;
     private final ExecutorFactory executorFactory;
     private final ProgressLoggerFactory progressLoggerFactory;
+    private final CacheAccessWorkerStatistics.Collector statisticsCollector;
     private final Lock lock = new ReentrantLock();
 
     public DefaultCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory) {
+        this(fileLockManager, executorFactory, progressLoggerFactory, new CacheAccessWorkerStatistics.Collector());
+    }
+
+    public DefaultCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory, CacheAccessWorkerStatistics.Collector statisticsCollector) {
         this.lockManager = fileLockManager;
         this.executorFactory = executorFactory;
         this.progressLoggerFactory = progressLoggerFactory;
+        this.statisticsCollector = statisticsCollector;
     }
 
     void onOpen(Object cache) {
@@ -88,9 +94,9 @@ private PersistentCache doOpen(File cacheDir, String displayName, Map<String, ?>
         if (dirCacheReference == null) {
             ReferencablePersistentCache cache;
             if (!properties.isEmpty() || initializer != null) {
-                cache = new DefaultPersistentDirectoryCache(canonicalDir, displayName, properties, lockTarget, lockOptions, initializer, cleanup, lockManager, executorFactory, progressLoggerFactory);
+                cache = new DefaultPersistentDirectoryCache(canonicalDir, displayName, properties, lockTarget, lockOptions, initializer, cleanup, lockManager, executorFactory, progressLoggerFactory, statisticsCollector);
             } else {
-                cache = new DefaultPersistentDirectoryStore(canonicalDir, displayName, lockTarget, lockOptions, cleanup, lockManager, executorFactory, progressLoggerFactory);
+                cache = new DefaultPersistentDirectoryStore(canonicalDir, displayName, lockTarget, lockOptions, cleanup, lockManager, executorFactory, progressLoggerFactory, statisticsCollector);
             }
             cache.open();
             dirCacheReference = new DirCacheReference(cache, properties, lockTarget, lockOptions);
@@ -42,7 +42,11 @@ public class DefaultPersistentDirectoryCache extends DefaultPersistentDirectoryS
     private final Action<? super PersistentCache> initAction;
 
     public DefaultPersistentDirectoryCache(File dir, String displayName, Map<String, ?> properties, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, Action<? super PersistentCache> initAction, CleanupAction cleanupAction, FileLockManager lockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory) {
-        super(dir, displayName, lockTarget, lockOptions, cleanupAction, lockManager, executorFactory, progressLoggerFactory);
+        this(dir, displayName, properties, lockTarget, lockOptions, initAction, cleanupAction, lockManager, executorFactory, progressLoggerFactory, new CacheAccessWorkerStatistics.Collector());
+    }
+
+    public DefaultPersistentDirectoryCache(File dir, String displayName, Map<String, ?> properties, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, Action<? super PersistentCache> initAction, CleanupAction cleanupAction, FileLockManager lockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory, CacheAccessWorkerStatistics.Collector statisticsCollector) {
+        super(dir, displayName, lockTarget, lockOptions, cleanupAction, lockManager, executorFactory, progressLoggerFactory, statisticsCollector);
         this.initAction = initAction;
         this.properties.putAll(properties);
     }
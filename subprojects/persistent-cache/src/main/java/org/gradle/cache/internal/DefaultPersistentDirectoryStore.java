@@ -55,9 +55,14 @@ public class DefaultPersistentDirectoryStore implements ReferencablePersistentCa
     protected final File propertiesFile;
     private final File gcFile;
     private final ProgressLoggerFactory progressLoggerFactory;
+    private final CacheAccessWorkerStatistics.Collector statisticsCollector;
     private CacheCoordinator cacheAccess;
 
     public DefaultPersistentDirectoryStore(File dir, String displayName, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, CleanupAction cleanupAction, FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory) {
+        this(dir, displayName, lockTarget, lockOptions, cleanupAction, fileLockManager, executorFactory, progressLoggerFactory, new CacheAccessWorkerStatistics.Collector());
+    }
+
+    public DefaultPersistentDirectoryStore(File dir, String displayName, CacheBuilder.LockTarget lockTarget, LockOptions lockOptions, CleanupAction cleanupAction, FileLockManager fileLockManager, ExecutorFactory executorFactory, ProgressLoggerFactory progressLoggerFactory, CacheAccessWorkerStatistics.Collector statisticsCollector) {
         this.dir = dir;
         this.lockTarget = lockTarget;
         this.lockOptions = lockOptions;
@@ -67,6 +72,7 @@ public DefaultPersistentDirectoryStore(File dir, String displayName, CacheBuilde
         this.propertiesFile = new File(dir, "cache.properties");
         this.gcFile = new File(dir, "gc.properties");
         this.progressLoggerFactory = progressLoggerFactory;
+        this.statisticsCollector = statisticsCollector;
         this.displayName = displayName != null ? (displayName + " (" + dir + ")") : ("cache directory " + dir.getName() + " (" + dir + ")");
     }
 
@@ -84,7 +90,7 @@ public DefaultPersistentDirectoryStore open() {
     }
 
     private CacheCoordinator createCacheAccess() {
-        return new DefaultCacheAccess(displayName, getLockTarget(), lockOptions, dir, lockManager, getInitAction(), getCleanupAction(), executorFactory);
+        return new DefaultCacheAccess(displayName, getLockTarget(), lockOptions, dir, lockManager, getInitAction(), getCleanupAction(), executorFactory, statisticsCollector);
     }
 
     private File getLockTarget() {
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the files inside the shard directories directly below the base directory, visiting only
+ * as many shards as fit into the given time budget.
+ *
+ * The name of the last visited shard is remembered in a cursor file in the base directory,
+ * so the next search continues with the following shard and all shards are eventually visited
+ * without ever listing the whole store at once. At least one shard is visited per search.
+ */
+public class IncrementalShardFilesFinder implements FilesFinder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalShardFilesFinder.class);
+
+    private final String cursorFileName;
+    private final long budgetMillis;
+
+    public IncrementalShardFilesFinder(String cursorFileName, long budgetMillis) {
+        this.cursorFileName = cursorFileName;
+        this.budgetMillis = budgetMillis;
+    }
+
+    @Override
+    public Iterable<File> find(final File baseDir, final FileFilter filter) {
+        return new Iterable<File>() {
+            @Override
+            @Nonnull
+            public Iterator<File> iterator() {
+                return new ShardIterator(baseDir, filter);
+            }
+        };
+    }
+
+    private class ShardIterator extends AbstractIterator<File> {
+        private final File cursorFile;
+        private final FileFilter filter;
+        private final Iterator<File> shards;
+        private final long deadline;
+        private Iterator<File> files = Collections.emptyIterator();
+        private File currentShard;
+
+        ShardIterator(File baseDir, FileFilter filter) {
+            this.cursorFile = new File(baseDir, cursorFileName);
+            this.filter = filter;
+            this.shards = shardsFromCursor(baseDir).iterator();
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        }
+
+        private List<File> shardsFromCursor(File baseDir) {
+            File[] shardDirs = baseDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.isDirectory() && filter.accept(file);
+                }
+            });
+            if (shardDirs == null || shardDirs.length == 0) {
+                return Collections.emptyList();
+            }
+            Arrays.sort(shardDirs);
+            String cursor = readCursor();
+            int start = 0;
+            while (cursor != null && start < shardDirs.length && shardDirs[start].getName().compareTo(cursor) <= 0) {
+                start++;
+            }
+            List<File> ordered = new ArrayList<File>(shardDirs.length);
+            ordered.addAll(Arrays.asList(shardDirs).subList(start, shardDirs.length));
+            ordered.addAll(Arrays.asList(shardDirs).subList(0, start));
+            return ordered;
+        }
+
+        @Override
+        protected File computeNext() {
+            while (!files.hasNext()) {
+                if (!shards.hasNext() || (currentShard != null && System.nanoTime() - deadline >= 0)) {
+                    if (currentShard != null) {
+                        writeCursor(currentShard.getName());
+                    }
+                    return endOfData();
+                }
+                currentShard = shards.next();
+                File[] shardFiles = currentShard.listFiles(filter);
+                files = shardFiles == null ? Collections.<File>emptyIterator() : Iterators.forArray(shardFiles);
+            }
+            return files.next();
+        }
+
+        private String readCursor() {
+            if (!cursorFile.isFile()) {
+                return null;
+            }
+            try {
+                return new String(Files.readAllBytes(cursorFile.toPath()), StandardCharsets.UTF_8).trim();
+            } catch (IOException e) {
+                LOGGER.debug("Could not read cleanup cursor from {}", cursorFile, e);
+                return null;
+            }
+        }
+
+        private void writeCursor(String shardName) {
+            try {
+                Files.write(cursorFile.toPath(), shardName.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                LOGGER.debug("Could not write cleanup cursor to {}", cursorFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.io.ByteBufferInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link BlockStore} that reads blocks from a memory mapping of the cache file, so lookups do not need a system call per block.
+ *
+ * Uses the same file format as {@link FileBackedBlockStore}, so a cache file can be opened with either store.
+ * Blocks are written through the file channel. Blocks written after the file was mapped are read through the channel
+ * until the unmapped part of the file grows beyond {@link #REMAP_THRESHOLD}, at which point the whole file is mapped again.
+ */
+public class MemoryMappedBlockStore implements BlockStore {
+    private static final int REMAP_THRESHOLD = 1024 * 1024;
+
+    private final File cacheFile;
+    private final BlockOutput output = new BlockOutput();
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedSize;
+    private long nextBlock;
+    private Factory factory;
+    private long currentFileSize;
+
+    public MemoryMappedBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = openRandomAccessFile();
+            channel = file.getChannel();
+            currentFileSize = file.length();
+            nextBlock = currentFileSize;
+            remap();
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private RandomAccessFile openRandomAccessFile() throws FileNotFoundException {
+        try {
+            return new RandomAccessFile(cacheFile, "rw");
+        } catch (FileNotFoundException e) {
+            return new RandomAccessFile(cacheFile, "r");
+        }
+    }
+
+    private void remap() throws IOException {
+        // The mapping is released when it is garbage collected, there is no supported way to unmap it earlier
+        mappedSize = Math.min(currentFileSize, Integer.MAX_VALUE);
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, mappedSize);
+    }
+
+    @Override
+    public void close() {
+        mapped = null;
+        mappedSize = 0;
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        mapped = null;
+        mappedSize = 0;
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        currentFileSize = 0;
+        nextBlock = 0;
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    /**
+     * Returns the given region of the file, positioned at its start.
+     */
+    private ByteBuffer region(long pos, int length) throws IOException {
+        long end = pos + length;
+        if (end > mappedSize && currentFileSize - mappedSize >= REMAP_THRESHOLD) {
+            remap();
+        }
+        if (end <= mappedSize) {
+            ByteBuffer region = mapped.duplicate();
+            region.limit((int) end).position((int) pos);
+            return region.slice();
+        }
+        ByteBuffer region = ByteBuffer.allocate(length);
+        while (region.hasRemaining()) {
+            if (channel.read(region, pos + region.position()) < 0) {
+                break;
+            }
+        }
+        region.flip();
+        return region;
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            DataOutputStream outputStream = output.start();
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            outputStream.writeInt(output.size());
+            output.writeTo(channel, pos);
+
+            // Pad
+            if (currentFileSize < finalSize) {
+                file.setLength(finalSize);
+                currentFileSize = finalSize;
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= currentFileSize) {
+                throw blockCorruptedException();
+            }
+
+            ByteBuffer header = region(pos, HEADER_SIZE);
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = header.get();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+            payloadSize = header.getInt();
+            if (payloadSize < 0 || pos + HEADER_SIZE + TAIL_SIZE + payloadSize > currentFileSize) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            ByteBuffer block = region(pos, HEADER_SIZE + payloadSize + TAIL_SIZE);
+            block.position(HEADER_SIZE);
+            DataInputStream inputStream = new DataInputStream(new ByteBufferInputStream(block));
+            payload.read(inputStream);
+
+            // Read and verify count
+            long actualCount = block.position();
+            long count = inputStream.readInt();
+            if (actualCount != count) {
+                throw blockCorruptedException();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MemoryMappedBlockStore.this));
+        }
+    }
+
+    /**
+     * Collects a block in memory, so it can be written to the file with a single positional write.
+     */
+    private static class BlockOutput extends ByteArrayOutputStream {
+        private final DataOutputStream dataOutput = new DataOutputStream(this);
+
+        DataOutputStream start() {
+            reset();
+            return dataOutput;
+        }
+
+        void writeTo(FileChannel channel, long pos) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, pos + buffer.position());
+            }
+        }
+    }
+}
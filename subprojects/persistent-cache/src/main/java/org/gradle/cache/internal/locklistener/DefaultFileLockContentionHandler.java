@@ -25,8 +25,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.net.DatagramPacket;
 import java.net.SocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -35,6 +37,7 @@
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.gradle.cache.internal.locklistener.FileLockPacketType.LOCK_RELEASE_CONFIRMATION;
+import static org.gradle.cache.internal.locklistener.FileLockPacketType.UNLOCK_REQUEST_CONFIRMATION;
 
 /**
  * The contention handler is responsible for negotiating the transfer of a lock from one process to another.
@@ -72,10 +75,15 @@
  * <p>
  * As Lock Requester, the state of the request is always stored per lock (lockId) and Lock Holder (port). The Lock Holder
  * for a lock might change without acquiring the lock if several Lock Requester compete for the same lock.
+ * <p>
+ * When the system property {@value #STREAM_CONTENTION_PROPERTY} is set, the messages are exchanged over loopback stream connections
+ * where possible, see {@link FileLockStreamChannel}. Such messages are not lost, so the Lock Requester does not need to repeat its
+ * request, and a Lock Holder which does not hold the lock anymore immediately tells the Lock Requester to retry.
  */
 public class DefaultFileLockContentionHandler implements FileLockContentionHandler, Stoppable {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileLockContentionHandler.class);
     private static final int PING_DELAY = 1000;
+    public static final String STREAM_CONTENTION_PROPERTY = "org.gradle.internal.file-lock.stream-contention";
     private final Lock lock = new ReentrantLock();
 
     private final Map<Long, ContendedAction> contendedActions = new HashMap<Long, ContendedAction>();
@@ -85,15 +93,22 @@ public class DefaultFileLockContentionHandler implements FileLockContentionHandl
 
     private final ExecutorFactory executorFactory;
     private final InetAddressFactory addressFactory;
+    private final boolean streamContention;
 
     private FileLockCommunicator communicator;
+    private FileLockStreamChannel streamChannel;
     private ManagedExecutor fileLockRequestListener;
     private ManagedExecutor unlockActionExecutor;
     private boolean stopped;
 
     public DefaultFileLockContentionHandler(ExecutorFactory executorFactory, InetAddressFactory addressFactory) {
+        this(executorFactory, addressFactory, Boolean.getBoolean(STREAM_CONTENTION_PROPERTY));
+    }
+
+    public DefaultFileLockContentionHandler(ExecutorFactory executorFactory, InetAddressFactory addressFactory, boolean streamContention) {
         this.executorFactory = executorFactory;
         this.addressFactory = addressFactory;
+        this.streamContention = streamContention;
     }
 
     private Runnable listener() {
@@ -142,6 +157,40 @@ private void doRun() {
         };
     }
 
+    private FileLockStreamChannel.Handler streamHandler() {
+        return new FileLockStreamChannel.Handler() {
+            @Override
+            public void unlockRequested(long lockId, FileLockStreamChannel.Connection requester) {
+                lock.lock();
+                try {
+                    ContendedAction contendedAction = contendedActions.get(lockId);
+                    if (contendedAction == null) {
+                        // The lock has already been released, so the requester can retry right away
+                        requester.confirm(lockId, LOCK_RELEASE_CONFIRMATION);
+                    } else {
+                        contendedAction.addStreamRequester(requester);
+                        if (!contendedAction.running) {
+                            startLockReleaseAsLockHolder(contendedAction);
+                        }
+                        requester.confirm(lockId, UNLOCK_REQUEST_CONFIRMATION);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void confirmationReceived(FileLockPacketPayload payload, int ownerPort) {
+                lock.lock();
+                try {
+                    acceptConfirmationAsLockRequester(payload, ownerPort);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
     private void startLockReleaseAsLockHolder(ContendedAction contendedAction) {
         contendedAction.running = true;
         unlockActionExecutor.execute(contendedAction);
@@ -200,7 +249,19 @@ public boolean maybePingOwner(int port, long lockId, String displayName, long ti
             return false;
         }
 
-        boolean pingSentSuccessfully = getCommunicator().pingOwner(port, lockId, displayName);
+        FileLockCommunicator communicator = getCommunicator();
+        FileLockStreamChannel streamChannel = getStreamChannel();
+        if (streamChannel != null) {
+            // The lock release may be confirmed right away, so be ready to receive it before sending the request
+            lock.lock();
+            try {
+                lockReleasedSignals.put(lockId, signal);
+            } finally {
+                lock.unlock();
+            }
+        }
+        boolean pingSentSuccessfully = (streamChannel != null && streamChannel.pingOwner(port, lockId))
+            || communicator.pingOwner(port, lockId, displayName);
         if (pingSentSuccessfully) {
             lock.lock();
             try {
@@ -242,6 +303,9 @@ public void stop() {
         } finally {
             lock.unlock();
         }
+        if (streamChannel != null) {
+            streamChannel.stop();
+        }
         if (fileLockRequestListener != null) {
             fileLockRequestListener.stop();
         }
@@ -261,6 +325,9 @@ private FileLockCommunicator getCommunicator() {
             assertNotStopped();
             if (communicator == null) {
                 communicator = new FileLockCommunicator(addressFactory);
+                if (streamContention) {
+                    streamChannel = new FileLockStreamChannel(communicator.getPort(), streamHandler(), executorFactory);
+                }
             }
             return communicator;
         } finally {
@@ -268,11 +335,22 @@ private FileLockCommunicator getCommunicator() {
         }
     }
 
+    @Nullable
+    private FileLockStreamChannel getStreamChannel() {
+        lock.lock();
+        try {
+            return streamChannel;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private class ContendedAction implements Runnable {
         private final Lock lock = new ReentrantLock();
         private final long lockId;
         private final Action<FileLockReleasedSignal> action;
         private Set<SocketAddress> requesters = new LinkedHashSet<SocketAddress>();
+        private Set<FileLockStreamChannel.Connection> streamRequesters = new LinkedHashSet<FileLockStreamChannel.Connection>();
         private boolean running;
 
         private ContendedAction(long lockId, Action<FileLockReleasedSignal> action) {
@@ -285,10 +363,14 @@ public void run() {
             action.execute(new FileLockReleasedSignal() {
                 @Override
                 public void trigger() {
+                    Set<FileLockStreamChannel.Connection> streamRequesters = consumeStreamRequesters();
                     Set<SocketAddress> requesters = consumeRequesters();
                     if (requesters == null) {
                         throw new IllegalStateException("trigger() has already been called and must at most be called once");
                     }
+                    for (FileLockStreamChannel.Connection streamRequester : streamRequesters) {
+                        streamRequester.confirm(lockId, LOCK_RELEASE_CONFIRMATION);
+                    }
                     communicator.confirmLockRelease(requesters, lockId);
                 }
             });
@@ -305,6 +387,27 @@ private void addRequester(SocketAddress contender) {
             }
         }
 
+        private void addStreamRequester(FileLockStreamChannel.Connection contender) {
+            lock.lock();
+            try {
+                if (streamRequesters != null) {
+                    streamRequesters.add(contender);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Set<FileLockStreamChannel.Connection> consumeStreamRequesters() {
+            lock.lock();
+            try {
+                return streamRequesters == null ? Collections.<FileLockStreamChannel.Connection>emptySet() : streamRequesters;
+            } finally {
+                streamRequesters = null;
+                lock.unlock();
+            }
+        }
+
         private Set<SocketAddress> consumeRequesters() {
             lock.lock();
             try {
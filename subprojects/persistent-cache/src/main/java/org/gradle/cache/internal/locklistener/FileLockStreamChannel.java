@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.locklistener;
+
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.gradle.cache.internal.locklistener.FileLockPacketType.UNLOCK_REQUEST;
+
+/**
+ * Exchanges lock contention messages over loopback stream connections, as an alternative to the datagrams sent by {@link FileLockCommunicator}.
+ * <p>
+ * A process listens on the loopback interface at the same port number as its datagram socket, so the port stored in the lock file
+ * identifies both. A Lock Requester opens one connection per Lock Holder and keeps it open. Messages sent over a connection
+ * are neither lost nor reordered, so unlock requests do not need to be repeated, and the Lock Holder confirms the lock release
+ * over the same connection as soon as the lock has been released.
+ * <p>
+ * When no Gradle process accepts a connection on the port, e.g. because the Lock Holder runs an older Gradle version,
+ * {@link #pingOwner(int, long)} returns false and the datagram protocol is used instead. The connection is attempted again
+ * after a while, as the port may since have been taken over by another Gradle process.
+ */
+class FileLockStreamChannel implements Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileLockStreamChannel.class);
+    private static final int MAGIC = 0x47464C43;
+    private static final int CONNECT_TIMEOUT_MILLIS = 100;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 200;
+    private static final long RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    interface Handler {
+        /**
+         * Called on the Lock Holder when a Lock Requester asks for the lock to be released.
+         */
+        void unlockRequested(long lockId, Connection requester);
+
+        /**
+         * Called on the Lock Requester when the Lock Holder confirms an unlock request or a lock release.
+         */
+        void confirmationReceived(FileLockPacketPayload payload, int ownerPort);
+    }
+
+    private final Handler handler;
+    private final ManagedExecutor executor;
+    private final ServerSocket serverSocket;
+    private final ConcurrentMap<Integer, Connection> ownerConnections = new ConcurrentHashMap<Integer, Connection>();
+    // The time at which connecting to a port failed last
+    private final ConcurrentMap<Integer, Long> portsWithoutChannel = new ConcurrentHashMap<Integer, Long>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean stopped;
+
+    FileLockStreamChannel(int port, Handler handler, ExecutorFactory executorFactory) {
+        this.handler = handler;
+        this.executor = executorFactory.create("File lock stream channel");
+        this.serverSocket = bind(port);
+        if (serverSocket != null) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    acceptConnections();
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private static ServerSocket bind(int port) {
+        try {
+            return new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            LOGGER.debug("Could not listen for file lock contention connections at port {}, using datagrams only.", port, e);
+            return null;
+        }
+    }
+
+    /**
+     * Sends an unlock request to the Lock Holder listening at the given port.
+     *
+     * @return whether the request was sent. When false, the datagram protocol should be used.
+     */
+    boolean pingOwner(int ownerPort, long lockId) {
+        if (stopped || recentlyFailed(ownerPort)) {
+            return false;
+        }
+        Connection connection = connectionTo(ownerPort);
+        if (connection == null) {
+            return false;
+        }
+        try {
+            connection.send(lockId, UNLOCK_REQUEST);
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Failed to send unlock request for lock with id {} to port {}.", lockId, ownerPort, e);
+            close(connection);
+            return false;
+        }
+    }
+
+    private boolean recentlyFailed(int ownerPort) {
+        Long failedAt = portsWithoutChannel.get(ownerPort);
+        if (failedAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - failedAt < RETRY_DELAY_NANOS) {
+            return true;
+        }
+        portsWithoutChannel.remove(ownerPort, failedAt);
+        return false;
+    }
+
+    @Nullable
+    private Connection connectionTo(int ownerPort) {
+        Connection connection = ownerConnections.get(ownerPort);
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (ownerConnections) {
+            connection = ownerConnections.get(ownerPort);
+            if (connection != null) {
+                return connection;
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), ownerPort), CONNECT_TIMEOUT_MILLIS);
+                // Make sure a Gradle process is listening at the port before sending anything
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                if (input.readInt() != MAGIC) {
+                    throw new IOException("Unexpected handshake");
+                }
+                socket.setSoTimeout(0);
+                socket.setTcpNoDelay(true);
+                connection = new Connection(socket, input, ownerPort);
+            } catch (IOException e) {
+                LOGGER.debug("No file lock contention channel at port {}, using datagrams.", ownerPort);
+                closeQuietly(socket);
+                portsWithoutChannel.put(ownerPort, System.nanoTime());
+                return null;
+            }
+            ownerConnections.put(ownerPort, connection);
+        }
+        connections.add(connection);
+        final Connection ownerConnection = connection;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                receiveConfirmations(ownerConnection);
+            }
+        });
+        return connection;
+    }
+
+    private void acceptConnections() {
+        while (!stopped) {
+            final Connection connection;
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connection = new Connection(socket, new DataInputStream(socket.getInputStream()), socket.getPort());
+                connection.handshake();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                LOGGER.debug("Failed to accept file lock contention connection.", e);
+                continue;
+            }
+            connections.add(connection);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    receiveUnlockRequests(connection);
+                }
+            });
+        }
+    }
+
+    private void receiveUnlockRequests(Connection connection) {
+        try {
+            while (!stopped) {
+                FileLockPacketPayload payload = connection.receive();
+                if (payload.getType() == UNLOCK_REQUEST) {
+                    handler.unlockRequested(payload.getLockId(), connection);
+                }
+            }
+        } catch (IOException e) {
+            // The Lock Requester went away
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void receiveConfirmations(Connection connection) {
+        try {
+            while (!stopped) {
+                handler.confirmationReceived(connection.receive(), connection.port);
+            }
+        } catch (IOException e) {
+            // The Lock Holder went away
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        ownerConnections.remove(connection.port, connection);
+        connections.remove(connection);
+        closeQuietly(connection.socket);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        for (Connection connection : connections) {
+            close(connection);
+        }
+        CompositeStoppable.stoppable(executor).stop();
+    }
+
+    class Connection {
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        private final int port;
+
+        private Connection(Socket socket, DataInputStream input, int port) throws IOException {
+            this.socket = socket;
+            this.input = input;
+            this.output = new DataOutputStream(socket.getOutputStream());
+            this.port = port;
+        }
+
+        private synchronized void handshake() throws IOException {
+            output.writeInt(MAGIC);
+            output.flush();
+        }
+
+        synchronized void send(long lockId, FileLockPacketType type) throws IOException {
+            output.write(FileLockPacketPayload.encode(lockId, type));
+            output.flush();
+        }
+
+        /**
+         * Sends a confirmation to the Lock Requester, ignoring failures as the requester falls back to polling the lock.
+         */
+        void confirm(long lockId, FileLockPacketType type) {
+            try {
+                send(lockId, type);
+            } catch (IOException e) {
+                LOGGER.debug("Failed to confirm {} to Gradle process for lock with id {}.", type, lockId);
+                close(this);
+            }
+        }
+
+        private FileLockPacketPayload receive() throws IOException {
+            byte[] bytes = new byte[FileLockPacketPayload.MAX_BYTES];
+            input.readFully(bytes);
+            return FileLockPacketPayload.decode(bytes, bytes.length);
+        }
+    }
+}
@@ -17,17 +17,19 @@
 package org.gradle.cache.internal
 
 import org.gradle.cache.CacheAccess
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 
 class CacheAccessWorkerTest extends ConcurrentSpec {
     CacheAccess cacheAccess
     CacheAccessWorker cacheAccessWorker
+    def statisticsCollector = new CacheAccessWorkerStatistics.Collector()
 
     def setup() {
         cacheAccess = Stub(CacheAccess) {
             useCache(_) >> { Runnable action -> action.run() }
         }
-        cacheAccessWorker = new CacheAccessWorker("<cache>", cacheAccess)
+        cacheAccessWorker = new CacheAccessWorker("<cache>", cacheAccess, statisticsCollector)
     }
 
     def "read runs after queued writes are processed"() {
@@ -198,4 +200,96 @@ class CacheAccessWorkerTest extends ConcurrentSpec {
         def e = thrown(RuntimeException)
         e == failure
     }
+
+    def "coalesces queued updates of the same entry"() {
+        given:
+        def cache = Mock(MultiProcessSafePersistentIndexedCache)
+        def completions = 0
+        def completion = { completions++ } as Runnable
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "a", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "b", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "a", "2", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "a", null, completion))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        1 * cache.put("b", "1")
+        1 * cache.remove("a")
+        0 * cache._
+        completions == 4
+
+        when:
+        def statistics = statisticsCollector.collect()
+
+        then:
+        statistics.coalescedUpdateCount == 2
+        statistics.operationCount == 5
+        statisticsCollector.collect().operationCount == 0
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "does not coalesce updates of the same entry across other operations"() {
+        given:
+        def cache = Mock(MultiProcessSafePersistentIndexedCache)
+        def completion = {} as Runnable
+        def other = 0
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "a", "1", completion))
+        cacheAccessWorker.enqueue { other++ }
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache, "a", "2", completion))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        1 * cache.put("a", "1")
+
+        then:
+        1 * cache.put("a", "2")
+        0 * cache._
+        other == 1
+        statisticsCollector.collect().coalescedUpdateCount == 0
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
+    def "runs updates of different caches in the order they were queued"() {
+        given:
+        def cache1 = Mock(MultiProcessSafePersistentIndexedCache)
+        def cache2 = Mock(MultiProcessSafePersistentIndexedCache)
+        def completion = {} as Runnable
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache1, "a", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache2, "a", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache1, "b", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache2, "b", "1", completion))
+        cacheAccessWorker.enqueue(new AsyncCacheAccessDecoratedCache.CacheUpdate(cache1, "a", "2", completion))
+
+        when:
+        start(cacheAccessWorker)
+        cacheAccessWorker.flush()
+
+        then:
+        1 * cache2.put("a", "1")
+
+        then:
+        1 * cache1.put("b", "1")
+
+        then:
+        1 * cache2.put("b", "1")
+
+        then:
+        1 * cache1.put("a", "2")
+        0 * cache1._
+        0 * cache2._
+        statisticsCollector.collect().coalescedUpdateCount == 1
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
 }
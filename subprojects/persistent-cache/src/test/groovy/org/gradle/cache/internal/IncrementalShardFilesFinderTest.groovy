@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class IncrementalShardFilesFinderTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+
+    def "finds files in all shards when budget allows"() {
+        given:
+        tmpDir.file("aa").createFile("aa1")
+        tmpDir.file("aa").createFile("aa2")
+        tmpDir.file("bb").createFile("bb1")
+        tmpDir.createFile("not-in-a-shard")
+
+        when:
+        def result = new IncrementalShardFilesFinder("cursor", Long.MAX_VALUE).find(tmpDir.getTestDirectory(), { true })
+
+        then:
+        result as Set == ["aa/aa1", "aa/aa2", "bb/bb1"].collect { tmpDir.file(it) } as Set
+    }
+
+    def "continues with the next shard when budget is exhausted"() {
+        given:
+        tmpDir.file("aa").createFile("aa1")
+        tmpDir.file("bb").createFile("bb1")
+        tmpDir.file("cc").createFile("cc1")
+        def finder = new IncrementalShardFilesFinder("cursor", 0)
+
+        expect:
+        finder.find(tmpDir.getTestDirectory(), { true }) as List == [tmpDir.file("aa/aa1")]
+        finder.find(tmpDir.getTestDirectory(), { true }) as List == [tmpDir.file("bb/bb1")]
+        finder.find(tmpDir.getTestDirectory(), { true }) as List == [tmpDir.file("cc/cc1")]
+        finder.find(tmpDir.getTestDirectory(), { true }) as List == [tmpDir.file("aa/aa1")]
+        tmpDir.file("cursor").text == "aa"
+    }
+
+    def "applies filter"() {
+        given:
+        def excludedFile = tmpDir.file("aa").createFile("excluded")
+        def includedFile = tmpDir.file("aa").createFile("included")
+        FileFilter filter = { it != excludedFile }
+
+        when:
+        def result = new IncrementalShardFilesFinder("cursor", Long.MAX_VALUE).find(tmpDir.getTestDirectory(), filter)
+
+        then:
+        result as List == [includedFile]
+    }
+
+    def "handles empty dir"() {
+        when:
+        def result = new IncrementalShardFilesFinder("cursor", 0).find(tmpDir.getTestDirectory(), { true })
+
+        then:
+        result as List == []
+    }
+}
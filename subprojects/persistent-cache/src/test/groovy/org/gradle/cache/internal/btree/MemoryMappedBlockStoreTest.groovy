@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.internal.serialize.DefaultSerializer
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MemoryMappedBlockStoreTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+    def cacheFile = tmpDir.file("cache.bin")
+    def serializer = new DefaultSerializer<String>()
+
+    def "persists entries"() {
+        def cache = newCache(true)
+
+        when:
+        (0..<20000).each { cache.put("key-$it".toString(), "value-$it".toString()) }
+        (0..<20000).step(3) { cache.remove("key-$it".toString()) }
+
+        then:
+        cache.verify()
+        (0..<20000).every { cache.get("key-$it".toString()) == (it % 3 == 0 ? null : "value-$it") }
+
+        cleanup:
+        cache.close()
+    }
+
+    def "uses the same file format as the file backed store"() {
+        given:
+        def mapped = newCache(true)
+        (0..<1000).each { mapped.put("key-$it".toString(), "mapped-$it".toString()) }
+        mapped.close()
+
+        when:
+        def fileBacked = newCache(false)
+        (0..<1000).step(2) { fileBacked.put("key-$it".toString(), "file-$it".toString()) }
+        fileBacked.close()
+        mapped = newCache(true)
+
+        then:
+        mapped.verify()
+        (0..<1000).every { mapped.get("key-$it".toString()) == (it % 2 == 0 ? "file-$it" : "mapped-$it") }
+
+        cleanup:
+        mapped.close()
+    }
+
+    def "can be cleared and reused"() {
+        def cache = newCache(true)
+        cache.put("key", "value")
+
+        when:
+        cache.clear()
+        cache.put("other", "value")
+
+        then:
+        cache.get("key") == null
+        cache.get("other") == "value"
+
+        cleanup:
+        cache.close()
+    }
+
+    private BTreePersistentIndexedCache<String, String> newCache(boolean memoryMapped) {
+        new BTreePersistentIndexedCache<String, String>(cacheFile, serializer, serializer, (short) 16, 100, memoryMapped)
+    }
+}
@@ -74,6 +74,101 @@ class DefaultFileLockContentionHandlerTest extends ConcurrentSpecification {
         }
     }
 
+    def "client receives signal when lock is released over stream connection"() {
+        def signaled = new AtomicBoolean()
+        def released = new AtomicBoolean()
+        handler = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+        client = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10) { signal ->
+            released.set(true)
+            signal.trigger()
+        }
+
+        client.reservePort()
+        def pinged = client.maybePingOwner(port, 10, "lock 1", 50000) {
+            signaled.set(true)
+        }
+
+        then:
+        pinged
+        poll {
+            assert released.get() && signaled.get()
+        }
+        client.streamChannel.ownerConnections.containsKey(port)
+    }
+
+    def "lock holder tells stream client to retry when the lock is already released"() {
+        def signaled = new AtomicBoolean()
+        handler = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+        client = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10, { assert false })
+        handler.stop(10)
+        client.maybePingOwner(port, 10, "lock 1", 50000) {
+            signaled.set(true)
+        }
+
+        then:
+        poll {
+            assert signaled.get()
+        }
+    }
+
+    def "stream client falls back to datagrams when the lock holder does not accept stream connections"() {
+        def signaled = new AtomicBoolean()
+        client = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10) { signal ->
+            signal.trigger()
+        }
+        client.reservePort()
+        def pinged = client.maybePingOwner(port, 10, "lock 1", 50000) {
+            signaled.set(true)
+        }
+
+        then:
+        pinged
+        poll {
+            assert signaled.get()
+        }
+        !client.streamChannel.ownerConnections.containsKey(port)
+    }
+
+    def "stream client connects again to a lock holder which did not accept stream connections a while ago"() {
+        client = new DefaultFileLockContentionHandler(executorFactory, addressFactory, true)
+
+        when:
+        int port = handler.reservePort()
+        handler.start(10) {}
+        client.reservePort()
+        client.maybePingOwner(port, 10, "lock 1", 50000) {}
+        def failedAt = client.streamChannel.portsWithoutChannel[port]
+
+        then:
+        failedAt != null
+
+        when:
+        client.maybePingOwner(port, 11, "lock 2", 50000) {}
+
+        then:
+        client.streamChannel.portsWithoutChannel[port] == failedAt
+
+        when:
+        def expiredAt = failedAt - FileLockStreamChannel.RETRY_DELAY_NANOS
+        client.streamChannel.portsWithoutChannel[port] = expiredAt
+        client.maybePingOwner(port, 12, "lock 3", 50000) {}
+
+        then:
+        client.streamChannel.portsWithoutChannel[port] > expiredAt
+    }
+
     def "there are only two executors: one lock request listener and one release lock action executor"() {
         def factory = Mock(ExecutorFactory)
         handler = new DefaultFileLockContentionHandler(factory, addressFactory)
@@ -39,9 +39,11 @@ public class HttpConnectorFactory implements ResourceConnectorFactory {
     );
 
     private SslContextFactory sslContextFactory;
+    private final HttpDownloadScheduler downloadScheduler;
 
-    public HttpConnectorFactory(SslContextFactory sslContextFactory) {
+    public HttpConnectorFactory(SslContextFactory sslContextFactory, HttpDownloadScheduler downloadScheduler) {
         this.sslContextFactory = sslContextFactory;
+        this.downloadScheduler = downloadScheduler;
     }
 
     @Override
@@ -62,7 +64,7 @@ public ExternalResourceConnector createResourceConnector(ResourceConnectorSpecif
             .withRedirectVerifier(connectionDetails.getRedirectVerifier())
             .build()
         );
-        HttpResourceAccessor accessor = new HttpResourceAccessor(http);
+        HttpResourceAccessor accessor = new HttpResourceAccessor(http, downloadScheduler);
         HttpResourceLister lister = new HttpResourceLister(accessor);
         HttpResourceUploader uploader = new HttpResourceUploader(http);
         return new DefaultExternalResourceConnector(accessor, lister, uploader);
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http;
+
+import com.google.common.io.CountingInputStream;
+import org.apache.http.HttpHeaders;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.internal.file.TmpDirTemporaryFileProvider;
+import org.gradle.internal.IoActions;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the downloads of all HTTP repositories of the process.
+ *
+ * Downloads from the same host share a budget of concurrent downloads, which is unbounded unless
+ * {@value #MAX_DOWNLOADS_PER_HOST_PROPERTY} is set. Waiting downloads are let through in the order they were
+ * requested, which is the order the tasks needing them are executed in. Large resources from servers supporting
+ * range requests are downloaded in parallel parts, using the budget left unused by other downloads from that host.
+ *
+ * The throughput of the downloads from each host is collected and reported at the end of each build.
+ */
+public class HttpDownloadScheduler implements Stoppable {
+    public static final String MAX_DOWNLOADS_PER_HOST_PROPERTY = "org.gradle.internal.http.max-downloads-per-host";
+    public static final String RANGE_DOWNLOAD_THRESHOLD_PROPERTY = "org.gradle.internal.http.range-download-threshold";
+
+    private static final int MAX_PARTS_PER_DOWNLOAD = 4;
+
+    private final ManagedExecutor executor;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final int maxDownloadsPerHost;
+    private final long rangeDownloadThreshold;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    public HttpDownloadScheduler(ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider) {
+        this(executorFactory.create("HTTP range downloads"), temporaryFileProvider, Integer.getInteger(MAX_DOWNLOADS_PER_HOST_PROPERTY, Integer.MAX_VALUE), Long.getLong(RANGE_DOWNLOAD_THRESHOLD_PROPERTY, 0));
+    }
+
+    /**
+     * @param rangeDownloadThreshold the minimal length of resources to download in parallel parts, or 0 to never use range requests.
+     */
+    HttpDownloadScheduler(@Nullable ManagedExecutor executor, TemporaryFileProvider temporaryFileProvider, int maxDownloadsPerHost, long rangeDownloadThreshold) {
+        this.executor = executor;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+        this.rangeDownloadThreshold = executor == null ? 0 : rangeDownloadThreshold;
+    }
+
+    /**
+     * A scheduler which lets all downloads through and never uses range requests.
+     */
+    public static HttpDownloadScheduler unbounded() {
+        return new HttpDownloadScheduler(null, new TmpDirTemporaryFileProvider(), Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Blocks until the host of the given resource has budget left for another download.
+     * The returned download must be {@link Download#finished() finished} once the resource has been read.
+     */
+    public Download start(URI uri) {
+        Host host = hosts.computeIfAbsent(hostOf(uri), h -> new Host(maxDownloadsPerHost));
+        host.budget.acquireUninterruptibly();
+        return new Download(host);
+    }
+
+    @Nullable
+    DownloadStatistics statisticsFor(URI uri) {
+        Host host = hosts.get(hostOf(uri));
+        return host == null ? null : host.statistics;
+    }
+
+    /**
+     * Returns the statistics of the hosts resources were downloaded from since the last call, and resets them.
+     */
+    Map<String, DownloadStatistics> collectStatistics() {
+        Map<String, DownloadStatistics> statistics = new TreeMap<>();
+        for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+            DownloadStatistics collected = entry.getValue().statistics.collect();
+            if (collected.getDownloads() > 0) {
+                statistics.put(entry.getKey(), collected);
+            }
+        }
+        return statistics;
+    }
+
+    private static String hostOf(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    private static class Host {
+        private final Semaphore budget;
+        private final DownloadStatistics statistics = new DownloadStatistics();
+
+        Host(int maxDownloads) {
+            // Fair, so that downloads are let through in the order they were requested
+            this.budget = new Semaphore(maxDownloads, true);
+        }
+
+        int tryAcquireUpTo(int permits) {
+            int acquired = 0;
+            while (acquired < permits && budget.tryAcquire()) {
+                acquired++;
+            }
+            return acquired;
+        }
+    }
+
+    /**
+     * Throughput of the downloads from a single host, since the statistics were last collected.
+     */
+    static class DownloadStatistics {
+        private final AtomicLong downloads = new AtomicLong();
+        private final AtomicLong partedDownloads = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        long getDownloads() {
+            return downloads.get();
+        }
+
+        long getPartedDownloads() {
+            return partedDownloads.get();
+        }
+
+        long getBytes() {
+            return bytes.get();
+        }
+
+        long getBytesPerSecond() {
+            long elapsed = nanos.get();
+            // In floating point, as the bytes times the nanos in a second overflow a long past 9 GB
+            return elapsed == 0 ? 0 : (long) ((double) bytes.get() * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        }
+
+        private DownloadStatistics collect() {
+            DownloadStatistics collected = new DownloadStatistics();
+            collected.downloads.set(downloads.getAndSet(0));
+            collected.partedDownloads.set(partedDownloads.getAndSet(0));
+            collected.bytes.set(bytes.getAndSet(0));
+            collected.nanos.set(nanos.getAndSet(0));
+            return collected;
+        }
+    }
+
+    public class Download {
+        private final Host host;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private CountingInputStream content;
+
+        private Download(Host host) {
+            this.host = host;
+        }
+
+        /**
+         * Returns the content of the given response, downloading it in parallel parts when it is large enough.
+         */
+        InputStream open(HttpResponseResource resource, InputStream body, URI effectiveUri, HttpClientHelper http) {
+            int parts = partsFor(resource, body);
+            if (parts > 1) {
+                body = openInParts(resource, body, effectiveUri, http, parts);
+            }
+            content = new CountingInputStream(body);
+            return content;
+        }
+
+        private int partsFor(HttpResponseResource resource, InputStream body) {
+            if (rangeDownloadThreshold <= 0
+                || resource.getContentLength() < rangeDownloadThreshold
+                || resource.getStatusCode() != 200
+                || !"bytes".equalsIgnoreCase(resource.getHeaderValue(HttpHeaders.ACCEPT_RANGES))
+                || validatorOf(resource) == null
+                || !(body instanceof ConnectionReleaseTrigger)) {
+                return 1;
+            }
+            return 1 + host.tryAcquireUpTo(MAX_PARTS_PER_DOWNLOAD - 1);
+        }
+
+        private InputStream openInParts(HttpResponseResource resource, InputStream body, URI effectiveUri, HttpClientHelper http, int parts) {
+            long length = resource.getContentLength();
+            long partLength = (length + parts - 1) / parts;
+            String validator = validatorOf(resource);
+            List<RangeDownloadInputStream.Part> remainingParts = new ArrayList<>(parts - 1);
+            for (int i = 1; i < parts; i++) {
+                long first = i * partLength;
+                if (first >= length) {
+                    // Tiny resource, it has fewer parts than budget was taken for
+                    host.budget.release();
+                    continue;
+                }
+                long last = Math.min(length, first + partLength) - 1;
+                remainingParts.add(new RangeDownloadInputStream.Part(effectiveUri, first, last, validator));
+            }
+            host.statistics.partedDownloads.incrementAndGet();
+            return new RangeDownloadInputStream(body, (ConnectionReleaseTrigger) body, partLength, remainingParts, http, executor, temporaryFileProvider, host.budget::release);
+        }
+
+        /**
+         * Closes the content of this download, gives its budget back to the host and records its throughput.
+         * Does nothing when called again.
+         */
+        public void finished() {
+            if (finished.compareAndSet(false, true)) {
+                if (content != null) {
+                    IoActions.closeQuietly(content);
+                    host.statistics.downloads.incrementAndGet();
+                    host.statistics.bytes.addAndGet(content.getCount());
+                    host.statistics.nanos.addAndGet(System.nanoTime() - startNanos);
+                }
+                host.budget.release();
+            }
+        }
+    }
+
+    /**
+     * The validator sent with range requests, so that parts of a resource changed in between are not mixed.
+     */
+    @Nullable
+    private static String validatorOf(HttpResponseResource resource) {
+        String etag = resource.getHeaderValue(HttpHeaders.ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return resource.getHeaderValue(HttpHeaders.LAST_MODIFIED);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http;
+
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.initialization.RootBuildLifecycleListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Logs the throughput of the downloads from each host at the end of each build.
+ */
+public class HttpDownloadStatisticsReporter implements RootBuildLifecycleListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpDownloadStatisticsReporter.class);
+
+    private final HttpDownloadScheduler downloadScheduler;
+
+    public HttpDownloadStatisticsReporter(HttpDownloadScheduler downloadScheduler) {
+        this.downloadScheduler = downloadScheduler;
+    }
+
+    @Override
+    public void afterStart(GradleInternal gradle) {
+        // Don't report the downloads of the previous build which finished after it completed
+        downloadScheduler.collectStatistics();
+    }
+
+    @Override
+    public void beforeComplete(GradleInternal gradle) {
+        for (Map.Entry<String, HttpDownloadScheduler.DownloadStatistics> entry : downloadScheduler.collectStatistics().entrySet()) {
+            HttpDownloadScheduler.DownloadStatistics statistics = entry.getValue();
+            LOGGER.info("Downloaded {} resources ({} bytes, {} of them in parts) from {} at {} KiB/s per download.",
+                statistics.getDownloads(), statistics.getBytes(), statistics.getPartedDownloads(), entry.getKey(), statistics.getBytesPerSecond() / 1024);
+        }
+    }
+}
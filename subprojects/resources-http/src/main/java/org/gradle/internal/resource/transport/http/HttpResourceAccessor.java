@@ -23,15 +23,23 @@
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 
 public class HttpResourceAccessor implements ExternalResourceAccessor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpResourceAccessor.class);
     private final HttpClientHelper http;
+    private final HttpDownloadScheduler downloadScheduler;
 
     public HttpResourceAccessor(HttpClientHelper http) {
+        this(http, HttpDownloadScheduler.unbounded());
+    }
+
+    public HttpResourceAccessor(HttpClientHelper http, HttpDownloadScheduler downloadScheduler) {
         this.http = http;
+        this.downloadScheduler = downloadScheduler;
     }
 
     @Override
@@ -40,11 +48,19 @@ public HttpResponseResource openResource(final URI uri, boolean revalidate) {
         String location = uri.toString();
         LOGGER.debug("Constructing external resource: {}", location);
 
-        HttpClientResponse response = http.performGet(location, revalidate);
+        HttpDownloadScheduler.Download download = downloadScheduler.start(uri);
+        HttpClientResponse response;
+        try {
+            response = http.performGet(location, revalidate);
+        } catch (RuntimeException e) {
+            download.finished();
+            throw e;
+        }
         if (response != null) {
-            return wrapResponse(uri, response);
+            return new ScheduledHttpResponseResource(uri, response, download);
         }
 
+        download.finished();
         return null;
     }
 
@@ -81,4 +97,29 @@ private HttpResponseResource wrapResponse(URI uri, HttpClientResponse response)
         return new HttpResponseResource("GET", uri, response);
     }
 
+    private class ScheduledHttpResponseResource extends HttpResponseResource {
+        private final HttpClientResponse response;
+        private final HttpDownloadScheduler.Download download;
+
+        ScheduledHttpResponseResource(URI uri, HttpClientResponse response, HttpDownloadScheduler.Download download) {
+            super("GET", uri, response);
+            this.response = response;
+            this.download = download;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return download.open(this, super.openStream(), response.getEffectiveUri(), http);
+        }
+
+        @Override
+        public void close() {
+            try {
+                download.finished();
+            } finally {
+                super.close();
+            }
+        }
+    }
+
 }
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.resource.transport.http;
 
+import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.authentication.http.BasicAuthentication;
 import org.gradle.authentication.http.DigestAuthentication;
 import org.gradle.authentication.http.HttpHeaderAuthentication;
@@ -23,6 +24,8 @@
 import org.gradle.internal.authentication.DefaultBasicAuthentication;
 import org.gradle.internal.authentication.DefaultDigestAuthentication;
 import org.gradle.internal.authentication.DefaultHttpHeaderAuthentication;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.resource.connector.ResourceConnectorFactory;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.scopes.AbstractPluginServiceRegistry;
@@ -33,6 +36,11 @@ public void registerGlobalServices(ServiceRegistration registration) {
         registration.addProvider(new GlobalScopeServices());
     }
 
+    @Override
+    public void registerBuildSessionServices(ServiceRegistration registration) {
+        registration.addProvider(new BuildSessionScopeServices());
+    }
+
     @Override
     public void registerBuildServices(ServiceRegistration registration) {
         registration.addProvider(new AuthenticationSchemeAction());
@@ -43,8 +51,18 @@ SslContextFactory createSslContextFactory() {
             return new DefaultSslContextFactory();
         }
 
-        ResourceConnectorFactory createHttpConnectorFactory(SslContextFactory sslContextFactory) {
-            return new HttpConnectorFactory(sslContextFactory);
+        HttpDownloadScheduler createHttpDownloadScheduler(ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider) {
+            return new HttpDownloadScheduler(executorFactory, temporaryFileProvider);
+        }
+
+        ResourceConnectorFactory createHttpConnectorFactory(SslContextFactory sslContextFactory, HttpDownloadScheduler downloadScheduler) {
+            return new HttpConnectorFactory(sslContextFactory, downloadScheduler);
+        }
+    }
+
+    private static class BuildSessionScopeServices {
+        public void configure(ServiceRegistration registration, ListenerManager listenerManager, HttpDownloadScheduler downloadScheduler) {
+            listenerManager.addListener(new HttpDownloadStatisticsReporter(downloadScheduler));
         }
     }
 
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http;
+
+import com.google.common.io.ByteStreams;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a resource downloaded in parts. The first part is read from the response to the original request,
+ * while the other parts are downloaded in parallel using range requests, into temporary files.
+ *
+ * The response to the original request is kept open until the stream is closed. When the server does not answer
+ * a range request with partial content, the remaining parts are cancelled and the rest of the resource is read
+ * from that response instead, as a single-stream download would.
+ *
+ * Once the first part is read, the original response is not read any further. The server can then only send as much
+ * as the socket buffers hold, not the rest of the resource. The connection is aborted on close instead of being returned
+ * to the pool. Requesting the first part as a range too would need to know the length of the resource before the
+ * original request, which would cost an extra round trip for every download, large or not.
+ */
+class RangeDownloadInputStream extends InputStream {
+    private final InputStream body;
+    private final ConnectionReleaseTrigger bodyConnection;
+    private final InputStream firstPart;
+    private final long firstPartLength;
+    private final List<Part> parts;
+    private final List<Future<File>> remainingParts = new ArrayList<>();
+    private final Set<File> partFiles = new HashSet<>();
+    private int nextPart;
+    private InputStream current;
+    private File currentFile;
+    private boolean closed;
+    private boolean partsCancelled;
+
+    RangeDownloadInputStream(InputStream body, ConnectionReleaseTrigger bodyConnection, long firstPartLength, List<Part> parts, HttpClientHelper http, ExecutorService executor, TemporaryFileProvider temporaryFileProvider, Runnable partFinished) {
+        this.body = body;
+        this.bodyConnection = bodyConnection;
+        this.firstPart = ByteStreams.limit(body, firstPartLength);
+        this.firstPartLength = firstPartLength;
+        this.parts = parts;
+        this.current = firstPart;
+        for (Part part : parts) {
+            remainingParts.add(executor.submit(() -> {
+                try {
+                    return download(part, http, temporaryFileProvider);
+                } finally {
+                    partFinished.run();
+                }
+            }));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (true) {
+            int result = current.read();
+            if (result >= 0 || !nextPart()) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        while (true) {
+            int result = current.read(buffer, offset, length);
+            if (result >= 0 || !nextPart()) {
+                return result;
+            }
+        }
+    }
+
+    private boolean nextPart() throws IOException {
+        if (current == body || nextPart == remainingParts.size()) {
+            return false;
+        }
+        closeCurrent();
+        Part part = parts.get(nextPart);
+        try {
+            currentFile = await(remainingParts.get(nextPart++));
+        } catch (RangeNotSatisfiedException e) {
+            readRemainingPartsFromBody(part);
+            return true;
+        }
+        current = new FileInputStream(currentFile);
+        return true;
+    }
+
+    /**
+     * Continues reading the resource from the response to the original request, skipping the parts which were already read from files.
+     */
+    private void readRemainingPartsFromBody(Part part) throws IOException {
+        cancelRemainingParts();
+        ByteStreams.skipFully(body, part.first - firstPartLength);
+        current = body;
+    }
+
+    private static File await(Future<File> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (current != firstPart && current != body) {
+            current.close();
+            synchronized (partFiles) {
+                partFiles.remove(currentFile);
+            }
+            currentFile.delete();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (partFiles) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            closeCurrent();
+        } finally {
+            // The response may not have been read to the end, don't drain the rest of it
+            bodyConnection.abortConnection();
+            cancelRemainingParts();
+        }
+    }
+
+    private void cancelRemainingParts() {
+        synchronized (partFiles) {
+            partsCancelled = true;
+        }
+        for (Future<File> part : remainingParts) {
+            part.cancel(false);
+        }
+        synchronized (partFiles) {
+            for (File file : partFiles) {
+                file.delete();
+            }
+            partFiles.clear();
+        }
+    }
+
+    private File download(Part part, HttpClientHelper http, TemporaryFileProvider temporaryFileProvider) throws IOException {
+        File file = temporaryFileProvider.createTemporaryFile("gradle_download", ".part");
+        registerPartFile(part, file);
+        HttpGet request = new HttpGet(part.uri);
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + part.first + "-" + part.last);
+        request.addHeader(HttpHeaders.IF_RANGE, part.validator);
+        try (HttpClientResponse response = http.performRequest(request, false)) {
+            if (response.getStatusLine().getStatusCode() != 206) {
+                // The server ignored the range, or the resource changed since the download started: don't read the full body
+                request.abort();
+                throw new RangeNotSatisfiedException(String.format("Could not download %s, the server responded with %s.", part, response.getStatusLine()));
+            }
+            long length;
+            try (InputStream content = response.getContent(); OutputStream output = new FileOutputStream(file)) {
+                length = ByteStreams.copy(content, output);
+            }
+            if (length != part.length()) {
+                throw new IOException(String.format("Could not download %s, received %d bytes instead of %d.", part, length, part.length()));
+            }
+        }
+        // The stream may have been closed while the file was still open, which prevents deleting it on some platforms
+        registerPartFile(part, file);
+        return file;
+    }
+
+    /**
+     * Part files are deleted once read, or when the remaining parts are cancelled.
+     */
+    private void registerPartFile(Part part, File file) throws IOException {
+        synchronized (partFiles) {
+            if (partsCancelled) {
+                file.delete();
+                throw new InterruptedIOException("Download of " + part + " was cancelled.");
+            }
+            partFiles.add(file);
+        }
+    }
+
+    private static class RangeNotSatisfiedException extends IOException {
+        RangeNotSatisfiedException(String message) {
+            super(message);
+        }
+    }
+
+    static class Part {
+        private final URI uri;
+        private final long first;
+        private final long last;
+        private final String validator;
+
+        Part(URI uri, long first, long last, String validator) {
+            this.uri = uri;
+            this.first = first;
+            this.last = last;
+            this.validator = validator;
+        }
+
+        long length() {
+            return last - first + 1;
+        }
+
+        @Override
+        public String toString() {
+            return "bytes " + first + "-" + last + " of '" + HttpClientHelper.stripUserCredentials(uri) + "'";
+        }
+    }
+}
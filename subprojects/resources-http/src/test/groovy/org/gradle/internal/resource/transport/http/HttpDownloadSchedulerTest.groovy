@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http
+
+import org.apache.http.HttpHeaders
+import org.apache.http.ProtocolVersion
+import org.apache.http.client.methods.CloseableHttpResponse
+import org.apache.http.client.methods.HttpGet
+import org.apache.http.conn.EofSensorInputStream
+import org.apache.http.entity.ByteArrayEntity
+import org.apache.http.message.BasicStatusLine
+import org.gradle.api.internal.file.DefaultTemporaryFileProvider
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@Timeout(30)
+class HttpDownloadSchedulerTest extends Specification {
+    def uri = new URI("http://repo.example/lib.jar")
+    def content = (0..<100).collect { it as byte } as byte[]
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider(getClass())
+    def executorFactory = new DefaultExecutorFactory()
+    def temporaryFileProvider = new DefaultTemporaryFileProvider({ tmpDir.createDir("tmp") })
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "downloads from the same host wait for the budget of the host"() {
+        def scheduler = new HttpDownloadScheduler(null, temporaryFileProvider, 1, 0)
+        def first = scheduler.start(uri)
+        scheduler.start(new URI("http://other.example/lib.jar"))
+        def started = new CountDownLatch(1)
+
+        when:
+        def thread = Thread.start {
+            scheduler.start(new URI("http://repo.example/other.jar"))
+            started.countDown()
+        }
+
+        then:
+        !started.await(100, TimeUnit.MILLISECONDS)
+
+        when:
+        first.finished()
+
+        then:
+        started.await(10, TimeUnit.SECONDS)
+
+        cleanup:
+        thread?.join()
+    }
+
+    def "records the throughput of finished downloads"() {
+        def scheduler = new HttpDownloadScheduler(null, temporaryFileProvider, 1, 0)
+
+        when:
+        def download = scheduler.start(uri)
+        download.open(Stub(HttpResponseResource), new ByteArrayInputStream(content), uri, Stub(HttpClientHelper)).bytes
+        download.finished()
+        download.finished()
+
+        then:
+        def statistics = scheduler.statisticsFor(uri)
+        statistics.downloads == 1
+        statistics.bytes == 100
+        statistics.partedDownloads == 0
+
+        and:
+        scheduler.start(uri)
+    }
+
+    def "computes the throughput of hosts which served more than 9 GB"() {
+        def statistics = new HttpDownloadScheduler.DownloadStatistics()
+        statistics.@bytes.set(20_000_000_000L)
+        statistics.@nanos.set(TimeUnit.SECONDS.toNanos(10))
+
+        expect:
+        statistics.bytesPerSecond == 2_000_000_000L
+    }
+
+    def "downloads large resources in parts using the budget left on the host"() {
+        def scheduler = new HttpDownloadScheduler(executorFactory.create("test"), temporaryFileProvider, 4, 10)
+        def secondPart = response(206, Arrays.copyOfRange(content, 25, 50))
+        def thirdPart = response(206, Arrays.copyOfRange(content, 50, 75))
+        def fourthPart = response(206, Arrays.copyOfRange(content, 75, 100))
+        def http = Stub(HttpClientHelper) {
+            performRequest(_, false) >> { HttpGet request, boolean revalidate ->
+                assert request.getFirstHeader(HttpHeaders.IF_RANGE).value == '"abc"'
+                switch (request.getFirstHeader(HttpHeaders.RANGE).value) {
+                    case "bytes=25-49":
+                        return secondPart
+                    case "bytes=50-74":
+                        return thirdPart
+                    case "bytes=75-99":
+                        return fourthPart
+                }
+                throw new IllegalArgumentException(request.toString())
+            }
+        }
+
+        when:
+        def download = scheduler.start(uri)
+        def bytes = download.open(largeResource(), responseBody(), uri, http).bytes
+        download.finished()
+
+        then:
+        bytes == content
+        def statistics = scheduler.statisticsFor(uri)
+        statistics.downloads == 1
+        statistics.bytes == 100
+        statistics.partedDownloads == 1
+        tmpDir.file("tmp").list() as List == []
+
+        and:
+        4.times { scheduler.start(uri) }
+    }
+
+    def "downloads large resources in a single part when the host has no budget left"() {
+        def scheduler = new HttpDownloadScheduler(executorFactory.create("test"), temporaryFileProvider, 1, 10)
+        def http = Mock(HttpClientHelper)
+
+        when:
+        def download = scheduler.start(uri)
+        def bytes = download.open(largeResource(), responseBody(), uri, http).bytes
+        download.finished()
+
+        then:
+        bytes == content
+        scheduler.statisticsFor(uri).partedDownloads == 0
+        0 * http._
+    }
+
+    def "reads the rest of the resource from the original response when the server does not honor a range request"() {
+        def scheduler = new HttpDownloadScheduler(executorFactory.create("test"), temporaryFileProvider, 4, 10)
+        def secondPart = response(206, Arrays.copyOfRange(content, 25, 50))
+        def thirdPart = response(200, content)
+        def fourthPart = response(200, content)
+        def http = Stub(HttpClientHelper) {
+            performRequest(_, false) >> { HttpGet request, boolean revalidate ->
+                switch (request.getFirstHeader(HttpHeaders.RANGE).value) {
+                    case "bytes=25-49":
+                        return secondPart
+                    case "bytes=50-74":
+                        return thirdPart
+                    case "bytes=75-99":
+                        return fourthPart
+                }
+                throw new IllegalArgumentException(request.toString())
+            }
+        }
+
+        when:
+        def download = scheduler.start(uri)
+        def bytes = download.open(largeResource(), responseBody(), uri, http).bytes
+        download.finished()
+
+        then:
+        bytes == content
+        scheduler.statisticsFor(uri).bytes == 100
+
+        and:
+        4.times { scheduler.start(uri) }
+    }
+
+    def "does not limit the downloads from a host by default"() {
+        def scheduler = new HttpDownloadScheduler(executorFactory, temporaryFileProvider)
+
+        expect:
+        100.times { scheduler.start(uri) }
+
+        cleanup:
+        scheduler.stop()
+    }
+
+    def "collects the statistics of each host since they were last collected"() {
+        def scheduler = new HttpDownloadScheduler(null, temporaryFileProvider, 2, 0)
+        def otherUri = new URI("https://other.example/lib.jar")
+
+        when:
+        download(scheduler, uri)
+        download(scheduler, uri)
+        download(scheduler, otherUri)
+        def statistics = scheduler.collectStatistics()
+
+        then:
+        statistics.keySet() as List == ["http://repo.example:-1", "https://other.example:-1"]
+        statistics["http://repo.example:-1"].downloads == 2
+        statistics["http://repo.example:-1"].bytes == 200
+        statistics["https://other.example:-1"].downloads == 1
+
+        when:
+        download(scheduler, otherUri)
+        statistics = scheduler.collectStatistics()
+
+        then:
+        statistics.keySet() as List == ["https://other.example:-1"]
+        statistics["https://other.example:-1"].downloads == 1
+        statistics["https://other.example:-1"].bytes == 100
+    }
+
+    private void download(HttpDownloadScheduler scheduler, URI uri) {
+        def download = scheduler.start(uri)
+        download.open(Stub(HttpResponseResource), new ByteArrayInputStream(content), uri, Stub(HttpClientHelper)).bytes
+        download.finished()
+    }
+
+    private HttpResponseResource largeResource() {
+        Stub(HttpResponseResource) {
+            getContentLength() >> 100
+            getStatusCode() >> 200
+            getHeaderValue(HttpHeaders.ACCEPT_RANGES) >> "bytes"
+            getHeaderValue(HttpHeaders.ETAG) >> '"abc"'
+        }
+    }
+
+    private InputStream responseBody() {
+        new EofSensorInputStream(new ByteArrayInputStream(content), null)
+    }
+
+    private HttpClientResponse response(int status, byte[] bytes) {
+        def response = Stub(CloseableHttpResponse) {
+            getStatusLine() >> new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), status, status == 206 ? "Partial Content" : "OK")
+            getEntity() >> new ByteArrayEntity(bytes)
+        }
+        new HttpClientResponse("GET", uri, response)
+    }
+}
@@ -18,7 +18,6 @@
 
 import com.google.common.collect.ImmutableList;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,9 +47,7 @@ public Optional<FileSystemNode> handleChildOfExisting(int childIndex) {
                         if (children.size() == 1) {
                             return withAllChildrenRemoved();
                         }
-                        List<FileSystemNode> merged = new ArrayList<>(children);
-                        merged.remove(childIndex);
-                        return Optional.of(withIncompleteChildren(getPathToParent(), merged));
+                        return Optional.of(withIncompleteChildren(getPathToParent(), CompactSnapshotList.withoutChild(children, childIndex)));
                     });
             }
         });
@@ -61,11 +58,9 @@ public FileSystemNode store(VfsRelativePath relativePath, CaseSensitivity caseSe
         return SnapshotUtil.handleChildren(children, relativePath, caseSensitivity, new SnapshotUtil.ChildHandler<FileSystemNode>() {
             @Override
             public FileSystemNode handleNewChild(int insertBefore) {
-                List<FileSystemNode> newChildren = new ArrayList<>(children);
                 FileSystemNode newChild = snapshot.asFileSystemNode(relativePath.getAsString());
-                newChildren.add(insertBefore, newChild);
                 diffListener.nodeAdded(newChild);
-                return withIncompleteChildren(getPathToParent(), newChildren);
+                return withIncompleteChildren(getPathToParent(), CompactSnapshotList.withNewChild(children, insertBefore, newChild));
             }
 
             @Override
@@ -115,9 +110,7 @@ private FileSystemNode withReplacedChild(int childIndex, FileSystemNode childToR
         if (children.size() == 1) {
             return withIncompleteChildren(getPathToParent(), ImmutableList.of(newChild));
         }
-        List<FileSystemNode> merged = new ArrayList<>(children);
-        merged.set(childIndex, newChild);
-        return withIncompleteChildren(getPathToParent(), merged);
+        return withIncompleteChildren(getPathToParent(), CompactSnapshotList.withReplacedChild(children, childIndex, newChild));
     }
 
     @Override
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot;
+
+import com.google.common.collect.Lists;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of the children of a directory, which keeps regular file snapshots packed into arrays.
+ *
+ * The virtual file system retains a snapshot for every file it knows about. As an object, a regular file snapshot
+ * carries its absolute path, its name, a {@link HashCode} and a {@link FileMetadata}. Here, the name is kept, the
+ * hash goes into a fixed width slot of a shared byte array, the metadata into two long arrays, and the absolute path
+ * is derived from the path of the parent directory. The snapshot objects are created again on access.
+ *
+ * Children which are not regular files are kept as they are.
+ */
+final class CompactSnapshotList<T extends FileSystemNode> extends AbstractList<T> implements RandomAccess {
+    private final String parentPath;
+    private final String[] pathsToParent;
+    // null where a regular file is packed
+    private final FileSystemNode[] nodes;
+    private final int hashLength;
+    private final byte[] hashes;
+    private final long[] sizes;
+    private final long[] lastModifiedTimes;
+
+    private CompactSnapshotList(String parentPath, String[] pathsToParent, FileSystemNode[] nodes, int hashLength, byte[] hashes, long[] sizes, long[] lastModifiedTimes) {
+        this.parentPath = parentPath;
+        this.pathsToParent = pathsToParent;
+        this.nodes = nodes;
+        this.hashLength = hashLength;
+        this.hashes = hashes;
+        this.sizes = sizes;
+        this.lastModifiedTimes = lastModifiedTimes;
+    }
+
+    /**
+     * Packs the regular files among the children of the directory at the given path.
+     * Returns the children as they are when there is nothing to pack.
+     */
+    static List<CompleteFileSystemLocationSnapshot> of(String parentPath, List<CompleteFileSystemLocationSnapshot> children) {
+        int size = children.size();
+        int hashLength = -1;
+        boolean[] packable = new boolean[size];
+        boolean anyPackable = false;
+        for (int i = 0; i < size; i++) {
+            CompleteFileSystemLocationSnapshot child = children.get(i);
+            if (!(child instanceof RegularFileSnapshot) || !child.getAbsolutePath().equals(childPath(parentPath, child.getName()))) {
+                continue;
+            }
+            int childHashLength = child.getHash().length();
+            if (hashLength == -1) {
+                hashLength = childHashLength;
+            }
+            if (childHashLength == hashLength) {
+                packable[i] = true;
+                anyPackable = true;
+            }
+        }
+        if (!anyPackable) {
+            return children;
+        }
+
+        String[] pathsToParent = new String[size];
+        FileSystemNode[] nodes = new FileSystemNode[size];
+        byte[] hashes = new byte[size * hashLength];
+        long[] sizes = new long[size];
+        long[] lastModifiedTimes = new long[size];
+        for (int i = 0; i < size; i++) {
+            CompleteFileSystemLocationSnapshot child = children.get(i);
+            pathsToParent[i] = child.getPathToParent();
+            if (packable[i]) {
+                FileMetadata metadata = ((RegularFileSnapshot) child).getMetadata();
+                System.arraycopy(child.getHash().toByteArray(), 0, hashes, i * hashLength, hashLength);
+                sizes[i] = metadata.getSize();
+                lastModifiedTimes[i] = metadata.getLastModified();
+            } else {
+                nodes[i] = child;
+            }
+        }
+        return new CompactSnapshotList<>(parentPath, pathsToParent, nodes, hashLength, hashes, sizes, lastModifiedTimes);
+    }
+
+    /**
+     * The path to parent of every child, without creating the snapshots of packed regular files.
+     */
+    static List<String> pathsToParent(List<? extends FileSystemNode> children) {
+        if (children instanceof CompactSnapshotList) {
+            return Arrays.asList(((CompactSnapshotList<?>) children).pathsToParent);
+        }
+        return Lists.transform(children, FileSystemNode::getPathToParent);
+    }
+
+    static List<FileSystemNode> withNewChild(List<? extends FileSystemNode> children, int insertBefore, FileSystemNode newChild) {
+        if (children instanceof CompactSnapshotList) {
+            return ((CompactSnapshotList<?>) children).splice(insertBefore, 0, newChild);
+        }
+        List<FileSystemNode> newChildren = new ArrayList<>(children);
+        newChildren.add(insertBefore, newChild);
+        return newChildren;
+    }
+
+    static List<FileSystemNode> withReplacedChild(List<? extends FileSystemNode> children, int childIndex, FileSystemNode newChild) {
+        if (children instanceof CompactSnapshotList) {
+            return ((CompactSnapshotList<?>) children).splice(childIndex, 1, newChild);
+        }
+        List<FileSystemNode> newChildren = new ArrayList<>(children);
+        newChildren.set(childIndex, newChild);
+        return newChildren;
+    }
+
+    static List<FileSystemNode> withoutChild(List<? extends FileSystemNode> children, int childIndex) {
+        if (children instanceof CompactSnapshotList) {
+            return ((CompactSnapshotList<?>) children).splice(childIndex, 1, null);
+        }
+        List<FileSystemNode> newChildren = new ArrayList<>(children);
+        newChildren.remove(childIndex);
+        return newChildren;
+    }
+
+    private static String childPath(String parentPath, String name) {
+        return parentPath.endsWith(File.separator)
+            ? parentPath + name
+            : parentPath + File.separatorChar + name;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        FileSystemNode node = nodes[index];
+        if (node != null) {
+            return (T) node;
+        }
+        String name = pathsToParent[index];
+        int hashStart = index * hashLength;
+        HashCode hash = HashCode.fromBytes(Arrays.copyOfRange(hashes, hashStart, hashStart + hashLength));
+        return (T) new RegularFileSnapshot(childPath(parentPath, name), name, hash, new FileMetadata(sizes[index], lastModifiedTimes[index]));
+    }
+
+    @Override
+    public int size() {
+        return pathsToParent.length;
+    }
+
+    /**
+     * Returns a copy of this list with {@code removed} children replaced by {@code inserted}, starting at {@code index}.
+     */
+    private CompactSnapshotList<FileSystemNode> splice(int index, int removed, @Nullable FileSystemNode inserted) {
+        int insertedCount = inserted == null ? 0 : 1;
+        int newSize = size() - removed + insertedCount;
+        CompactSnapshotList<FileSystemNode> result = new CompactSnapshotList<>(
+            parentPath,
+            new String[newSize],
+            new FileSystemNode[newSize],
+            hashLength,
+            new byte[newSize * hashLength],
+            new long[newSize],
+            new long[newSize]
+        );
+        copyTo(result, 0, 0, index);
+        copyTo(result, index + removed, index + insertedCount, size() - index - removed);
+        if (inserted != null) {
+            result.pathsToParent[index] = inserted.getPathToParent();
+            result.nodes[index] = inserted;
+        }
+        return result;
+    }
+
+    private void copyTo(CompactSnapshotList<?> target, int from, int to, int count) {
+        System.arraycopy(pathsToParent, from, target.pathsToParent, to, count);
+        System.arraycopy(nodes, from, target.nodes, to, count);
+        System.arraycopy(hashes, from * hashLength, target.hashes, to * hashLength, count * hashLength);
+        System.arraycopy(sizes, from, target.sizes, to, count);
+        System.arraycopy(lastModifiedTimes, from, target.lastModifiedTimes, to, count);
+    }
+}
@@ -21,7 +21,6 @@
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.HashCode;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,7 +35,7 @@ public class CompleteDirectorySnapshot extends AbstractCompleteFileSystemLocatio
 
     public CompleteDirectorySnapshot(String absolutePath, String name, List<CompleteFileSystemLocationSnapshot> children, HashCode contentHash) {
         super(absolutePath, name);
-        this.children = children;
+        this.children = CompactSnapshotList.of(absolutePath, children);
         this.contentHash = contentHash;
     }
 
@@ -108,11 +107,11 @@ public void nodeAdded(FileSystemNode node) {
                         diffListener.nodeAdded(node);
                     }
                 });
-                children.forEach(child -> {
-                    if (child != foundChild) {
-                        diffListener.nodeAdded(child);
+                for (int i = 0; i < children.size(); i++) {
+                    if (i != childIndex) {
+                        diffListener.nodeAdded(children.get(i));
                     }
-                });
+                }
                 return Optional.of(new PartialDirectorySnapshot(getPathToParent(), getChildren(childIndex, invalidated)));
             }
 
@@ -122,18 +121,13 @@ private List<FileSystemNode> getChildren(int childIndex, @SuppressWarnings("Opti
                 }
 
                 return invalidated
-                    .map(invalidatedChild -> {
-                        List<FileSystemNode> newChildren = new ArrayList<>(children);
-                        newChildren.set(childIndex, invalidatedChild);
-                        return newChildren;
-                    }).orElseGet(() -> {
+                    .map(invalidatedChild -> CompactSnapshotList.withReplacedChild(children, childIndex, invalidatedChild))
+                    .orElseGet(() -> {
                         if (children.size() == 2) {
                             CompleteFileSystemLocationSnapshot singleChild = childIndex == 0 ? children.get(1) : children.get(0);
                             return ImmutableList.of(singleChild);
                         }
-                        List<FileSystemNode> newChildren = new ArrayList<>(children);
-                        newChildren.remove(childIndex);
-                        return newChildren;
+                        return CompactSnapshotList.withoutChild(children, childIndex);
                     });
             }
         });
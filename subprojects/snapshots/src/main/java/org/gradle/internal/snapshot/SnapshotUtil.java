@@ -33,36 +33,35 @@ public class SnapshotUtil {
     private static final int MINIMUM_CHILD_COUNT_FOR_BINARY_SEARCH = 10;
 
     public static Optional<MetadataSnapshot> getMetadataFromChildren(List<? extends FileSystemNode> children, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, Supplier<Optional<MetadataSnapshot>> noChildFoundResult) {
+        // Compare with the paths to parent, so packed children are only created once found
+        List<String> pathsToParent = CompactSnapshotList.pathsToParent(children);
         int numberOfChildren = children.size();
         switch (numberOfChildren) {
             case 0:
                 return noChildFoundResult.get();
             case 1:
-                FileSystemNode onlyChild = children.get(0);
-                return relativePath.hasPrefix(onlyChild.getPathToParent(), caseSensitivity)
-                    ? getSnapshotFromChild(onlyChild, relativePath, caseSensitivity)
+                return relativePath.hasPrefix(pathsToParent.get(0), caseSensitivity)
+                    ? getSnapshotFromChild(children.get(0), relativePath, caseSensitivity)
                     : noChildFoundResult.get();
             case 2:
-                FileSystemNode firstChild = children.get(0);
-                FileSystemNode secondChild = children.get(1);
-                if (relativePath.hasPrefix(firstChild.getPathToParent(), caseSensitivity)) {
-                    return getSnapshotFromChild(firstChild, relativePath, caseSensitivity);
+                if (relativePath.hasPrefix(pathsToParent.get(0), caseSensitivity)) {
+                    return getSnapshotFromChild(children.get(0), relativePath, caseSensitivity);
                 }
-                if (relativePath.hasPrefix(secondChild.getPathToParent(), caseSensitivity)) {
-                    return getSnapshotFromChild(secondChild, relativePath, caseSensitivity);
+                if (relativePath.hasPrefix(pathsToParent.get(1), caseSensitivity)) {
+                    return getSnapshotFromChild(children.get(1), relativePath, caseSensitivity);
                 }
                 return noChildFoundResult.get();
             default:
                 if (numberOfChildren < MINIMUM_CHILD_COUNT_FOR_BINARY_SEARCH) {
-                    for (FileSystemNode currentChild : children) {
-                        if (relativePath.hasPrefix(currentChild.getPathToParent(), caseSensitivity)) {
-                            return getSnapshotFromChild(currentChild, relativePath, caseSensitivity);
+                    for (int i = 0; i < numberOfChildren; i++) {
+                        if (relativePath.hasPrefix(pathsToParent.get(i), caseSensitivity)) {
+                            return getSnapshotFromChild(children.get(i), relativePath, caseSensitivity);
                         }
                     }
                     return noChildFoundResult.get();
                 } else {
-                    int foundChild = SearchUtil.binarySearch(children, child -> relativePath.compareToFirstSegment(child.getPathToParent(), caseSensitivity));
-                    return (foundChild >= 0 && relativePath.hasPrefix(children.get(foundChild).getPathToParent(), caseSensitivity))
+                    int foundChild = SearchUtil.binarySearch(pathsToParent, childPath -> relativePath.compareToFirstSegment(childPath, caseSensitivity));
+                    return (foundChild >= 0 && relativePath.hasPrefix(pathsToParent.get(foundChild), caseSensitivity))
                         ? getSnapshotFromChild(children.get(foundChild), relativePath, caseSensitivity)
                         : noChildFoundResult.get();
                 }
@@ -161,8 +160,8 @@ public Optional<FileSystemNode> handleDifferent(int commonPrefixLength) {
 
     public static <T> T handleChildren(List<? extends FileSystemNode> children, VfsRelativePath relativePath, CaseSensitivity caseSensitivity, ChildHandler<T> childHandler) {
         int childIndex = SearchUtil.binarySearch(
-            children,
-            candidate -> relativePath.compareToFirstSegment(candidate.getPathToParent(), caseSensitivity)
+            CompactSnapshotList.pathsToParent(children),
+            candidate -> relativePath.compareToFirstSegment(candidate, caseSensitivity)
         );
         if (childIndex >= 0) {
             return childHandler.handleChildOfExisting(childIndex);
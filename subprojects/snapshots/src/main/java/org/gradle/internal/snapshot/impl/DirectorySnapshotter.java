@@ -22,11 +22,13 @@
 import com.google.common.collect.Lists;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.CompleteDirectorySnapshot;
 import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.FileMetadata;
 import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
 import org.gradle.internal.snapshot.MissingFileSnapshot;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.RelativePathSegmentsTracker;
 import org.gradle.internal.snapshot.SnapshottingFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +36,7 @@
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
@@ -41,29 +44,53 @@
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class DirectorySnapshotter {
     private static final Logger LOGGER = LoggerFactory.getLogger(DirectorySnapshotter.class);
 
+    /**
+     * The coarsest granularity of file modification times on common file systems, which is FAT with two seconds.
+     */
+    private static final long FILE_TIMESTAMP_GRANULARITY = 2000;
+
     private final FileHasher hasher;
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
+    private final Executor hashingExecutor;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, String... defaultExcludes) {
+        this(hasher, stringInterner, null, defaultExcludes);
+    }
+
+    /**
+     * Creates a snapshotter that hashes regular files using the given executor while walking the directory tree.
+     * The snapshots are the same as the ones created when hashing the files on the walking thread.
+     * When no executor is given, files are hashed on the walking thread.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, @Nullable Executor hashingExecutor, String... defaultExcludes) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
+        this.hashingExecutor = hashingExecutor;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
     }
 
     public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered) {
         try {
             Path rootPath = Paths.get(absolutePath);
-            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes);
+            PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, hashingExecutor);
             Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
             return visitor.getResult();
         } catch (IOException e) {
@@ -71,6 +98,82 @@ public CompleteFileSystemLocationSnapshot snapshot(String absolutePath, @Nullabl
         }
     }
 
+    /**
+     * Checks whether the file system still looks like the given snapshot, which was stored by a previous process, without hashing any file contents.
+     *
+     * Regular files need to have the same size, modification time and file key, when the file system has file keys.
+     * Directories need to have the same entries, ignoring the ones excluded by the default excludes.
+     *
+     * A file rewritten with the same size within the granularity of file timestamps keeps its modification time.
+     * So modification times which are not older than the time the snapshot was stored, minus that granularity, are not trusted.
+     *
+     * @param storedAt the file system timestamp at which the snapshot was stored
+     * @param fileKeys the file keys of the regular files when the snapshot was stored, by absolute path
+     */
+    public boolean isUnchanged(CompleteFileSystemLocationSnapshot snapshot, long storedAt, Map<String, String> fileKeys) {
+        Path path = Paths.get(snapshot.getAbsolutePath());
+        switch (snapshot.getType()) {
+            case Missing:
+                return !Files.exists(path);
+            case RegularFile:
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    FileMetadata metadata = ((RegularFileSnapshot) snapshot).getMetadata();
+                    if (!attrs.isRegularFile()
+                        || !FileMetadata.from(attrs).equals(metadata)
+                        || metadata.getLastModified() >= storedAt - FILE_TIMESTAMP_GRANULARITY) {
+                        return false;
+                    }
+                    String storedFileKey = fileKeys.get(snapshot.getAbsolutePath());
+                    return storedFileKey == null || storedFileKey.equals(fileKey(attrs));
+                } catch (IOException e) {
+                    return false;
+                }
+            case Directory:
+                return Files.isDirectory(path) && isDirectoryUnchanged(path, (CompleteDirectorySnapshot) snapshot, storedAt, fileKeys);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private boolean isDirectoryUnchanged(Path path, CompleteDirectorySnapshot snapshot, long storedAt, Map<String, String> fileKeys) {
+        List<CompleteFileSystemLocationSnapshot> children = snapshot.getChildren();
+        Set<String> childNames = children.stream()
+            .map(CompleteFileSystemLocationSnapshot::getName)
+            .collect(Collectors.toSet());
+        int visitedChildren = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (childNames.contains(name)) {
+                    visitedChildren++;
+                } else if (Files.isDirectory(entry) ? !defaultExcludes.excludeDir(name) : !defaultExcludes.excludeFile(name)) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (visitedChildren != children.size()) {
+            return false;
+        }
+        for (CompleteFileSystemLocationSnapshot child : children) {
+            if (!isUnchanged(child, storedAt, fileKeys)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The key identifying the file on the file system, like the device and inode on Unix, or {@code null} when the file system has none.
+     */
+    @Nullable
+    public static String fileKey(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? null : fileKey.toString();
+    }
+
     @VisibleForTesting
     static class DefaultExcludes {
         private final ImmutableSet<String> excludeFileNames;
@@ -144,20 +247,30 @@ public boolean test(String element) {
         }
     }
 
+    /**
+     * Walks the directory tree and feeds the results into a {@link MerkleDirectorySnapshotBuilder}.
+     *
+     * When hashing regular files in parallel, the visits are recorded while walking, and replayed
+     * in the original order once the walk has finished, waiting for the hashes as needed.
+     */
     private static class PathVisitor implements java.nio.file.FileVisitor<Path> {
         private final MerkleDirectorySnapshotBuilder builder;
+        private final RelativePathSegmentsTracker relativePathSegmentsTracker = new RelativePathSegmentsTracker();
         private final SnapshottingFilter.DirectoryWalkerPredicate predicate;
         private final AtomicBoolean hasBeenFiltered;
         private final FileHasher hasher;
         private final Interner<String> stringInterner;
         private final DefaultExcludes defaultExcludes;
+        private final Executor hashingExecutor;
+        private final List<Consumer<MerkleDirectorySnapshotBuilder>> pendingVisits = new ArrayList<>();
 
         public PathVisitor(
             @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
             AtomicBoolean hasBeenFiltered,
             FileHasher hasher,
             Interner<String> stringInterner,
-            DefaultExcludes defaultExcludes
+            DefaultExcludes defaultExcludes,
+            @Nullable Executor hashingExecutor
         ) {
             this.builder = MerkleDirectorySnapshotBuilder.sortingRequired();
             this.predicate = predicate;
@@ -165,14 +278,17 @@ public PathVisitor(
             this.hasher = hasher;
             this.stringInterner = stringInterner;
             this.defaultExcludes = defaultExcludes;
+            this.hashingExecutor = hashingExecutor;
         }
 
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
             String fileName = getFilename(dir);
             String internedName = intern(fileName);
-            if (builder.isRoot() || shouldVisit(dir, internedName, true, attrs, builder.getRelativePath())) {
-                builder.preVisitDirectory(intern(dir.toString()), internedName);
+            if (relativePathSegmentsTracker.isRoot() || shouldVisit(dir, internedName, true, attrs, relativePathSegmentsTracker.getRelativePath())) {
+                relativePathSegmentsTracker.enter(internedName);
+                String internedAbsolutePath = intern(dir.toString());
+                visit(snapshotBuilder -> snapshotBuilder.preVisitDirectory(internedAbsolutePath, internedName));
                 return FileVisitResult.CONTINUE;
             } else {
                 return FileVisitResult.SKIP_SUBTREE;
@@ -188,12 +304,47 @@ private String getFilename(Path dir) {
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
             String internedName = intern(file.getFileName().toString());
-            if (shouldVisit(file, internedName, false, attrs, builder.getRelativePath())) {
-                builder.visitFile(snapshotFile(file, internedName, attrs));
+            if (shouldVisit(file, internedName, false, attrs, relativePathSegmentsTracker.getRelativePath())) {
+                if (hashingExecutor != null && attrs.isRegularFile()) {
+                    FutureTask<CompleteFileSystemLocationSnapshot> snapshotTask = new FutureTask<>(() -> snapshotFile(file, internedName, attrs));
+                    hashingExecutor.execute(snapshotTask);
+                    visit(snapshotBuilder -> snapshotBuilder.visitFile(getSnapshot(snapshotTask)));
+                } else {
+                    CompleteFileSystemLocationSnapshot fileSnapshot = snapshotFile(file, internedName, attrs);
+                    visit(snapshotBuilder -> snapshotBuilder.visitFile(fileSnapshot));
+                }
             }
             return FileVisitResult.CONTINUE;
         }
 
+        private static CompleteFileSystemLocationSnapshot getSnapshot(FutureTask<CompleteFileSystemLocationSnapshot> snapshotTask) {
+            // Snapshot the file on the current thread when the executor did not get to it yet
+            snapshotTask.run();
+            try {
+                return snapshotTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        private void visit(Consumer<MerkleDirectorySnapshotBuilder> visit) {
+            if (hashingExecutor == null) {
+                visit.accept(builder);
+            } else {
+                pendingVisits.add(visit);
+            }
+        }
+
         private CompleteFileSystemLocationSnapshot snapshotFile(Path absoluteFilePath, String internedName, BasicFileAttributes attrs) {
             String internedAbsoluteFilePath = intern(absoluteFilePath.toString());
             if (attrs.isRegularFile()) {
@@ -217,10 +368,11 @@ public FileVisitResult visitFileFailed(Path file, IOException exc) {
             if (isNotFileSystemLoopException(exc)) {
                 String internedName = intern(file.getFileName().toString());
                 boolean isDirectory = Files.isDirectory(file);
-                if (shouldVisit(file, internedName, isDirectory, null, builder.getRelativePath())) {
+                if (shouldVisit(file, internedName, isDirectory, null, relativePathSegmentsTracker.getRelativePath())) {
                     LOGGER.info("Could not read file path '{}'.", file);
                     String internedAbsolutePath = intern(file.toString());
-                    builder.visitFile(new MissingFileSnapshot(internedAbsolutePath, internedName));
+                    MissingFileSnapshot fileSnapshot = new MissingFileSnapshot(internedAbsolutePath, internedName);
+                    visit(snapshotBuilder -> snapshotBuilder.visitFile(fileSnapshot));
                 }
             }
             return FileVisitResult.CONTINUE;
@@ -234,7 +386,8 @@ public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException exc) {
             if (isNotFileSystemLoopException(exc)) {
                 throw new UncheckedIOException(String.format("Could not read directory path '%s'.", dir), exc);
             }
-            builder.postVisitDirectory();
+            relativePathSegmentsTracker.leave();
+            visit(MerkleDirectorySnapshotBuilder::postVisitDirectory);
             return FileVisitResult.CONTINUE;
         }
 
@@ -271,6 +424,8 @@ private boolean shouldVisit(Path path, String internedName, boolean isDirectory,
         }
 
         public CompleteFileSystemLocationSnapshot getResult() {
+            pendingVisits.forEach(visit -> visit.accept(builder));
+            pendingVisits.clear();
             return builder.getResult();
         }
     }
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.vfs.impl;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Interner;
 import com.google.common.util.concurrent.Striped;
 import org.gradle.internal.file.FileMetadataSnapshot;
@@ -35,8 +36,13 @@
 import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
 import org.gradle.internal.snapshot.impl.FileSystemSnapshotFilter;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Consumer;
@@ -50,11 +56,18 @@ public class DefaultVirtualFileSystem extends AbstractVirtualFileSystem {
     private final DirectorySnapshotter directorySnapshotter;
     private final FileHasher hasher;
     private final StripedProducerGuard<String> producingSnapshots = new StripedProducerGuard<>();
+    private final ConcurrentMap<String, CompleteFileSystemLocationSnapshot> restoredSnapshots = new ConcurrentHashMap<>();
+    private volatile long restoredSnapshotsStoredAt;
+    private volatile Map<String, String> restoredFileKeys = ImmutableMap.of();
 
     public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator updateFunctionDecorator, String... defaultExcludes) {
+        this(hasher, stringInterner, stat, caseSensitivity, updateFunctionDecorator, null, defaultExcludes);
+    }
+
+    public DefaultVirtualFileSystem(FileHasher hasher, Interner<String> stringInterner, Stat stat, CaseSensitivity caseSensitivity, SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator updateFunctionDecorator, @Nullable Executor hashingExecutor, String... defaultExcludes) {
         this.stat = stat;
         this.updateFunctionDecorator = updateFunctionDecorator;
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, defaultExcludes);
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, stringInterner, hashingExecutor, defaultExcludes);
         this.hasher = hasher;
         this.root = new AtomicSnapshotHierarchyReference(DefaultSnapshotHierarchy.empty(caseSensitivity));
     }
@@ -86,7 +99,7 @@ public <T> Optional<T> readRegularFileContentHash(String location, Function<Hash
                     return Optional.empty();
                 }
                 HashCode hash = producingSnapshots.guardByKey(location,
-                    () -> root.get().getSnapshot(location)
+                    () -> findSnapshot(location)
                         .orElseGet(() -> {
                             HashCode hashCode = hasher.hash(file, stat.getLength(), stat.getLastModified());
                             RegularFileSnapshot snapshot = new RegularFileSnapshot(location, file.getName(), hashCode, FileMetadata.from(stat));
@@ -111,7 +124,7 @@ public void read(String location, SnapshottingFilter filter, Consumer<CompleteFi
                 .filter(CompleteFileSystemLocationSnapshot.class::isInstance)
                 .map(snapshot -> FileSystemSnapshotFilter.filterSnapshot(filter.getAsSnapshotPredicate(), snapshot))
                 .orElseGet(() -> producingSnapshots.guardByKey(location,
-                    () -> root.get().getSnapshot(location)
+                    () -> findSnapshot(location)
                         .map(snapshot -> FileSystemSnapshotFilter.filterSnapshot(filter.getAsSnapshotPredicate(), snapshot))
                         .orElseGet(() -> {
                             AtomicBoolean hasBeenFiltered = new AtomicBoolean(false);
@@ -163,15 +176,87 @@ AtomicSnapshotHierarchyReference getRoot() {
     private CompleteFileSystemLocationSnapshot readLocation(String location) {
         return root.get().getSnapshot(location)
             .orElseGet(() -> producingSnapshots.guardByKey(location,
-                () -> root.get().getSnapshot(location).orElseGet(() -> snapshot(location)))
+                () -> findSnapshot(location).orElseGet(() -> snapshot(location)))
             );
     }
 
+    private Optional<CompleteFileSystemLocationSnapshot> findSnapshot(String location) {
+        Optional<CompleteFileSystemLocationSnapshot> snapshot = root.get().getSnapshot(location);
+        return snapshot.isPresent()
+            ? snapshot
+            : restoreSnapshot(location);
+    }
+
+    /**
+     * Moves the restored snapshot containing the location into the root if the file system still matches it.
+     */
+    private Optional<CompleteFileSystemLocationSnapshot> restoreSnapshot(String location) {
+        if (restoredSnapshots.isEmpty()) {
+            return Optional.empty();
+        }
+        for (File file = new File(location); file != null; file = file.getParentFile()) {
+            CompleteFileSystemLocationSnapshot restoredSnapshot = restoredSnapshots.remove(file.getPath());
+            if (restoredSnapshot != null) {
+                if (!directorySnapshotter.isUnchanged(restoredSnapshot, restoredSnapshotsStoredAt, restoredFileKeys)) {
+                    return Optional.empty();
+                }
+                updateRoot((root, changeListener) -> root.store(restoredSnapshot.getAbsolutePath(), restoredSnapshot, changeListener));
+                return root.get().getSnapshot(location);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Adds snapshots captured by a previous process.
+     *
+     * The file system may have changed since the snapshots were captured.
+     * A restored snapshot is only used after checking the file system against it, when one of the locations it contains is read for the first time.
+     *
+     * @param storedAt the file system timestamp at which the snapshots were stored
+     * @param fileKeys the file keys of the regular files when the snapshots were stored, by absolute path
+     * @see DirectorySnapshotter#isUnchanged(CompleteFileSystemLocationSnapshot, long, Map)
+     */
+    public void restoreSnapshots(Iterable<CompleteFileSystemLocationSnapshot> snapshots, long storedAt, Map<String, String> fileKeys) {
+        restoredSnapshotsStoredAt = storedAt;
+        restoredFileKeys = fileKeys;
+        for (CompleteFileSystemLocationSnapshot snapshot : snapshots) {
+            restoredSnapshots.put(snapshot.getAbsolutePath(), snapshot);
+        }
+    }
+
+    /**
+     * Visits the snapshots which should be restored by a later process.
+     *
+     * These are the snapshots in the root, and the restored snapshots which have not been used yet and still match the file system.
+     * The restored snapshots are checked here, since nothing watched their locations while they were not used.
+     */
+    public void visitSnapshotsToRestore(Consumer<CompleteFileSystemLocationSnapshot> visitor) {
+        SnapshotHierarchy currentRoot = root.get();
+        currentRoot.visitSnapshotRoots(visitor::accept);
+        restoredSnapshots.values().stream()
+            .filter(snapshot -> !currentRoot.getMetadata(snapshot.getAbsolutePath()).isPresent())
+            .filter(snapshot -> directorySnapshotter.isUnchanged(snapshot, restoredSnapshotsStoredAt, restoredFileKeys))
+            .forEach(visitor);
+    }
+
+    private void invalidateRestoredSnapshots(String location) {
+        if (!restoredSnapshots.isEmpty()) {
+            restoredSnapshots.keySet().removeIf(path -> isAncestorOrSelf(path, location) || isAncestorOrSelf(location, path));
+        }
+    }
+
+    private static boolean isAncestorOrSelf(String path, String location) {
+        return location.startsWith(path)
+            && (location.length() == path.length() || location.charAt(path.length()) == File.separatorChar || path.endsWith(File.separator));
+    }
+
     @Override
     public void update(Iterable<String> locations, Runnable action) {
         root.update(root -> {
             SnapshotHierarchy result = root;
             for (String location : locations) {
+                invalidateRestoredSnapshots(location);
                 result = updateFunctionDecorator.decorate((currentRoot, changeListener) -> currentRoot.invalidate(location, changeListener)).updateRoot(result);
             }
             return result;
@@ -186,6 +271,8 @@ public void invalidateAll() {
             root.visitSnapshotRoots(changeListener::nodeRemoved);
             return root.empty();
         });
+        restoredSnapshots.clear();
+        restoredFileKeys = ImmutableMap.of();
     }
 
     @Override
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot
+
+import org.gradle.internal.hash.HashCode
+import spock.lang.Specification
+
+class CompactSnapshotListTest extends Specification {
+    private static final String PARENT = File.separator + "parent"
+
+    def "packs regular files and restores them on access"() {
+        def children = [regularFile("a", 1), directory("b"), regularFile("c", 3)]
+
+        when:
+        def packed = CompactSnapshotList.of(PARENT, children)
+
+        then:
+        packed instanceof CompactSnapshotList
+        packed.size() == 3
+        CompactSnapshotList.pathsToParent(packed) == ["a", "b", "c"]
+        packed[1].is(children[1])
+        assertSameFile(packed[0], children[0])
+        assertSameFile(packed[2], children[2])
+    }
+
+    def "keeps children as they are when there is nothing to pack"() {
+        def children = [directory("a"), new MissingFileSnapshot(PARENT + File.separator + "b", "b")]
+
+        expect:
+        CompactSnapshotList.of(PARENT, children).is(children)
+    }
+
+    def "does not pack regular files with a different absolute path"() {
+        def children = [regularFile("a", 1), new RegularFileSnapshot("/elsewhere/b", "b", HashCode.fromInt(2), new FileMetadata(2, 2))]
+
+        when:
+        def packed = CompactSnapshotList.of(PARENT, children)
+
+        then:
+        packed[1].is(children[1])
+        assertSameFile(packed[0], children[0])
+    }
+
+    def "stays packed when adding, replacing and removing children"() {
+        def children = [regularFile("a", 1), regularFile("c", 3), regularFile("d", 4)]
+        def packed = CompactSnapshotList.of(PARENT, children)
+        def newChild = directory("b")
+
+        when:
+        def added = CompactSnapshotList.withNewChild(packed, 1, newChild)
+        then:
+        added instanceof CompactSnapshotList
+        CompactSnapshotList.pathsToParent(added) == ["a", "b", "c", "d"]
+        added[1].is(newChild)
+        assertSameFile(added[0], children[0])
+        assertSameFile(added[3], children[2])
+
+        when:
+        def replaced = CompactSnapshotList.withReplacedChild(added, 2, directory("c"))
+        then:
+        replaced instanceof CompactSnapshotList
+        CompactSnapshotList.pathsToParent(replaced) == ["a", "b", "c", "d"]
+        replaced[2] instanceof CompleteDirectorySnapshot
+        assertSameFile(replaced[3], children[2])
+
+        when:
+        def removed = CompactSnapshotList.withoutChild(replaced, 0)
+        then:
+        removed instanceof CompactSnapshotList
+        CompactSnapshotList.pathsToParent(removed) == ["b", "c", "d"]
+        assertSameFile(removed[2], children[2])
+    }
+
+    def "directory snapshot finds packed children"() {
+        def children = (0..<20).collect { regularFile("file${it}", it) }.sort { it.name }
+        def directory = new CompleteDirectorySnapshot(PARENT, "parent", children, HashCode.fromInt(1234))
+
+        expect:
+        children.every { child ->
+            def found = directory.getSnapshot(VfsRelativePath.of(child.absolutePath, PARENT.length() + 1), CaseSensitivity.CASE_SENSITIVE).get() as RegularFileSnapshot
+            found.absolutePath == child.absolutePath && found.hash == child.hash && found.metadata == child.metadata
+        }
+    }
+
+    private static RegularFileSnapshot regularFile(String name, int hash) {
+        new RegularFileSnapshot(PARENT + File.separator + name, name, HashCode.fromInt(hash), new FileMetadata(hash, hash * 10))
+    }
+
+    private static CompleteDirectorySnapshot directory(String name) {
+        new CompleteDirectorySnapshot(PARENT + File.separator + name, name, [], HashCode.fromInt(1234))
+    }
+
+    private static void assertSameFile(FileSystemNode actual, RegularFileSnapshot expected) {
+        assert actual instanceof RegularFileSnapshot
+        assert actual.absolutePath == expected.absolutePath
+        assert actual.name == expected.name
+        assert actual.hash == expected.hash
+        assert actual.metadata == expected.metadata
+    }
+}
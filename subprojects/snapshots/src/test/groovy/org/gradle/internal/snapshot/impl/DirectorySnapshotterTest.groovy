@@ -37,6 +37,7 @@ import spock.lang.Issue
 import spock.lang.Specification
 
 import java.nio.file.Paths
+import java.util.concurrent.Executors
 import java.util.concurrent.atomic.AtomicBoolean
 
 @UsesNativeServices
@@ -216,6 +217,30 @@ class DirectorySnapshotterTest extends Specification {
         pipe.delete()
     }
 
+    def "hashing files in parallel produces the same snapshot"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        (1..5).each { dirIndex ->
+            (1..20).each { fileIndex ->
+                rootDir.file("dir${dirIndex}/nested/file${fileIndex}.txt").text = "content ${dirIndex} ${fileIndex}"
+            }
+        }
+        rootDir.file("a.txt").text = "root file"
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, new StringInterner(), executor)
+
+        when:
+        def snapshot = directorySnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false))
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, null, new AtomicBoolean(false))
+
+        then:
+        parallelSnapshot.hash == snapshot.hash
+        relativePaths(parallelSnapshot) == relativePaths(snapshot)
+
+        cleanup:
+        executor.shutdown()
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes())
 
@@ -237,6 +262,17 @@ class DirectorySnapshotterTest extends Specification {
         !defaultExcludes.excludeFile('#some')
     }
 
+    private static List<String> relativePaths(CompleteFileSystemLocationSnapshot snapshot) {
+        def relativePaths = []
+        snapshot.accept(new RelativePathTrackingVisitor() {
+            @Override
+            void visit(String absolutePath, Deque<String> relativePath) {
+                relativePaths << relativePath.join("/")
+            }
+        })
+        return relativePaths
+    }
+
     private static String fileSystemRoot() {
         "${Paths.get("").toAbsolutePath().root}"
     }
@@ -16,11 +16,23 @@
 
 package org.gradle.internal.vfs.impl
 
-
+import groovy.io.FileType
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
 import org.gradle.internal.snapshot.CompleteDirectorySnapshot
 import org.gradle.internal.snapshot.CompleteFileSystemLocationSnapshot
 import org.gradle.internal.snapshot.FileSystemSnapshotVisitor
+import org.gradle.internal.snapshot.SnapshotHierarchy
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter
 import org.gradle.test.fixtures.file.TestFile
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+
+import static org.gradle.internal.snapshot.CaseSensitivity.CASE_SENSITIVE
 
 class DefaultVirtualFileSystemTest extends AbstractVirtualFileSystemTest {
 
@@ -253,4 +265,109 @@ class DefaultVirtualFileSystemTest extends AbstractVirtualFileSystemTest {
         then: "The filtered tree uses the cached state"
         relativePaths == ["d1", "d1/f1", "f1"] as Set
     }
+
+    def "uses restored snapshots without hashing when the file system did not change"() {
+        def d = temporaryFolder.createDir("d")
+        d.file("f1").text = "f1"
+        d.file("d1/f2").text = "f2"
+        def previousSnapshot = snapshotInPreviousProcess(d)
+
+        when:
+        restore(previousSnapshot)
+        allowFileSystemAccess(false)
+        def snapshot = readFromVfs(d)
+        then:
+        snapshot.hash == previousSnapshot[0].hash
+
+        when:
+        def fileSnapshot = readFromVfs(d.file("d1/f2"))
+        then:
+        fileSnapshot.hash == TestFiles.fileHasher().hash(d.file("d1/f2"))
+    }
+
+    def "discards restored snapshots when the file system changed"() {
+        def d = temporaryFolder.createDir("d")
+        d.file("f1").text = "f1"
+        def previousSnapshot = snapshotInPreviousProcess(d)
+
+        when:
+        restore(previousSnapshot)
+        d.file(changedFile).text = "changed"
+        allowFileSystemAccess(true)
+        def snapshot = readFromVfs(d)
+        then:
+        snapshot.hash != previousSnapshot[0].hash
+
+        where:
+        changedFile << ["f1", "f2"]
+    }
+
+    def "discards restored snapshots when invalidated"() {
+        def d = temporaryFolder.createDir("d")
+        d.file("f1").text = "f1"
+        def previousSnapshot = snapshotInPreviousProcess(d)
+
+        when:
+        restore(previousSnapshot)
+        vfs.update([d.file("f1").absolutePath], {})
+        allowFileSystemAccess(false)
+        readFromVfs(d)
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "does not trust modification times close to when the snapshots were stored"() {
+        def d = temporaryFolder.createDir("d")
+        def file = d.file("f1")
+        file.text = "f1"
+        def previousSnapshot = snapshotInPreviousProcess(d, false)
+
+        when:
+        restore(previousSnapshot)
+        def lastModified = file.lastModified()
+        file.text = "f2"
+        file.setLastModified(lastModified)
+        allowFileSystemAccess(true)
+        def fileSnapshot = readFromVfs(file)
+        then:
+        fileSnapshot.hash == TestFiles.fileHasher().hash(file)
+    }
+
+    @Requires(TestPrecondition.UNIX)
+    def "discards restored snapshots when a file was replaced"() {
+        def d = temporaryFolder.createDir("d")
+        def file = d.file("f1")
+        file.text = "f1"
+        def previousSnapshot = snapshotInPreviousProcess(d)
+        def fileKeys = [(file.absolutePath): DirectorySnapshotter.fileKey(Files.readAttributes(file.toPath(), BasicFileAttributes))]
+
+        when:
+        restore(previousSnapshot, fileKeys)
+        def replacement = d.file("replacement")
+        replacement.text = "f2"
+        replacement.setLastModified(file.lastModified())
+        Files.move(replacement.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        allowFileSystemAccess(true)
+        def fileSnapshot = readFromVfs(file)
+        then:
+        fileSnapshot.hash == TestFiles.fileHasher().hash(file)
+    }
+
+    private void restore(List<CompleteFileSystemLocationSnapshot> snapshots, Map<String, String> fileKeys = [:]) {
+        vfs.restoreSnapshots(snapshots, System.currentTimeMillis(), fileKeys)
+    }
+
+    /**
+     * Restored modification times are only trusted when they are older than the time the snapshots were stored, so the files are made older by default.
+     */
+    private static List<CompleteFileSystemLocationSnapshot> snapshotInPreviousProcess(File location, boolean makeFilesOlder = true) {
+        if (makeFilesOlder) {
+            location.eachFileRecurse(FileType.FILES) { it.setLastModified(it.lastModified() - 10000) }
+        }
+        def previousVfs = new DefaultVirtualFileSystem(TestFiles.fileHasher(), new StringInterner(), TestFiles.fileSystem(), CASE_SENSITIVE, SnapshotHierarchy.DiffCapturingUpdateFunctionDecorator.NOOP)
+        previousVfs.read(location.absolutePath, { it })
+        def snapshots = []
+        previousVfs.visitSnapshotsToRestore(snapshots.&add)
+        return snapshots
+    }
 }
@@ -34,9 +34,15 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Binary2JUnitXmlReportGenerator {
 
+    /**
+     * The maximum number of test class results waiting to be written, so that the results of large test suites are not all held in memory.
+     */
+    private static final int MAX_PENDING_CLASSES = 200;
+
     private final File testResultsDir;
     private final TestResultsProvider testResultsProvider;
     private JUnitXmlResultWriter xmlWriter;
@@ -77,11 +83,18 @@ public BuildOperationDescriptor.Builder description() {
         buildOperationExecutor.runAll(new Action<BuildOperationQueue<JUnitXmlReportFileGenerator>>() {
             @Override
             public void execute(final BuildOperationQueue<JUnitXmlReportFileGenerator> queue) {
+                final AtomicInteger pendingClasses = new AtomicInteger();
                 testResultsProvider.visitClasses(new Action<TestClassResult>() {
                     @Override
                     public void execute(final TestClassResult result) {
                         final File reportFile = new File(testResultsDir, getReportFileName(result));
-                        queue.add(new JUnitXmlReportFileGenerator(result, reportFile, xmlWriter));
+                        JUnitXmlReportFileGenerator generator = new JUnitXmlReportFileGenerator(result, reportFile, xmlWriter, pendingClasses);
+                        if (pendingClasses.incrementAndGet() > MAX_PENDING_CLASSES) {
+                            // Write the report in this thread rather than waiting for a worker, as the workers may only start once this thread is done
+                            buildOperationExecutor.run(generator);
+                        } else {
+                            queue.add(generator);
+                        }
                     }
                 });
             }
@@ -98,11 +111,13 @@ private static class JUnitXmlReportFileGenerator implements RunnableBuildOperati
         private final TestClassResult result;
         private final File reportFile;
         private final JUnitXmlResultWriter xmlWriter;
+        private final AtomicInteger pendingClasses;
 
-        public JUnitXmlReportFileGenerator(TestClassResult result, File reportFile, JUnitXmlResultWriter xmlWriter) {
+        public JUnitXmlReportFileGenerator(TestClassResult result, File reportFile, JUnitXmlResultWriter xmlWriter, AtomicInteger pendingClasses) {
             this.result = result;
             this.reportFile = reportFile;
             this.xmlWriter = xmlWriter;
+            this.pendingClasses = pendingClasses;
         }
 
         @Override
@@ -121,6 +136,7 @@ public void run(BuildOperationContext context) {
                 throw new GradleException(String.format("Could not write XML test results for %s to file %s.", result.getClassName(), reportFile), e);
             } finally {
                 IoActions.closeQuietly(output);
+                pendingClasses.decrementAndGet();
             }
         }
     }
@@ -21,13 +21,19 @@
 import com.google.common.collect.ImmutableMap;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.internal.io.BufferCaster;
 import org.gradle.internal.io.RandomAccessFileInputStream;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -220,6 +226,10 @@ Index build() {
     public class Reader implements Closeable {
         private final Index index;
         private final RandomAccessFile dataFile;
+        // Decodes each message straight into the target writer, rather than creating a string per message
+        private final CharsetDecoder messageDecoder = messageStorageCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer messageBytes = ByteBuffer.allocate(8192);
+        private final CharBuffer messageChars = CharBuffer.allocate(8192);
 
         public Reader() {
             File indexFile = getIndexFile();
@@ -362,17 +372,7 @@ private void doRead(long classId, long testId, boolean allClassOutput, TestOutpu
                     }
 
                     if (testId == 0 || testId == readTestId) {
-                        byte[] stringBytes = new byte[readLength];
-                        decoder.readBytes(stringBytes);
-                        String message;
-                        try {
-                            message = new String(stringBytes, messageStorageCharset.name());
-                        } catch (UnsupportedEncodingException e) {
-                            // shouldn't happen
-                            throw UncheckedException.throwAsUncheckedException(e);
-                        }
-
-                        writer.write(message);
+                        writeMessage(decoder, readLength, writer);
                     } else {
                         decoder.skipBytes(readLength);
                     }
@@ -381,6 +381,42 @@ private void doRead(long classId, long testId, boolean allClassOutput, TestOutpu
                 throw new UncheckedIOException(e1);
             }
         }
+
+        private void writeMessage(KryoBackedDecoder decoder, int length, java.io.Writer writer) throws IOException {
+            messageDecoder.reset();
+            BufferCaster.cast(messageBytes).clear();
+            int remaining = length;
+            while (true) {
+                int count = Math.min(remaining, messageBytes.remaining());
+                decoder.readBytes(messageBytes.array(), messageBytes.position(), count);
+                BufferCaster.cast(messageBytes).position(messageBytes.position() + count);
+                remaining -= count;
+                boolean endOfInput = remaining == 0;
+
+                BufferCaster.cast(messageBytes).flip();
+                CoderResult result;
+                do {
+                    result = messageDecoder.decode(messageBytes, messageChars, endOfInput);
+                    writeChars(writer);
+                } while (result.isOverflow());
+                // Keep the bytes of a character split across reads
+                messageBytes.compact();
+
+                if (endOfInput) {
+                    do {
+                        result = messageDecoder.flush(messageChars);
+                        writeChars(writer);
+                    } while (result.isOverflow());
+                    return;
+                }
+            }
+        }
+
+        private void writeChars(java.io.Writer writer) throws IOException {
+            BufferCaster.cast(messageChars).flip();
+            writer.write(messageChars.array(), 0, messageChars.limit());
+            BufferCaster.cast(messageChars).clear();
+        }
     }
 
     // IMPORTANT: return must be closed when done with.
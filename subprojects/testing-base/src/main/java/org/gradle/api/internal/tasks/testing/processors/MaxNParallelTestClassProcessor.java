@@ -18,25 +18,57 @@
 
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestOutputEvent;
 import org.gradle.internal.Factory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.actor.Actor;
 import org.gradle.internal.actor.ActorFactory;
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.dispatch.DispatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages a set of parallel TestClassProcessors. Uses a simple round-robin algorithm to assign test classes to
- * processors.
+ * processors, unless created with another {@link Scheduling}.
  */
 public class MaxNParallelTestClassProcessor implements TestClassProcessor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaxNParallelTestClassProcessor.class);
+    private static final long STALLED_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public enum Scheduling {
+        /**
+         * Assigns the test classes to the processors in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * Keeps the test classes in a shared queue and hands the next one to a processor once it has completed its current test class.
+         * Requires processors which execute each test class as it is received and report its completion.
+         */
+        WHEN_IDLE,
+        /**
+         * Assigns each test class to the processor with the least expected work, based on the test class durations of the previous run.
+         * Suits processors which only execute their test classes when stopped.
+         */
+        BY_DURATION
+    }
+
     private final int maxProcessors;
     private final Factory<TestClassProcessor> factory;
     private final ActorFactory actorFactory;
+    private final Scheduling scheduling;
+    private final TestClassDurations durations;
     private TestResultProcessor resultProcessor;
     private int pos;
     private List<TestClassProcessor> processors = new ArrayList<TestClassProcessor>();
@@ -45,10 +77,25 @@ public class MaxNParallelTestClassProcessor implements TestClassProcessor {
     private Actor resultProcessorActor;
     private volatile boolean stoppedNow;
 
+    private final Object lock = new Object();
+    private final List<Fork> forks = new ArrayList<Fork>();
+    private final LinkedList<TestClassRunInfo> pendingTestClasses = new LinkedList<TestClassRunInfo>();
+    private long lastProgress;
+
     public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory) {
+        this(maxProcessors, factory, actorFactory, Scheduling.ROUND_ROBIN, TestClassDurations.NONE);
+    }
+
+    /**
+     * Creates a processor with the given scheduling. The test classes are expected to be received longest first,
+     * see {@link RunPreviousFailedFirstTestClassProcessor}.
+     */
+    public MaxNParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory, Scheduling scheduling, TestClassDurations durations) {
         this.maxProcessors = maxProcessors;
         this.factory = factory;
         this.actorFactory = actorFactory;
+        this.scheduling = scheduling;
+        this.durations = durations;
     }
 
     @Override
@@ -64,15 +111,21 @@ public void processTestClass(TestClassRunInfo testClass) {
             return;
         }
 
+        if (scheduling != Scheduling.ROUND_ROBIN) {
+            synchronized (lock) {
+                Fork fork = selectFork();
+                if (fork != null) {
+                    fork.process(testClass);
+                } else {
+                    pendingTestClasses.add(testClass);
+                }
+            }
+            return;
+        }
+
         TestClassProcessor processor;
         if (processors.size() < maxProcessors) {
-            processor = factory.create();
-            rawProcessors.add(processor);
-            Actor actor = actorFactory.createActor(processor);
-            processor = actor.getProxy(TestClassProcessor.class);
-            actors.add(actor);
-            processors.add(processor);
-            processor.startProcessing(resultProcessor);
+            processor = startProcessor(resultProcessor);
         } else {
             processor = processors.get(pos);
             pos = (pos + 1) % processors.size();
@@ -80,8 +133,83 @@ public void processTestClass(TestClassRunInfo testClass) {
         processor.processTestClass(testClass);
     }
 
+    private TestClassProcessor startProcessor(TestResultProcessor resultProcessor) {
+        TestClassProcessor processor = factory.create();
+        rawProcessors.add(processor);
+        Actor actor = actorFactory.createActor(processor);
+        processor = actor.getProxy(TestClassProcessor.class);
+        actors.add(actor);
+        processors.add(processor);
+        processor.startProcessing(resultProcessor);
+        return processor;
+    }
+
+    /**
+     * Returns the fork to hand the next test class to, or null when it should wait for a fork to become idle.
+     */
+    private Fork selectFork() {
+        if (scheduling == Scheduling.WHEN_IDLE) {
+            for (Fork fork : forks) {
+                if (fork.runningTestClasses.isEmpty()) {
+                    return fork;
+                }
+            }
+        }
+        if (forks.size() < maxProcessors) {
+            Fork fork = new Fork();
+            forks.add(fork);
+            fork.processor = startProcessor(scheduling == Scheduling.WHEN_IDLE ? new ForkResultProcessor(fork) : resultProcessor);
+            return fork;
+        }
+        return scheduling == Scheduling.WHEN_IDLE ? null : leastBusyFork();
+    }
+
+    private Fork leastBusyFork() {
+        Fork leastBusy = forks.get(0);
+        for (Fork fork : forks) {
+            if (fork.expectedWork < leastBusy.expectedWork) {
+                leastBusy = fork;
+            }
+        }
+        return leastBusy;
+    }
+
+    private void testClassCompleted(Fork fork, String testClassName) {
+        fork.runningTestClasses.remove(testClassName);
+        fork.expectedWork -= durations.getExpectedDuration(testClassName);
+        if (fork.runningTestClasses.isEmpty() && !pendingTestClasses.isEmpty() && !stoppedNow) {
+            fork.process(pendingTestClasses.removeFirst());
+        }
+        lock.notifyAll();
+    }
+
+    private void awaitPendingTestClasses() {
+        synchronized (lock) {
+            lastProgress = System.currentTimeMillis();
+            while (!pendingTestClasses.isEmpty() && !stoppedNow) {
+                long stalledFor = System.currentTimeMillis() - lastProgress;
+                if (stalledFor >= STALLED_TIMEOUT_MILLIS) {
+                    // Do not rely on completion events any more, for example when a test worker has stopped responding
+                    LOGGER.debug("No test progress for {}ms, assigning the remaining {} test classes.", stalledFor, pendingTestClasses.size());
+                    while (!pendingTestClasses.isEmpty()) {
+                        leastBusyFork().process(pendingTestClasses.removeFirst());
+                    }
+                    return;
+                }
+                try {
+                    lock.wait(STALLED_TIMEOUT_MILLIS - stalledFor);
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+    }
+
     @Override
     public void stop() {
+        if (scheduling == Scheduling.WHEN_IDLE) {
+            awaitPendingTestClasses();
+        }
         try {
             CompositeStoppable.stoppable(processors).add(actors).add(resultProcessorActor).stop();
         } catch (DispatchException e) {
@@ -92,8 +220,76 @@ public void stop() {
     @Override
     public void stopNow() {
         stoppedNow = true;
+        synchronized (lock) {
+            pendingTestClasses.clear();
+            lock.notifyAll();
+        }
         for (TestClassProcessor processor : rawProcessors) {
             processor.stopNow();
         }
     }
+
+    private class Fork {
+        private TestClassProcessor processor;
+        private final List<String> runningTestClasses = new ArrayList<String>();
+        private long expectedWork;
+
+        void process(TestClassRunInfo testClass) {
+            runningTestClasses.add(testClass.getTestClassName());
+            expectedWork += durations.getExpectedDuration(testClass.getTestClassName());
+            processor.processTestClass(testClass);
+        }
+    }
+
+    /**
+     * Tracks the test classes completed by a fork, so that it can be handed its next test class.
+     */
+    private class ForkResultProcessor implements TestResultProcessor {
+        private final Fork fork;
+        private final Map<Object, String> testClassIds = new HashMap<Object, String>();
+
+        ForkResultProcessor(Fork fork) {
+            this.fork = fork;
+        }
+
+        @Override
+        public void started(TestDescriptorInternal test, TestStartEvent event) {
+            resultProcessor.started(test, event);
+            synchronized (lock) {
+                lastProgress = System.currentTimeMillis();
+                String className = test.getClassName();
+                if (test.isComposite() && className != null && fork.runningTestClasses.contains(className) && !testClassIds.containsValue(className)) {
+                    testClassIds.put(test.getId(), className);
+                }
+            }
+        }
+
+        @Override
+        public void completed(Object testId, TestCompleteEvent event) {
+            resultProcessor.completed(testId, event);
+            synchronized (lock) {
+                lastProgress = System.currentTimeMillis();
+                String className = testClassIds.remove(testId);
+                if (className != null) {
+                    testClassCompleted(fork, className);
+                }
+            }
+        }
+
+        @Override
+        public void output(Object testId, TestOutputEvent event) {
+            resultProcessor.output(testId, event);
+            synchronized (lock) {
+                lastProgress = System.currentTimeMillis();
+            }
+        }
+
+        @Override
+        public void failure(Object testId, Throwable result) {
+            resultProcessor.failure(testId, result);
+            synchronized (lock) {
+                lastProgress = System.currentTimeMillis();
+            }
+        }
+    }
 }
@@ -20,21 +20,34 @@
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * In order to speed up the development feedback cycle, this class guarantee previous failed test classes
  * to be passed to its delegate first.
+ *
+ * When given the test class durations of the previous run, the previous failed and the other test classes are each
+ * passed longest first, so that parallel processors do not end up waiting for a slow test class started last.
  */
 public class RunPreviousFailedFirstTestClassProcessor implements TestClassProcessor {
     private final Set<String> previousFailedTestClasses;
+    private final TestClassDurations durations;
     private final TestClassProcessor delegate;
     private final LinkedHashSet<TestClassRunInfo> prioritizedTestClasses = new LinkedHashSet<TestClassRunInfo>();
     private final LinkedHashSet<TestClassRunInfo> otherTestClasses = new LinkedHashSet<TestClassRunInfo>();
 
     public RunPreviousFailedFirstTestClassProcessor(Set<String> previousFailedTestClasses, TestClassProcessor delegate) {
+        this(previousFailedTestClasses, TestClassDurations.NONE, delegate);
+    }
+
+    public RunPreviousFailedFirstTestClassProcessor(Set<String> previousFailedTestClasses, TestClassDurations durations, TestClassProcessor delegate) {
         this.previousFailedTestClasses = previousFailedTestClasses;
+        this.durations = durations;
         this.delegate = delegate;
     }
 
@@ -54,15 +67,25 @@ public void processTestClass(TestClassRunInfo testClass) {
 
     @Override
     public void stop() {
-        for (TestClassRunInfo test : prioritizedTestClasses) {
+        for (TestClassRunInfo test : order(prioritizedTestClasses)) {
             delegate.processTestClass(test);
         }
-        for (TestClassRunInfo test : otherTestClasses) {
+        for (TestClassRunInfo test : order(otherTestClasses)) {
             delegate.processTestClass(test);
         }
         delegate.stop();
     }
 
+    private Collection<TestClassRunInfo> order(Collection<TestClassRunInfo> testClasses) {
+        if (durations.isEmpty()) {
+            return testClasses;
+        }
+        List<TestClassRunInfo> ordered = new ArrayList<TestClassRunInfo>(testClasses);
+        // A stable sort, test classes with the same expected duration keep their order
+        Collections.sort(ordered, durations.longestFirst());
+        return ordered;
+    }
+
     @Override
     public void stopNow() {
         delegate.stopNow();
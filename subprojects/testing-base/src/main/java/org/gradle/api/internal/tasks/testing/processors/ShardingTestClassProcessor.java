@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.testing.processors;
+
+import org.gradle.api.internal.tasks.testing.TestClassProcessor;
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Passes only the test classes of one shard to its delegate, so that the test classes can be split across several test tasks,
+ * for example running on different machines.
+ *
+ * The test classes are split into shards of about the same expected duration, longest test class first. The split only
+ * depends on the names of the test classes and on the given durations, so every shard must be given the same durations
+ * for the shards to be disjoint. Without durations, the test classes are split by count.
+ */
+public class ShardingTestClassProcessor implements TestClassProcessor {
+    private final int shardIndex;
+    private final int shardCount;
+    private final TestClassDurations durations;
+    private final TestClassProcessor delegate;
+    private final Set<TestClassRunInfo> testClasses = new LinkedHashSet<TestClassRunInfo>();
+
+    public ShardingTestClassProcessor(int shardIndex, int shardCount, TestClassDurations durations, TestClassProcessor delegate) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException(String.format("Invalid test shard %d of %d.", shardIndex, shardCount));
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.durations = durations;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void startProcessing(TestResultProcessor resultProcessor) {
+        delegate.startProcessing(resultProcessor);
+    }
+
+    @Override
+    public void processTestClass(TestClassRunInfo testClass) {
+        testClasses.add(testClass);
+    }
+
+    @Override
+    public void stop() {
+        for (TestClassRunInfo testClass : selectShard()) {
+            delegate.processTestClass(testClass);
+        }
+        delegate.stop();
+    }
+
+    private List<TestClassRunInfo> selectShard() {
+        List<TestClassRunInfo> ordered = new ArrayList<TestClassRunInfo>(testClasses);
+        // The test classes are detected in file system order, which differs between machines
+        Collections.sort(ordered, new Comparator<TestClassRunInfo>() {
+            @Override
+            public int compare(TestClassRunInfo left, TestClassRunInfo right) {
+                return left.getTestClassName().compareTo(right.getTestClassName());
+            }
+        });
+        Collections.sort(ordered, durations.longestFirst());
+
+        List<TestClassRunInfo> shard = new ArrayList<TestClassRunInfo>();
+        long[] expectedDurations = new long[shardCount];
+        for (TestClassRunInfo testClass : ordered) {
+            int leastBusy = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (expectedDurations[i] < expectedDurations[leastBusy]) {
+                    leastBusy = i;
+                }
+            }
+            expectedDurations[leastBusy] += durations.getExpectedDuration(testClass.getTestClassName());
+            if (leastBusy == shardIndex) {
+                shard.add(testClass);
+            }
+        }
+        return shard;
+    }
+
+    @Override
+    public void stopNow() {
+        delegate.stopNow();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.testing.processors;
+
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * The durations of test classes, as recorded by the previous run of a test task.
+ *
+ * Test classes without a recorded duration, for example new test classes, are expected to take as long as the average test class.
+ */
+public class TestClassDurations {
+    public static final TestClassDurations NONE = new TestClassDurations(Collections.<String, Long>emptyMap());
+
+    private final Map<String, Long> durations;
+    private final long averageDuration;
+
+    public TestClassDurations(Map<String, Long> durations) {
+        this.durations = durations;
+        long total = 0;
+        for (Long duration : durations.values()) {
+            total += duration;
+        }
+        this.averageDuration = durations.isEmpty() ? 1 : Math.max(1, total / durations.size());
+    }
+
+    public boolean isEmpty() {
+        return durations.isEmpty();
+    }
+
+    /**
+     * Returns the expected duration of the given test class, in milliseconds.
+     */
+    public long getExpectedDuration(String testClassName) {
+        Long duration = durations.get(testClassName);
+        return duration != null ? duration : averageDuration;
+    }
+
+    /**
+     * Orders test classes by their expected duration, longest first.
+     */
+    public Comparator<TestClassRunInfo> longestFirst() {
+        return new Comparator<TestClassRunInfo>() {
+            @Override
+            public int compare(TestClassRunInfo left, TestClassRunInfo right) {
+                long leftDuration = getExpectedDuration(left.getTestClassName());
+                long rightDuration = getExpectedDuration(right.getTestClassName());
+                return leftDuration < rightDuration ? 1 : leftDuration > rightDuration ? -1 : 0;
+            }
+        };
+    }
+}
@@ -81,6 +81,27 @@ class Binary2JUnitXmlReportGeneratorSpec extends Specification {
         numThreads << [ 1, 4 ]
     }
 
+    @Unroll
+    def "writes results of more test classes than can be pending - #numThreads parallel thread(s)"() {
+        generator = generatorWithMaxThreads(numThreads)
+
+        def testClasses = (1..500).collect { new TestClassResult(it, "Test$it", 100).add(new TestMethodResult(it, "test")) }
+
+        resultsProvider.visitClasses(_) >> { Action action ->
+            testClasses.each { action.execute(it) }
+        }
+
+        when:
+        generator.generate()
+
+        then:
+        500 * generator.xmlWriter.write({ testClasses.contains(it) }, _)
+        0 * generator.xmlWriter._
+
+        where:
+        numThreads << [ 1, 4 ]
+    }
+
     def "adds context information to the failure if something goes wrong"() {
         generator = generatorWithMaxThreads(1)
 
@@ -102,6 +102,24 @@ class TestOutputStoreSpec extends WorkspaceTest {
         new DefaultTestOutputEvent(destination, msg)
     }
 
+    def "writes messages larger than the read buffer with multi-byte characters"() {
+        def message = ("a\u00e9\u20ac\ud83d\ude00" * 5000) + "\n"
+
+        when:
+        def writer = output.writer()
+        writer.onOutput(1, 1, output(StdOut, message))
+        writer.onOutput(1, 1, output(StdOut, ""))
+        writer.onOutput(1, 1, output(StdOut, message))
+        writer.close()
+        def reader = output.reader()
+
+        then:
+        collectAllOutput(reader, 1, StdOut) == message + message
+
+        cleanup:
+        reader.close()
+    }
+
     def "writes nothing for unknown test class"() {
         when:
         def writer = output.writer()
@@ -16,9 +16,13 @@
 
 package org.gradle.api.internal.tasks.testing.processors
 
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor
+import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo
 import org.gradle.api.internal.tasks.testing.TestClassProcessor
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent
 import org.gradle.api.internal.tasks.testing.TestResultProcessor
+import org.gradle.api.internal.tasks.testing.TestStartEvent
 import org.gradle.internal.actor.Actor
 import org.gradle.internal.actor.ActorFactory
 import spock.lang.Specification
@@ -52,7 +56,7 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         1 * resultProcessorActor.stop()
     }
 
-    def startProcessor() {
+    def startProcessor(MaxNParallelTestClassProcessor processor = this.processor) {
         1 * actorFactory.createActor(resultProcessor) >> resultProcessorActor
         1 * resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
         processor.startProcessing(resultProcessor)
@@ -202,4 +206,115 @@ class MaxNParallelTestClassProcessorTest extends Specification {
         1 * processor1.stopNow()
         1 * processor2.stopNow()
     }
+
+    def "hands test classes to processors once they have completed their current test class"() {
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, MaxNParallelTestClassProcessor.Scheduling.WHEN_IDLE, TestClassDurations.NONE)
+        def class1 = new DefaultTestClassRunInfo("Class1")
+        def class2 = new DefaultTestClassRunInfo("Class2")
+        def class3 = new DefaultTestClassRunInfo("Class3")
+        TestClassProcessor processor1 = Mock()
+        TestClassProcessor processor2 = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        Actor actor1 = Mock()
+        Actor actor2 = Mock()
+        TestResultProcessor forkResultProcessor2 = null
+
+        startProcessor(processor)
+
+        when:
+        processor.processTestClass(class1)
+        processor.processTestClass(class2)
+
+        then:
+        1 * factory.create() >> processor1
+        1 * actorFactory.createActor(processor1) >> actor1
+        1 * actor1.getProxy(TestClassProcessor) >> asyncProcessor1
+        1 * asyncProcessor1.startProcessing(_)
+        1 * asyncProcessor1.processTestClass(class1)
+        1 * factory.create() >> processor2
+        1 * actorFactory.createActor(processor2) >> actor2
+        1 * actor2.getProxy(TestClassProcessor) >> asyncProcessor2
+        1 * asyncProcessor2.startProcessing(_) >> { TestResultProcessor resultProcessor -> forkResultProcessor2 = resultProcessor }
+        1 * asyncProcessor2.processTestClass(class2)
+
+        when:
+        processor.processTestClass(class3)
+
+        then:
+        0 * asyncProcessor1._
+        0 * asyncProcessor2._
+
+        when:
+        def descriptor = new DefaultTestClassDescriptor(2, "Class2")
+        forkResultProcessor2.started(descriptor, new TestStartEvent(0))
+        forkResultProcessor2.completed(2, new TestCompleteEvent(10))
+
+        then:
+        1 * asyncResultProcessor.started(descriptor, _)
+        1 * asyncResultProcessor.completed(2, _)
+        1 * asyncProcessor2.processTestClass(class3)
+        0 * asyncProcessor1._
+
+        when:
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.stop()
+        1 * asyncProcessor2.stop()
+    }
+
+    def "discards waiting test classes when stopped now"() {
+        def processor = new MaxNParallelTestClassProcessor(1, factory, actorFactory, MaxNParallelTestClassProcessor.Scheduling.WHEN_IDLE, TestClassDurations.NONE)
+        TestClassProcessor processor1 = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        Actor actor1 = Mock()
+
+        startProcessor(processor)
+
+        when:
+        processor.processTestClass(new DefaultTestClassRunInfo("Class1"))
+        processor.processTestClass(new DefaultTestClassRunInfo("Class2"))
+        processor.stopNow()
+        processor.stop()
+
+        then:
+        1 * factory.create() >> processor1
+        1 * actorFactory.createActor(processor1) >> actor1
+        1 * actor1.getProxy(TestClassProcessor) >> asyncProcessor1
+        1 * asyncProcessor1.processTestClass(new DefaultTestClassRunInfo("Class1"))
+        0 * asyncProcessor1.processTestClass(new DefaultTestClassRunInfo("Class2"))
+        1 * processor1.stopNow()
+        1 * asyncProcessor1.stop()
+    }
+
+    def "assigns test classes to the processor with the least expected work"() {
+        def durations = new TestClassDurations([Class1: 100L, Class2: 60L, Class3: 50L, Class4: 10L])
+        def processor = new MaxNParallelTestClassProcessor(2, factory, actorFactory, MaxNParallelTestClassProcessor.Scheduling.BY_DURATION, durations)
+        TestClassProcessor processor1 = Mock()
+        TestClassProcessor processor2 = Mock()
+        TestClassProcessor asyncProcessor1 = Mock()
+        TestClassProcessor asyncProcessor2 = Mock()
+        Actor actor1 = Mock()
+        Actor actor2 = Mock()
+
+        startProcessor(processor)
+
+        when:
+        ["Class1", "Class2", "Class3", "Class4"].each { processor.processTestClass(new DefaultTestClassRunInfo(it)) }
+
+        then:
+        1 * factory.create() >> processor1
+        1 * actorFactory.createActor(processor1) >> actor1
+        1 * actor1.getProxy(TestClassProcessor) >> asyncProcessor1
+        1 * factory.create() >> processor2
+        1 * actorFactory.createActor(processor2) >> actor2
+        1 * actor2.getProxy(TestClassProcessor) >> asyncProcessor2
+        1 * asyncProcessor1.startProcessing(asyncResultProcessor)
+        1 * asyncProcessor2.startProcessing(asyncResultProcessor)
+        1 * asyncProcessor1.processTestClass(new DefaultTestClassRunInfo("Class1"))
+        1 * asyncProcessor2.processTestClass(new DefaultTestClassRunInfo("Class2"))
+        1 * asyncProcessor2.processTestClass(new DefaultTestClassRunInfo("Class3"))
+        1 * asyncProcessor1.processTestClass(new DefaultTestClassRunInfo("Class4"))
+    }
 }
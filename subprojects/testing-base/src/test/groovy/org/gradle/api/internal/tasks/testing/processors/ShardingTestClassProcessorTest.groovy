@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.processors
+
+import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo
+import org.gradle.api.internal.tasks.testing.TestClassProcessor
+import org.gradle.api.internal.tasks.testing.TestResultProcessor
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ShardingTestClassProcessorTest extends Specification {
+    TestClassProcessor delegate = Mock()
+    TestResultProcessor testResultProcessor = Mock()
+
+    @Unroll
+    def 'splits test classes into shards of about the same expected duration (shard #shardIndex)'() {
+        given:
+        def durations = new TestClassDurations([Class1: 100L, Class2: 60L, Class3: 50L, Class4: 10L])
+        def processor = new ShardingTestClassProcessor(shardIndex, 2, durations, delegate)
+
+        when:
+        processor.startProcessing(testResultProcessor)
+        ['Class4', 'Class2', 'Class1', 'Class3'].each { processor.processTestClass(new DefaultTestClassRunInfo(it)) }
+        processor.stop()
+
+        then:
+        1 * delegate.startProcessing(testResultProcessor)
+        then:
+        interaction {
+            shard.each { 1 * delegate.processTestClass(new DefaultTestClassRunInfo(it)) }
+        }
+        0 * delegate.processTestClass(_)
+        then:
+        1 * delegate.stop()
+
+        where:
+        shardIndex | shard
+        0          | ['Class1', 'Class4']
+        1          | ['Class2', 'Class3']
+    }
+
+    @Unroll
+    def 'splits test classes by count when no durations are known (shard #shardIndex)'() {
+        given:
+        def processor = new ShardingTestClassProcessor(shardIndex, 3, TestClassDurations.NONE, delegate)
+
+        when:
+        processor.startProcessing(testResultProcessor)
+        ['Class5', 'Class3', 'Class1', 'Class4', 'Class2'].each { processor.processTestClass(new DefaultTestClassRunInfo(it)) }
+        processor.stop()
+
+        then:
+        interaction {
+            shard.each { 1 * delegate.processTestClass(new DefaultTestClassRunInfo(it)) }
+        }
+        0 * delegate.processTestClass(_)
+
+        where:
+        shardIndex | shard
+        0          | ['Class1', 'Class4']
+        1          | ['Class2', 'Class5']
+        2          | ['Class3']
+    }
+
+    def 'rejects invalid shards'() {
+        when:
+        new ShardingTestClassProcessor(2, 2, TestClassDurations.NONE, delegate)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == 'Invalid test shard 2 of 2.'
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.testing
+
+import org.gradle.integtests.fixtures.AbstractIntegrationSpec
+
+class TestShardingIntegrationTest extends AbstractIntegrationSpec {
+    private static final List<String> TEST_CLASSES = (1..6).collect { "ShardedTest_${it}".toString() }
+
+    def setup() {
+        buildFile << """
+            apply plugin: 'java'
+
+            ${mavenCentralRepository()}
+
+            dependencies {
+                testImplementation 'junit:junit:4.12'
+            }
+
+            2.times { index ->
+                tasks.register("shard\${index}", Test) {
+                    testClassesDirs = sourceSets.test.output.classesDirs
+                    classpath = sourceSets.test.runtimeClasspath
+                    shardCount = 2
+                    shardIndex = index
+                }
+            }
+        """
+
+        TEST_CLASSES.each {
+            file("src/test/java/${it}.java") << """
+                import org.junit.Test;
+                public class ${it} {
+                    @Test
+                    public void ok() {
+                    }
+                }
+            """.stripIndent()
+        }
+    }
+
+    def "each test class is executed by exactly one shard"() {
+        when:
+        succeeds('shard0', 'shard1')
+
+        then:
+        def shard0 = executedTestClasses('shard0')
+        def shard1 = executedTestClasses('shard1')
+        !shard0.empty
+        !shard1.empty
+        shard0.intersect(shard1).empty
+        (shard0 + shard1).sort() == TEST_CLASSES
+    }
+
+    def "balances shards using the results of a previous run"() {
+        given:
+        buildFile << """
+            tasks.withType(Test).matching { it.name.startsWith('shard') }.configureEach {
+                shardingResults.from(tasks.test.binaryResultsDirectory)
+            }
+        """
+
+        when:
+        succeeds('test')
+
+        then:
+        executedTestClasses('test').sort() == TEST_CLASSES
+
+        when:
+        succeeds('shard0', 'shard1')
+
+        then:
+        def shard0 = executedTestClasses('shard0')
+        def shard1 = executedTestClasses('shard1')
+        shard0.intersect(shard1).empty
+        (shard0 + shard1).sort() == TEST_CLASSES
+    }
+
+    def "executes all test classes by default"() {
+        when:
+        succeeds('test')
+
+        then:
+        executedTestClasses('test').sort() == TEST_CLASSES
+    }
+
+    def "fails when the shard index is not less than the shard count"() {
+        given:
+        buildFile << """
+            tasks.named('shard1') {
+                shardIndex = 2
+            }
+        """
+
+        when:
+        fails('shard1')
+
+        then:
+        failure.assertHasCause("Cannot set shardIndex to a value greater than or equal to shardCount (2).")
+    }
+
+    def "fails when the shard index is set without splitting the test classes into shards"() {
+        given:
+        buildFile << """
+            tasks.named('test') {
+                shardIndex = 1
+            }
+        """
+
+        when:
+        fails('test')
+
+        then:
+        failure.assertHasCause("Cannot set shardIndex to a value greater than or equal to shardCount (1).")
+    }
+
+    private List<String> executedTestClasses(String taskName) {
+        file("build/test-results/${taskName}").listFiles().findAll { it.name.endsWith(".xml") }.collect { it.name - "TEST-" - ".xml" }
+    }
+}
@@ -27,10 +27,13 @@
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
 import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
 import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
+import org.gradle.api.internal.tasks.testing.junit.JUnitTestFramework;
 import org.gradle.api.internal.tasks.testing.processors.MaxNParallelTestClassProcessor;
 import org.gradle.api.internal.tasks.testing.processors.PatternMatchTestClassProcessor;
 import org.gradle.api.internal.tasks.testing.processors.RestartEveryNTestClassProcessor;
 import org.gradle.api.internal.tasks.testing.processors.RunPreviousFailedFirstTestClassProcessor;
+import org.gradle.api.internal.tasks.testing.processors.ShardingTestClassProcessor;
+import org.gradle.api.internal.tasks.testing.processors.TestClassDurations;
 import org.gradle.api.internal.tasks.testing.processors.TestMainAction;
 import org.gradle.api.internal.tasks.testing.worker.ForkingTestClassProcessor;
 import org.gradle.api.logging.Logger;
@@ -99,10 +102,16 @@ public TestClassProcessor create() {
                 return new RestartEveryNTestClassProcessor(forkingProcessorFactory, testExecutionSpec.getForkEvery());
             }
         };
-        processor =
-            new PatternMatchTestClassProcessor(testFilter,
-                new RunPreviousFailedFirstTestClassProcessor(testExecutionSpec.getPreviousFailedTestClasses(),
-                    new MaxNParallelTestClassProcessor(getMaxParallelForks(testExecutionSpec), reforkingProcessorFactory, actorFactory)));
+        int maxParallelForks = getMaxParallelForks(testExecutionSpec);
+        TestClassDurations durations = new TestClassDurations(testExecutionSpec.getPreviousTestClassDurations());
+        TestClassProcessor orderingProcessor =
+            new RunPreviousFailedFirstTestClassProcessor(testExecutionSpec.getPreviousFailedTestClasses(), durations,
+                new MaxNParallelTestClassProcessor(maxParallelForks, reforkingProcessorFactory, actorFactory, getScheduling(testFramework, maxParallelForks), durations));
+        if (testExecutionSpec.getShardCount() > 1) {
+            orderingProcessor = new ShardingTestClassProcessor(testExecutionSpec.getShardIndex(), testExecutionSpec.getShardCount(),
+                new TestClassDurations(testExecutionSpec.getShardingTestClassDurations()), orderingProcessor);
+        }
+        processor = new PatternMatchTestClassProcessor(testFilter, orderingProcessor);
 
         final FileTree testClassFiles = testExecutionSpec.getCandidateClassFiles();
 
@@ -128,6 +137,14 @@ public void stopNow() {
         }
     }
 
+    private static MaxNParallelTestClassProcessor.Scheduling getScheduling(TestFramework testFramework, int maxParallelForks) {
+        if (maxParallelForks == 1) {
+            return MaxNParallelTestClassProcessor.Scheduling.ROUND_ROBIN;
+        }
+        // The JUnit Platform and TestNG processors only execute their test classes when stopped
+        return testFramework instanceof JUnitTestFramework ? MaxNParallelTestClassProcessor.Scheduling.WHEN_IDLE : MaxNParallelTestClassProcessor.Scheduling.BY_DURATION;
+    }
+
     private int getMaxParallelForks(JvmTestExecutionSpec testExecutionSpec) {
         int maxParallelForks = testExecutionSpec.getMaxParallelForks();
         if (maxParallelForks > maxWorkerCount) {
@@ -23,6 +23,7 @@
 import org.gradle.api.Incubating;
 import org.gradle.api.JavaVersion;
 import org.gradle.api.NonNullApi;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.file.FileTreeElement;
@@ -80,7 +81,7 @@
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.File;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -154,6 +155,9 @@ public class Test extends AbstractTestTask implements JavaForkOptions, PatternFi
     private boolean scanForTestClasses = true;
     private long forkEvery;
     private int maxParallelForks = 1;
+    private int shardIndex;
+    private int shardCount = 1;
+    private final ConfigurableFileCollection shardingResults;
     private TestExecuter<JvmTestExecutionSpec> testExecuter;
 
     public Test() {
@@ -161,6 +165,7 @@ public Test() {
         forkOptions = getForkOptionsFactory().newDecoratedJavaForkOptions();
         forkOptions.setEnableAssertions(true);
         modularity = getObjectFactory().newInstance(DefaultModularitySpec.class);
+        shardingResults = getObjectFactory().fileCollection();
     }
 
     @Inject
@@ -608,24 +613,33 @@ protected JvmTestExecutionSpec createTestExecutionSpec() {
         boolean testIsModule = javaModuleDetector.isModule(modularity.getInferModulePath().get(), getTestClassesDirs());
         FileCollection classpath = javaModuleDetector.inferClasspath(testIsModule, getClasspath());
         FileCollection modulePath = javaModuleDetector.inferModulePath(testIsModule, getClasspath());
-        return new JvmTestExecutionSpec(getTestFramework(), classpath, modulePath, getCandidateClassFiles(), isScanForTestClasses(), getTestClassesDirs(), getPath(), getIdentityPath(), getForkEvery(), javaForkOptions, getMaxParallelForks(), getPreviousFailedTestClasses());
+        Set<String> previousFailedTestClasses = new HashSet<String>();
+        Map<String, Long> previousTestClassDurations = new HashMap<String, Long>();
+        readPreviousTestResults(getBinResultsDir(), previousFailedTestClasses, previousTestClassDurations);
+        Map<String, Long> shardingTestClassDurations = new HashMap<String, Long>();
+        if (shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Cannot set shardIndex to a value greater than or equal to shardCount (" + shardCount + ").");
+        }
+        if (shardCount > 1) {
+            for (File resultsDir : shardingResults) {
+                readPreviousTestResults(resultsDir, new HashSet<String>(), shardingTestClassDurations);
+            }
+        }
+        return new JvmTestExecutionSpec(getTestFramework(), classpath, modulePath, getCandidateClassFiles(), isScanForTestClasses(), getTestClassesDirs(), getPath(), getIdentityPath(), getForkEvery(), javaForkOptions, getMaxParallelForks(), previousFailedTestClasses, previousTestClassDurations, shardIndex, shardCount, shardingTestClassDurations);
     }
 
-    private Set<String> getPreviousFailedTestClasses() {
-        TestResultSerializer serializer = new TestResultSerializer(getBinResultsDir());
+    private static void readPreviousTestResults(File binResultsDir, final Set<String> previousFailedTestClasses, final Map<String, Long> previousTestClassDurations) {
+        TestResultSerializer serializer = new TestResultSerializer(binResultsDir);
         if (serializer.isHasResults()) {
-            final Set<String> previousFailedTestClasses = new HashSet<String>();
             serializer.read(new Action<TestClassResult>() {
                 @Override
                 public void execute(TestClassResult testClassResult) {
                     if (testClassResult.getFailuresCount() > 0) {
                         previousFailedTestClasses.add(testClassResult.getClassName());
                     }
+                    previousTestClassDurations.put(testClassResult.getClassName(), testClassResult.getDuration());
                 }
             });
-            return previousFailedTestClasses;
-        } else {
-            return Collections.emptySet();
         }
     }
 
@@ -1081,6 +1095,86 @@ public void setMaxParallelForks(int maxParallelForks) {
         this.maxParallelForks = maxParallelForks;
     }
 
+    /**
+     * Returns the shard of test classes executed by this task, between <code>0</code> and {@link #getShardCount()} - 1.
+     *
+     * @return The index of the shard of test classes to execute.
+     * @since 6.5
+     */
+    @Incubating
+    @Input
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * Sets the shard of test classes executed by this task.
+     *
+     * @param shardIndex The index of the shard of test classes to execute, starting at 0.
+     * @since 6.5
+     */
+    @Incubating
+    public void setShardIndex(int shardIndex) {
+        if (shardIndex < 0) {
+            throw new IllegalArgumentException("Cannot set shardIndex to a value less than 0.");
+        }
+        this.shardIndex = shardIndex;
+    }
+
+    /**
+     * Returns the number of shards the test classes are split into.
+     *
+     * <p>
+     * By default, this task executes all test classes.
+     * <ul>
+     * <li>A value of <code>1</code> means that all test classes are executed by this task. This is the default.</li>
+     * <li>A value of <code>N</code> means that the test classes are split into <code>N</code> shards, and that this task only executes the test classes of the shard {@link #getShardIndex()}.
+     * <b>This allows several tasks, for example on different CI machines, to each execute a part of the test classes.</b></li>
+     * </ul>
+     *
+     * The shards are balanced by the durations of the test classes recorded in {@link #getShardingResults()}, or have about the same number of test classes when no durations are known.
+     *
+     * @return The number of shards.
+     * @since 6.5
+     */
+    @Incubating
+    @Input
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Sets the number of shards the test classes are split into.
+     *
+     * @param shardCount The number of shards. Use 1 to execute all test classes in this task.
+     * @since 6.5
+     */
+    @Incubating
+    public void setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Cannot set shardCount to a value less than 1.");
+        }
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * The binary test results directories of a previous run, used to split the test classes into shards of about the same duration.
+     *
+     * <p>
+     * Every shard splits the test classes on its own, so every shard needs to be given the same results for each test class to be executed exactly once.
+     * For example, these can be copies of the {@link #getBinaryResultsDirectory()} directories of all shards of a previous CI build. Test classes without a recorded duration
+     * are expected to take as long as the average test class.
+     * </p>
+     *
+     * @since 6.5
+     */
+    @Incubating
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public ConfigurableFileCollection getShardingResults() {
+        return shardingResults;
+    }
+
     /**
      * Returns the classes files to scan for test classes.
      *